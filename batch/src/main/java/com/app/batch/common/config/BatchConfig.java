@@ -1,35 +1,61 @@
 package com.app.batch.common.config;
 
 import com.app.batch.common.constant.BatchConstant;
+import com.app.batch.common.key.EmploymentEventNumericKeyProvider;
 import com.app.batch.common.listener.FileMovingJobListener;
+import com.app.batch.common.reader.CompletedFileFilter;
+import com.app.batch.common.reader.EmploymentEventCsvItemReader;
+import com.app.batch.common.reader.FileCheckpointer;
+import com.app.batch.common.writer.IdempotentChunkItemWriter;
 import com.app.batch.model.EmploymentEventRecord;
 import com.app.batch.model.EmploymentEventWithContext;
 import com.ms.idempotentcache.cache.IdempotencyCacheService;
+import com.ms.idempotentcache.checkpoint.CheckpointService;
 import com.ms.idempotentcache.context.ContextIdProvider;
+import com.ms.idempotentcache.record.BinaryRecordKeyProvider;
+import com.ms.idempotentcache.record.ByteBufferRecordKeySink;
 import com.ms.idempotentcache.record.RecordKeyProvider;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.partition.support.MultiResourcePartitioner;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.integration.async.AsyncItemProcessor;
+import org.springframework.batch.integration.async.AsyncItemWriter;
 import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.file.MultiResourceItemReader;
+import org.springframework.batch.item.file.ResourceAwareItemReaderItemStream;
 import org.springframework.batch.item.file.mapping.BeanWrapperFieldSetMapper;
 import org.springframework.batch.item.file.mapping.DefaultLineMapper;
 import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
 
 @Configuration
 public class BatchConfig {
@@ -38,60 +64,56 @@ public class BatchConfig {
 
     /**
      * Creates a MultiResourceItemReader for EmploymentEventWithContext, reading all CSV files
-     * from the specified input directory pattern.
+     * from the specified input directory pattern. Lazy: partitioned mode never builds it, so the pattern is resolved
+     * and filtered only once, by the partitioner.
      *
      * @param cacheService The idempotency cache service to use for duplicate checking.
+     * @param checkpointService The checkpoint store used in checkpoint idempotency mode.
+     * @param completedFileFilter Drops files already processed to completion, with -Dbatch.skip.completed.files=true.
      * @return Configured MultiResourceItemReader
      * @throws IOException If an I/O error occurs
      */
     @Bean
-    public MultiResourceItemReader<EmploymentEventWithContext> multiFileReader(IdempotencyCacheService cacheService) throws IOException {
-        String resourcePattern = System.getProperty(BatchConstant.INPUT_RESOURCE_DIRECTORY);
-        if (resourcePattern == null || resourcePattern.trim().isEmpty()) {
-            log.error("Missing required VM argument: -Dinput.resource.directory");
-            throw new IllegalArgumentException("Missing required VM argument: -Dinput.resource.directory");
-        }
-
-        Resource[] resources = new PathMatchingResourcePatternResolver().getResources(resourcePattern);
-        if (resources == null || resources.length == 0) {
-            log.warn("No input resources found for pattern: {}", resourcePattern);
-        } else {
-            log.info("Found resources: {}", Arrays.toString(resources));
-        }
-
+    @Lazy
+    public MultiResourceItemReader<EmploymentEventWithContext> multiFileReader(IdempotencyCacheService cacheService,
+                                                                              CheckpointService checkpointService,
+                                                                              CompletedFileFilter completedFileFilter) throws IOException {
         MultiResourceItemReader<EmploymentEventWithContext> multiReader = new MultiResourceItemReader<>();
-        multiReader.setResources(resources);
-
-        // Set up line mapping for the file
-        ContextAwareFlatFileItemReader delegate = new ContextAwareFlatFileItemReader();
-
-        DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer();
-        tokenizer.setNames(BatchConstant.SSN, BatchConstant.PLAN, BatchConstant.CLIENT_ID, BatchConstant.EMPLOYMENT_EVENT);
-
-        BeanWrapperFieldSetMapper<EmploymentEventRecord> fieldSetMapper = new BeanWrapperFieldSetMapper<>();
-        fieldSetMapper.setTargetType(EmploymentEventRecord.class);
-
-        DefaultLineMapper<EmploymentEventRecord> lineMapper = new DefaultLineMapper<>();
-        lineMapper.setLineTokenizer(tokenizer);
-        lineMapper.setFieldSetMapper(fieldSetMapper);
+        multiReader.setResources(inputResources(completedFileFilter));
+        multiReader.setDelegate(fileReader(cacheService, checkpointService));
+        return multiReader;
+    }
 
-        delegate.setLineMapper(lineMapper);
-        delegate.setLinesToSkip(BatchConstant.LINES_TO_SKIP); // skip header
-        delegate.setCacheService(cacheService);
-        multiReader.setDelegate(delegate);
+    /**
+     * Creates the reader of one partition in partitioned mode. Step-scoped, so every partition (and thread) gets
+     * its own reader, bound to the file the partitioner assigned to it.
+     *
+     * @param fileUrl URL of the partition's file, set by the MultiResourcePartitioner
+     */
+    @Bean
+    @StepScope
+    public ResourceAwareItemReaderItemStream<EmploymentEventWithContext> partitionFileReader(
+            IdempotencyCacheService cacheService,
+            CheckpointService checkpointService,
+            @Value("#{stepExecutionContext['" + BatchConstant.PARTITION_FILE_NAME + "']}") String fileUrl) throws MalformedURLException {
+        ResourceAwareItemReaderItemStream<EmploymentEventWithContext> reader = fileReader(cacheService, checkpointService);
+        reader.setResource(new UrlResource(fileUrl));
+        return reader;
+    }
 
-        return multiReader;
+    @Bean
+    public CompletedFileFilter completedFileFilter(IdempotencyCacheService cacheService) {
+        return new CompletedFileFilter(cacheService);
     }
 
-    // RecordKeyProvider bean for EmploymentEventRecord
+    // RecordKeyProvider bean for EmploymentEventRecord; writes ssn:plan:clientId:event without building a String
     @Bean
-    public RecordKeyProvider<EmploymentEventRecord> recordKeyProvider() {
-        return record -> String.join(":",
-                safe(record.getSsn()),
-                safe(record.getPlan()),
-                safe(record.getClientId()),
-                safe(record.getEmploymentEvent())
-        );
+    public BinaryRecordKeyProvider<EmploymentEventRecord> recordKeyProvider() {
+        return (record, sink) -> sink
+                .field(record.getSsn())
+                .field(record.getPlan())
+                .field(record.getClientId())
+                .field(record.getEmploymentEvent());
     }
 
     // ContextIdProvider bean for String (file name)
@@ -102,24 +124,34 @@ public class BatchConfig {
 
 
     // ItemProcessor that filters out already-processed records for idempotency.
+    // Keys are encoded into a sink borrowed from a small shared pool, so only the final byte[] is allocated per record,
+    // also when the async processor runs every item on a new (virtual) thread. Per-record logs are at debug level.
     @Bean
     public ItemProcessor<EmploymentEventWithContext, EmploymentEventWithContext> processor(
             IdempotencyCacheService cache,
-            RecordKeyProvider<EmploymentEventRecord> recordKeyProvider,
+            BinaryRecordKeyProvider<EmploymentEventRecord> recordKeyProvider,
             ContextIdProvider<String> contextIdProvider) {
+        int poolSize = Math.max(Runtime.getRuntime().availableProcessors(), Integer.parseInt(
+                System.getProperty(BatchConstant.BATCH_PROCESSOR_CONCURRENCY, BatchConstant.PROCESSOR_CONCURRENCY)));
+        Queue<ByteBufferRecordKeySink> sinks = new ArrayBlockingQueue<>(poolSize);
         return recordWithCtx -> {
             String contextId = contextIdProvider.getContextId(recordWithCtx.getFileName());
             EmploymentEventRecord record = recordWithCtx.getRecord();
-            String key = recordKeyProvider.getKey(record);
-            log.debug("Processing record in context '{}' with key '{}'", contextId, key);
-            //Thread.sleep(1000);
-            if (cache.isProcessed(contextId, key)) {
-                log.info("Skipping duplicate: '{}' in context '{}'", key, contextId);
-                return null; // skip duplicate
+            ByteBufferRecordKeySink pooled = sinks.poll();
+            ByteBufferRecordKeySink key = pooled == null ? new ByteBufferRecordKeySink() : pooled.reset();
+            try {
+                recordKeyProvider.writeKey(record, key);
+                log.debug("Processing record in context '{}' with key '{}'", contextId, key);
+                //Thread.sleep(1000);
+                if (!cache.tryMarkProcessed(contextId, key.toByteArray())) {
+                    log.debug("Skipping duplicate: '{}' in context '{}'", key, contextId);
+                    return null; // skip duplicate
+                }
+                log.debug("Marked processed: '{}' in context '{}'", key, contextId);
+                return recordWithCtx;
+            } finally {
+                sinks.offer(key); // dropped if the pool is full
             }
-            cache.markProcessed(contextId, key);
-            log.info("Marked processed: '{}' in context '{}'", key, contextId);
-            return recordWithCtx;
         };
     }
 
@@ -148,28 +180,253 @@ public class BatchConfig {
                 .build();
     }
 
+    /**
+     * Listener moving processed files and clearing their contexts. By default files are moved one by one and up to
+     * -Dbatch.clear.parallelism contexts (default 4) are cleared concurrently; with -Dbatch.finalize.mode=parallel up
+     * to -Dbatch.finalize.threads files (default 8) are moved concurrently and all contexts are cleared in one call.
+     */
     @Bean
-    public FileMovingJobListener fileMovingJobListener(IdempotencyCacheService cacheService, ContextIdProvider<String> contextIdProvider) {
+    public FileMovingJobListener fileMovingJobListener(IdempotencyCacheService cacheService, ContextIdProvider<String> contextIdProvider,
+                                                       CheckpointService checkpointService, CompletedFileFilter completedFileFilter,
+                                                       MeterRegistry meterRegistry) {
         String inputDir = System.getProperty(BatchConstant.INPUT_DIRECTORY);
         String processedDir = System.getProperty(BatchConstant.PROCESSED_DIRECTORY);
-        return new FileMovingJobListener(inputDir, processedDir, cacheService, contextIdProvider);
+        boolean parallel = BatchConstant.FINALIZE_MODE_PARALLEL.equalsIgnoreCase(
+                System.getProperty(BatchConstant.BATCH_FINALIZE_MODE, BatchConstant.FINALIZE_MODE_SERIAL));
+        int threads = Integer.parseInt(parallel
+                ? System.getProperty(BatchConstant.BATCH_FINALIZE_THREADS, BatchConstant.FINALIZE_THREADS)
+                : System.getProperty(BatchConstant.BATCH_CLEAR_PARALLELISM, BatchConstant.CLEAR_PARALLELISM));
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(
+                parallel ? BatchConstant.FINALIZE_THREAD_PREFIX : BatchConstant.CLEAR_THREAD_PREFIX);
+        executor.setConcurrencyLimit(threads);
+        log.info("Building file moving listener with finalizeMode={} threads={}", parallel ? BatchConstant.FINALIZE_MODE_PARALLEL : BatchConstant.FINALIZE_MODE_SERIAL, threads);
+        FileMovingJobListener listener = new FileMovingJobListener(inputDir, processedDir, cacheService, contextIdProvider,
+                executor, parallel, meterRegistry);
+        if (isCheckpointMode()) {
+            listener.setCheckpointService(checkpointService);
+        }
+        if (isSkipCompletedFiles()) {
+            listener.setCompletedFileFilter(completedFileFilter);
+        }
+        return listener;
     }
 
+    /**
+     * Builds the chunk-oriented step. With -Dbatch.idempotency.mode=chunk the per-item processor is replaced by
+     * {@link IdempotentChunkItemWriter}, which dedupes every chunk with a single bulk Redis call. With
+     * -Dbatch.idempotency.mode=checkpoint no record is checked at all: the readers resume every file at its checkpoint,
+     * so everything they read is new. With -Dbatch.record.key.mode=numeric the keys are the packed numbers of
+     * {@link EmploymentEventNumericKeyProvider} and are always claimed in chunk mode.
+     * With -Dbatch.step.mode=partitioned the same step runs once per input file, in parallel.
+     */
     @Bean
     public Step step(JobRepository jobRepository,
                       PlatformTransactionManager transactionManager,
-                      MultiResourceItemReader<EmploymentEventWithContext> multiFileReader,
+                      ObjectProvider<MultiResourceItemReader<EmploymentEventWithContext>> multiFileReader,
+                      ResourceAwareItemReaderItemStream<EmploymentEventWithContext> partitionFileReader,
                       ItemProcessor<EmploymentEventWithContext, EmploymentEventWithContext> processor,
-                      ItemWriter<EmploymentEventWithContext> writer) {
+                      ItemWriter<EmploymentEventWithContext> writer,
+                      IdempotencyCacheService cache,
+                      RecordKeyProvider<EmploymentEventRecord> recordKeyProvider,
+                      ContextIdProvider<String> contextIdProvider,
+                      CompletedFileFilter completedFileFilter) throws Exception {
         int chunkSize = Integer.valueOf(System.getProperty(BatchConstant.BATCH_CHUNK_SIZE, BatchConstant.CHUNK_SIZE));
-        return new StepBuilder(BatchConstant.STEP, jobRepository)
-                .<EmploymentEventWithContext, EmploymentEventWithContext>chunk(chunkSize, transactionManager)
-                .reader(multiFileReader)
-                .processor(processor)
-                .writer(writer)
+        String idempotencyMode = System.getProperty(BatchConstant.BATCH_IDEMPOTENCY_MODE, BatchConstant.IDEMPOTENCY_MODE_ITEM);
+        if (isNumericKeyMode() && !BatchConstant.IDEMPOTENCY_MODE_CHECKPOINT.equalsIgnoreCase(idempotencyMode)) {
+            // Numeric keys are always claimed per chunk, so each Roaring chunk is written once per chunk
+            idempotencyMode = BatchConstant.IDEMPOTENCY_MODE_CHUNK;
+        }
+        boolean partitioned = BatchConstant.STEP_MODE_PARTITIONED.equalsIgnoreCase(
+                System.getProperty(BatchConstant.BATCH_STEP_MODE, BatchConstant.STEP_MODE_SINGLE));
+        boolean async = BatchConstant.PROCESSOR_MODE_ASYNC.equalsIgnoreCase(
+                System.getProperty(BatchConstant.BATCH_PROCESSOR_MODE, BatchConstant.PROCESSOR_MODE_SYNC));
+        log.info("Building step with chunkSize={} idempotencyMode={} partitioned={} asyncProcessor={}",
+                chunkSize, idempotencyMode, partitioned, async);
+
+        ItemReader<EmploymentEventWithContext> reader = partitioned ? partitionFileReader : multiFileReader.getObject();
+        RecordKeyProvider<EmploymentEventRecord> chunkKeyProvider = isNumericKeyMode()
+                ? new EmploymentEventNumericKeyProvider() : recordKeyProvider;
+        Step chunkStep;
+        if (BatchConstant.IDEMPOTENCY_MODE_CHECKPOINT.equalsIgnoreCase(idempotencyMode)) {
+            chunkStep = new StepBuilder(BatchConstant.STEP, jobRepository)
+                    .<EmploymentEventWithContext, EmploymentEventWithContext>chunk(chunkSize, transactionManager)
+                    .reader(reader)
+                    .writer(writer)
+                    .build();
+        } else if (BatchConstant.IDEMPOTENCY_MODE_CHUNK.equalsIgnoreCase(idempotencyMode)) {
+            chunkStep = new StepBuilder(BatchConstant.STEP, jobRepository)
+                    .<EmploymentEventWithContext, EmploymentEventWithContext>chunk(chunkSize, transactionManager)
+                    .reader(reader)
+                    .writer(new IdempotentChunkItemWriter<>(writer, cache,
+                            item -> contextIdProvider.getContextId(item.getFileName()),
+                            item -> chunkKeyProvider.getKey(item.getRecord())))
+                    .build();
+        } else if (async) {
+            chunkStep = new StepBuilder(BatchConstant.STEP, jobRepository)
+                    .<EmploymentEventWithContext, Future<EmploymentEventWithContext>>chunk(chunkSize, transactionManager)
+                    .reader(reader)
+                    .processor(asyncProcessor(processor))
+                    .writer(asyncWriter(writer))
+                    .build();
+        } else {
+            chunkStep = new StepBuilder(BatchConstant.STEP, jobRepository)
+                    .<EmploymentEventWithContext, EmploymentEventWithContext>chunk(chunkSize, transactionManager)
+                    .reader(reader)
+                    .processor(processor)
+                    .writer(writer)
+                    .build();
+        }
+        return partitioned ? partitionedStep(jobRepository, chunkStep, completedFileFilter) : chunkStep;
+    }
+
+    /**
+     * Runs the idempotency processor for every item of a chunk concurrently, at most
+     * -Dbatch.processor.concurrency checks in flight (default 16). On Java 21+ every item gets a virtual thread and
+     * submission blocks once the limit is reached; older runtimes reuse a fixed pool of that many platform threads,
+     * and the rest of the chunk waits in its queue, so no item pays for a thread creation.
+     */
+    private AsyncItemProcessor<EmploymentEventWithContext, EmploymentEventWithContext> asyncProcessor(
+            ItemProcessor<EmploymentEventWithContext, EmploymentEventWithContext> processor) throws Exception {
+        int concurrency = Integer.parseInt(System.getProperty(BatchConstant.BATCH_PROCESSOR_CONCURRENCY, BatchConstant.PROCESSOR_CONCURRENCY));
+        boolean virtualThreads = Runtime.version().feature() >= 21;
+        TaskExecutor taskExecutor;
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor virtualThreadExecutor = new SimpleAsyncTaskExecutor(BatchConstant.PROCESSOR_THREAD_PREFIX);
+            virtualThreadExecutor.setConcurrencyLimit(concurrency);
+            virtualThreadExecutor.setVirtualThreads(true);
+            taskExecutor = virtualThreadExecutor;
+        } else {
+            ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+            pool.setThreadNamePrefix(BatchConstant.PROCESSOR_THREAD_PREFIX);
+            pool.setCorePoolSize(concurrency);
+            pool.setMaxPoolSize(concurrency);
+            pool.setDaemon(true);
+            pool.initialize();
+            taskExecutor = pool;
+        }
+        log.info("Async processor with concurrency={} virtualThreads={}", concurrency, virtualThreads);
+
+        AsyncItemProcessor<EmploymentEventWithContext, EmploymentEventWithContext> asyncProcessor = new AsyncItemProcessor<>();
+        asyncProcessor.setDelegate(processor);
+        asyncProcessor.setTaskExecutor(taskExecutor);
+        asyncProcessor.afterPropertiesSet();
+        return asyncProcessor;
+    }
+
+    /**
+     * Joins the futures of a chunk in their original order and hands the non-duplicate records to the writer.
+     */
+    private AsyncItemWriter<EmploymentEventWithContext> asyncWriter(ItemWriter<EmploymentEventWithContext> writer) throws Exception {
+        AsyncItemWriter<EmploymentEventWithContext> asyncWriter = new AsyncItemWriter<>();
+        asyncWriter.setDelegate(writer);
+        asyncWriter.afterPropertiesSet();
+        return asyncWriter;
+    }
+
+    /**
+     * Manager step of partitioned mode: one partition per input file, run on a SimpleAsyncTaskExecutor limited to
+     * -Dbatch.partition.threads concurrent partitions (default: available processors).
+     */
+    private Step partitionedStep(JobRepository jobRepository, Step workerStep, CompletedFileFilter completedFileFilter) throws IOException {
+        int threads = Integer.parseInt(System.getProperty(BatchConstant.BATCH_PARTITION_THREADS,
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        MultiResourcePartitioner partitioner = new MultiResourcePartitioner();
+        partitioner.setResources(inputResources(completedFileFilter));
+        partitioner.setKeyName(BatchConstant.PARTITION_FILE_NAME);
+
+        SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor(BatchConstant.PARTITION_THREAD_PREFIX);
+        taskExecutor.setConcurrencyLimit(threads);
+        log.info("Building partitioned step with threads={}", threads);
+
+        return new StepBuilder(BatchConstant.PARTITIONED_STEP, jobRepository)
+                .partitioner(workerStep.getName(), partitioner)
+                .step(workerStep)
+                .gridSize(threads)
+                .taskExecutor(taskExecutor)
                 .build();
     }
 
+    /**
+     * Resolves the input files from -Dinput.resource.directory; with -Dbatch.skip.completed.files=true the files
+     * whose content was already processed to completion are left out.
+     */
+    private Resource[] inputResources(CompletedFileFilter completedFileFilter) throws IOException {
+        String resourcePattern = System.getProperty(BatchConstant.INPUT_RESOURCE_DIRECTORY);
+        if (resourcePattern == null || resourcePattern.trim().isEmpty()) {
+            log.error("Missing required VM argument: -Dinput.resource.directory");
+            throw new IllegalArgumentException("Missing required VM argument: -Dinput.resource.directory");
+        }
+
+        Resource[] resources = new PathMatchingResourcePatternResolver().getResources(resourcePattern);
+        if (resources == null || resources.length == 0) {
+            log.warn("No input resources found for pattern: {}", resourcePattern);
+        } else {
+            log.info("Found resources: {}", Arrays.toString(resources));
+        }
+        return isSkipCompletedFiles() ? completedFileFilter.withoutCompleted(resources) : resources;
+    }
+
+    private boolean isNumericKeyMode() {
+        return BatchConstant.RECORD_KEY_MODE_NUMERIC.equalsIgnoreCase(
+                System.getProperty(BatchConstant.BATCH_RECORD_KEY_MODE, BatchConstant.RECORD_KEY_MODE_TEXT));
+    }
+
+    private boolean isSkipCompletedFiles() {
+        return Boolean.parseBoolean(System.getProperty(BatchConstant.BATCH_SKIP_COMPLETED_FILES, BatchConstant.SKIP_COMPLETED_FILES));
+    }
+
+    /**
+     * Builds the CSV reader for a single file; the resource is set by the caller.
+     * With -Dbatch.reader.mode=nio the NIO reader with its direct mapper replaces FlatFileItemReader.
+     * In checkpoint idempotency mode the reader gets its own FileCheckpointer; otherwise, with
+     * -Dbatch.warm.contexts=true, either reader warms the context of every file it is given.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private ResourceAwareItemReaderItemStream<EmploymentEventWithContext> fileReader(IdempotencyCacheService cacheService,
+                                                                                    CheckpointService checkpointService) {
+        FileCheckpointer checkpointer = isCheckpointMode() ? new FileCheckpointer(checkpointService, contextIdProvider()) : null;
+        boolean warmContexts = checkpointer == null
+                && Boolean.parseBoolean(System.getProperty(BatchConstant.BATCH_WARM_CONTEXTS, BatchConstant.WARM_CONTEXTS));
+        if (BatchConstant.READER_MODE_NIO.equalsIgnoreCase(System.getProperty(BatchConstant.BATCH_READER_MODE, BatchConstant.READER_MODE_FLAT))) {
+            EmploymentEventCsvItemReader reader = new EmploymentEventCsvItemReader();
+            reader.setLinesToSkip(BatchConstant.LINES_TO_SKIP); // skip header
+            reader.setCheckpointer(checkpointer);
+            if (warmContexts) {
+                reader.setCacheService(cacheService);
+                reader.setContextIdProvider(contextIdProvider());
+            }
+            return reader;
+        }
+
+        // Lines are mapped to EmploymentEventRecord; the reader wraps each one with its file name
+        ContextAwareFlatFileItemReader reader = new ContextAwareFlatFileItemReader();
+
+        DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer();
+        tokenizer.setNames(BatchConstant.SSN, BatchConstant.PLAN, BatchConstant.CLIENT_ID, BatchConstant.EMPLOYMENT_EVENT);
+
+        BeanWrapperFieldSetMapper<EmploymentEventRecord> fieldSetMapper = new BeanWrapperFieldSetMapper<>();
+        fieldSetMapper.setTargetType(EmploymentEventRecord.class);
+
+        DefaultLineMapper<EmploymentEventRecord> lineMapper = new DefaultLineMapper<>();
+        lineMapper.setLineTokenizer(tokenizer);
+        lineMapper.setFieldSetMapper(fieldSetMapper);
+
+        reader.setLineMapper(lineMapper);
+        reader.setLinesToSkip(BatchConstant.LINES_TO_SKIP); // skip header
+        reader.setCacheService(cacheService);
+        if (checkpointer != null) {
+            reader.setCheckpointer(checkpointer);
+        } else if (warmContexts) {
+            reader.setContextIdProvider(contextIdProvider());
+        }
+        return reader;
+    }
+
+    private boolean isCheckpointMode() {
+        return BatchConstant.IDEMPOTENCY_MODE_CHECKPOINT.equalsIgnoreCase(
+                System.getProperty(BatchConstant.BATCH_IDEMPOTENCY_MODE, BatchConstant.IDEMPOTENCY_MODE_ITEM));
+    }
+
     /**
      * Ensures null values are safely handled (so you never get "null" in your key).
      */
@@ -1,18 +1,39 @@
 package com.app.batch.common.config;
 
 import com.app.batch.common.context.FileContextHolder;
+import com.app.batch.common.reader.FileCheckpointer;
 import com.app.batch.model.EmploymentEventRecord;
 import com.app.batch.model.EmploymentEventWithContext;
 import com.ms.idempotentcache.cache.IdempotencyCacheService;
+import com.ms.idempotentcache.checkpoint.Checkpoint;
+import com.ms.idempotentcache.context.ContextIdProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
 import org.springframework.batch.item.file.FlatFileItemReader;
 import org.springframework.batch.item.file.ResourceAwareItemReaderItemStream;
 import org.springframework.core.io.Resource;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
 
 /**
  * FlatFileItemReader that sets FileContextHolder with the current file name whenever setResource is called.
+ * <p>
+ * With a {@link FileCheckpointer} (-Dbatch.idempotency.mode=checkpoint) lines are read through a byte-counting
+ * reader, the position reached is saved as the file's checkpoint on every update, and a file with a checkpoint is
+ * opened directly at its offset: no header skip and no line-by-line jump to the restart item. Checkpointing needs an
+ * ASCII-compatible encoding (UTF-8 by default), as lines are split on the '\n' byte.
+ * <p>
+ * With a ContextIdProvider (-Dbatch.warm.contexts=true) setResource also warms the file's context in the cache
+ * service, so the keys already marked by an earlier run are checked locally instead of one round trip each.
  */
 public class ContextAwareFlatFileItemReader<T>
         extends FlatFileItemReader<T>
@@ -22,17 +43,65 @@ public class ContextAwareFlatFileItemReader<T>
 
     private String fileName;
     private IdempotencyCacheService cacheService;
+    private ContextIdProvider<String> contextIdProvider;
     private Resource resource;
+    private int linesToSkip;
+    private FileCheckpointer checkpointer;
+    private Checkpoint checkpoint;
+    private OffsetTrackingReader lineReader;
 
     public void setCacheService(IdempotencyCacheService cacheService) {
         this.cacheService = cacheService;
     }
 
+    public void setContextIdProvider(ContextIdProvider<String> contextIdProvider) {
+        this.contextIdProvider = contextIdProvider;
+    }
+
+    public void setCheckpointer(FileCheckpointer checkpointer) {
+        this.checkpointer = checkpointer;
+        setBufferedReaderFactory((resource, encoding) -> lineReader = new OffsetTrackingReader(resource,
+                Charset.forName(encoding), checkpoint != null ? checkpoint.offset() : 0, checkpoint != null ? checkpoint.line() : 0));
+    }
+
+    @Override
+    public void setLinesToSkip(int linesToSkip) {
+        super.setLinesToSkip(linesToSkip);
+        this.linesToSkip = linesToSkip;
+    }
+
     @Override
     public void setResource(Resource resource) {
         super.setResource(resource);
         this.fileName = (resource != null) ? resource.getFilename() : null;
         this.resource = resource;
+        if (cacheService != null && contextIdProvider != null && fileName != null) {
+            String contextId = contextIdProvider.getContextId(fileName);
+            log.debug("Warming contextId='{}' for file {}", contextId, fileName);
+            cacheService.warmContext(contextId);
+        }
+    }
+
+    /**
+     * Looks up the checkpoint before the file is opened; a resumed file starts past its header.
+     */
+    @Override
+    protected void doOpen() throws Exception {
+        if (checkpointer != null) {
+            checkpoint = (resource != null && resource.exists()) ? checkpointer.open(resource) : null;
+            super.setLinesToSkip(checkpoint != null ? 0 : linesToSkip);
+        }
+        super.doOpen();
+    }
+
+    /**
+     * The checkpoint is at least as far as the restart item, so a resumed file does not skip any further.
+     */
+    @Override
+    protected void jumpToItem(int itemIndex) throws Exception {
+        if (checkpoint == null) {
+            super.jumpToItem(itemIndex);
+        }
     }
 
     @Override
@@ -44,13 +113,110 @@ public class ContextAwareFlatFileItemReader<T>
         return record;
     }
 
+    /**
+     * Saves the read count and advances the checkpoint to the line after the last item read.
+     */
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        if (checkpointer != null) {
+            if (lineReader != null) {
+                checkpointer.mark(lineReader.offset, lineReader.lines);
+            }
+            checkpointer.save();
+        }
+    }
+
     public String getFileName() {
         return fileName;
     }
 
     @Override
     public void close() {
+        if (checkpointer != null) {
+            if (lineReader != null) {
+                checkpointer.mark(lineReader.offset, lineReader.lines);
+                lineReader = null;
+            }
+            checkpointer.close();
+            checkpoint = null;
+        }
         super.close();
         FileContextHolder.clear();
     }
+
+    /**
+     * BufferedReader over a FileChannel opened at the checkpoint offset, tracking the byte offset and the number of
+     * the next unread line. Only readLine and close are used by FlatFileItemReader.
+     */
+    private static class OffsetTrackingReader extends BufferedReader {
+
+        private final FileChannel channel;
+        private final Charset charset;
+        private byte[] buffer = new byte[64 * 1024];
+        private int position;
+        private int limit;
+        private boolean endOfFile;
+        private long offset;
+        private long lines;
+
+        OffsetTrackingReader(Resource resource, Charset charset, long offset, long lines) throws IOException {
+            super(Reader.nullReader());
+            this.channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ);
+            this.channel.position(offset);
+            this.charset = charset;
+            this.offset = offset;
+            this.lines = lines;
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            int scan = position;
+            while (true) {
+                for (int i = scan; i < limit; i++) {
+                    if (buffer[i] == '\n') {
+                        return line(i, i + 1);
+                    }
+                }
+                if (endOfFile) {
+                    return position < limit ? line(limit, limit) : null;
+                }
+                scan = limit - position;
+                fill();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private String line(int end, int next) {
+            int length = (end > position && buffer[end - 1] == '\r') ? end - 1 - position : end - position;
+            String line = new String(buffer, position, length, charset);
+            offset += next - position;
+            lines++;
+            position = next;
+            return line;
+        }
+
+        private void fill() throws IOException {
+            int remaining = limit - position;
+            if (remaining == buffer.length) {
+                byte[] grown = new byte[buffer.length * 2];
+                System.arraycopy(buffer, position, grown, 0, remaining);
+                buffer = grown;
+            } else {
+                System.arraycopy(buffer, position, buffer, 0, remaining);
+            }
+            position = 0;
+            limit = remaining;
+            int read = channel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit));
+            if (read < 0) {
+                endOfFile = true;
+            } else {
+                limit += read;
+            }
+        }
+    }
 }
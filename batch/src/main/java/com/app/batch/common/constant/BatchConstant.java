@@ -13,7 +13,49 @@ public class BatchConstant {
     public static final String PROCESSED_DIRECTORY = "processed.directory";
     public static final String BATCH_CHUNK_SIZE = "batch.chunk.size";
     public static final String CHUNK_SIZE = "4";
+    public static final String BATCH_IDEMPOTENCY_MODE = "batch.idempotency.mode";
+    public static final String IDEMPOTENCY_MODE_ITEM = "item";
+    public static final String IDEMPOTENCY_MODE_CHUNK = "chunk";
+    public static final String IDEMPOTENCY_MODE_CHECKPOINT = "checkpoint";
     public static final String STEP = "step";
+    public static final String BATCH_READER_MODE = "batch.reader.mode";
+    public static final String READER_MODE_FLAT = "flat";
+    public static final String READER_MODE_NIO = "nio";
+    public static final String BATCH_PROCESSOR_MODE = "batch.processor.mode";
+    public static final String PROCESSOR_MODE_SYNC = "sync";
+    public static final String PROCESSOR_MODE_ASYNC = "async";
+    public static final String BATCH_PROCESSOR_CONCURRENCY = "batch.processor.concurrency";
+    public static final String PROCESSOR_CONCURRENCY = "16";
+    public static final String PROCESSOR_THREAD_PREFIX = "idempotency-check-";
+    public static final String BATCH_STEP_MODE = "batch.step.mode";
+    public static final String STEP_MODE_SINGLE = "single";
+    public static final String STEP_MODE_PARTITIONED = "partitioned";
+    public static final String BATCH_PARTITION_THREADS = "batch.partition.threads";
+    public static final String PARTITIONED_STEP = "partitionedStep";
+    public static final String PARTITION_FILE_NAME = "fileName";
+    public static final String PARTITION_THREAD_PREFIX = "partition-";
+    public static final String BATCH_CLEAR_PARALLELISM = "batch.clear.parallelism";
+    public static final String CLEAR_PARALLELISM = "4";
+    public static final String CLEAR_THREAD_PREFIX = "context-clear-";
+    public static final String BATCH_FINALIZE_MODE = "batch.finalize.mode";
+    public static final String FINALIZE_MODE_SERIAL = "serial";
+    public static final String FINALIZE_MODE_PARALLEL = "parallel";
+    public static final String BATCH_FINALIZE_THREADS = "batch.finalize.threads";
+    public static final String FINALIZE_THREADS = "8";
+    public static final String FINALIZE_THREAD_PREFIX = "file-finalize-";
+    public static final String BATCH_WARM_CONTEXTS = "batch.warm.contexts";
+    public static final String WARM_CONTEXTS = "false";
+    public static final String BATCH_SKIP_COMPLETED_FILES = "batch.skip.completed.files";
+    public static final String SKIP_COMPLETED_FILES = "false";
+    public static final String COMPLETED_FILES_CONTEXT = "completed-files:employment-events";
+    public static final String BATCH_RECORD_KEY_MODE = "batch.record.key.mode";
+    public static final String RECORD_KEY_MODE_TEXT = "text";
+    public static final String RECORD_KEY_MODE_NUMERIC = "numeric";
+    public static final String FILE_MOVE_METRIC = "idempotency.batch.file.move";
+    public static final String FILE_CLEAR_METRIC = "idempotency.batch.file.clear";
+    public static final String TAG_OUTCOME = "outcome";
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_FAILURE = "failure";
     public static final String IDEMPOTENCY = "idempotency";
     public static final String HTTP = "http";
     public static final String JVM = "jvm";
@@ -0,0 +1,117 @@
+package com.app.batch.common.key;
+
+import com.app.batch.model.EmploymentEventRecord;
+import com.ms.idempotentcache.fingerprint.Murmur3;
+import com.ms.idempotentcache.record.NumericRecordKeyProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Packs an employment event into one 63-bit key for the Roaring bitmap stores (-Dbatch.record.key.mode=numeric):
+ * <pre>
+ *   bit  63     0 (packed key)
+ *   bits 61-62  event     index in EVENTS (2 bits)
+ *   bits 46-60  clientId  1 to 3 letters A-Z in base 27, A = 1 (15 bits)
+ *   bits 44-45  plan      number of digits after the leading 'P', minus 1 (2 bits)
+ *   bits 30-43  plan      the 1 to 4 digits after the leading 'P' (14 bits)
+ *   bits  0-29  ssn       the 9 digits of ddd-dd-dddd (30 bits)
+ * </pre>
+ * The SSN takes the low bits, so the keys of one client, plan and event are as dense as their SSNs and compress well.
+ * Only the exact forms above are packed, so two records share a packed key exactly when their text keys are equal.
+ * Any other record (an unknown event, a lowercase client, a plan without the 'P', ...) gets the Murmur3 64-bit hash of
+ * its text key ssn:plan:clientId:event with bit 63 set, which never collides with a packed key.
+ */
+public class EmploymentEventNumericKeyProvider implements NumericRecordKeyProvider<EmploymentEventRecord> {
+
+    private static final Logger log = LoggerFactory.getLogger(EmploymentEventNumericKeyProvider.class);
+
+    static final List<String> EVENTS = List.of("EMPLOYED", "TERMINATED", "LOA", "REHIRE");
+
+    private static final int SSN_BITS = 30;
+    private static final int PLAN_BITS = 16;
+    private static final int PLAN_NUMBER_BITS = 14;
+    private static final int CLIENT_BITS = 15;
+    private static final long NOT_PACKED = -1;
+
+    @Override
+    public long getNumericKey(EmploymentEventRecord record) {
+        long event = event(record.getEmploymentEvent());
+        long client = client(record.getClientId());
+        long plan = plan(record.getPlan());
+        long ssn = ssn(record.getSsn());
+        if (event == NOT_PACKED || client == NOT_PACKED || plan == NOT_PACKED || ssn == NOT_PACKED) {
+            return hashedKey(record);
+        }
+        return event << (CLIENT_BITS + PLAN_BITS + SSN_BITS)
+                | client << (PLAN_BITS + SSN_BITS)
+                | plan << SSN_BITS
+                | ssn;
+    }
+
+    private static long hashedKey(EmploymentEventRecord record) {
+        String textKey = String.join(":", text(record.getSsn()), text(record.getPlan()),
+                text(record.getClientId()), text(record.getEmploymentEvent()));
+        log.debug("Record key '{}' cannot be packed, using its hash", textKey);
+        return Murmur3.hash64(textKey.getBytes(StandardCharsets.UTF_8)) | Long.MIN_VALUE;
+    }
+
+    private static String text(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static long ssn(String ssn) {
+        if (ssn == null || ssn.length() != 11 || ssn.charAt(3) != '-' || ssn.charAt(6) != '-') {
+            return NOT_PACKED;
+        }
+        long value = 0;
+        for (int i = 0; i < ssn.length(); i++) {
+            if (i == 3 || i == 6) {
+                continue;
+            }
+            char c = ssn.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_PACKED;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static long plan(String plan) {
+        if (plan == null || plan.length() < 2 || plan.length() > 5 || plan.charAt(0) != 'P') {
+            return NOT_PACKED;
+        }
+        long number = 0;
+        for (int i = 1; i < plan.length(); i++) {
+            char c = plan.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_PACKED;
+            }
+            number = number * 10 + (c - '0');
+        }
+        // The digit count keeps "P2" and "P0002" apart.
+        return (long) (plan.length() - 2) << PLAN_NUMBER_BITS | number;
+    }
+
+    private static long client(String clientId) {
+        if (clientId == null || clientId.isEmpty() || clientId.length() > 3) {
+            return NOT_PACKED;
+        }
+        long client = 0;
+        for (int i = 0; i < clientId.length(); i++) {
+            char c = clientId.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                return NOT_PACKED;
+            }
+            client = client * 27 + (c - 'A' + 1);
+        }
+        return client;
+    }
+
+    private static long event(String employmentEvent) {
+        return employmentEvent == null ? NOT_PACKED : EVENTS.indexOf(employmentEvent);
+    }
+}
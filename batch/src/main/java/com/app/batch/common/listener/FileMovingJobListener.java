@@ -1,16 +1,45 @@
 package com.app.batch.common.listener;
 
+import com.app.batch.common.constant.BatchConstant;
+import com.app.batch.common.reader.CompletedFileFilter;
 import com.ms.idempotentcache.cache.IdempotencyCacheService;
+import com.ms.idempotentcache.checkpoint.CheckpointService;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import com.ms.idempotentcache.context.ContextIdProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobExecutionListener;
 
+/**
+ * Moves every processed input file to the processed folder after the job and clears its idempotency context.
+ * <p>
+ * Two finalization modes (-Dbatch.finalize.mode):
+ * - serial (default): files are moved one by one, and each context clear is submitted to the executor as soon as its
+ *   file is moved, so large contexts are cleared in parallel
+ * - parallel: files are moved concurrently on the executor, then the contexts of all moved files are cleared with a
+ *   single bulk (pipelined) call
+ * <p>
+ * With a CheckpointService (checkpoint idempotency mode) the checkpoint of every moved file is removed as well. When
+ * the job did not complete, the files it read stay in the input folder with their checkpoints and contexts, so the
+ * re-run resumes each one after its high-water mark.
+ * <p>
+ * With a CompletedFileFilter (-Dbatch.skip.completed.files=true) the files it skipped are moved too, and, when the
+ * job completed, every moved file that was processed is marked completed by content.
+ * <p>
+ * afterJob returns once every move and clear has finished. Every file is reported in
+ * idempotency.batch.file.move (latency, by outcome) and idempotency.batch.file.clear (count, by outcome).
+ */
 public class FileMovingJobListener implements JobExecutionListener {
     private static final Logger log = LoggerFactory.getLogger(FileMovingJobListener.class);
 
@@ -19,12 +48,35 @@ public class FileMovingJobListener implements JobExecutionListener {
     private final Set<String> filesToMove = ConcurrentHashMap.newKeySet();
     private final IdempotencyCacheService cacheService;
     private final ContextIdProvider<String> contextIdProvider;
+    private final Executor executor;
+    private final boolean parallel;
+    private final MeterRegistry meterRegistry;
+    private final Timer moveSuccessTimer;
+    private final Timer moveFailureTimer;
+    private CheckpointService checkpointService;
+    private CompletedFileFilter completedFileFilter;
+    private volatile boolean jobCompleted;
 
-    public FileMovingJobListener(String inputDir, String processedDir, IdempotencyCacheService cacheService, ContextIdProvider<String> contextIdProvider) {
+    public FileMovingJobListener(String inputDir, String processedDir, IdempotencyCacheService cacheService,
+                                 ContextIdProvider<String> contextIdProvider, Executor executor, boolean parallel,
+                                 MeterRegistry meterRegistry) {
         this.inputDir = inputDir;
         this.processedDir = processedDir;
         this.cacheService = cacheService;
         this.contextIdProvider = contextIdProvider;
+        this.executor = executor;
+        this.parallel = parallel;
+        this.meterRegistry = meterRegistry;
+        this.moveSuccessTimer = moveTimer(BatchConstant.OUTCOME_SUCCESS);
+        this.moveFailureTimer = moveTimer(BatchConstant.OUTCOME_FAILURE);
+    }
+
+    public void setCheckpointService(CheckpointService checkpointService) {
+        this.checkpointService = checkpointService;
+    }
+
+    public void setCompletedFileFilter(CompletedFileFilter completedFileFilter) {
+        this.completedFileFilter = completedFileFilter;
     }
 
     public void addFile(String fileName) {
@@ -33,26 +85,156 @@ public class FileMovingJobListener implements JobExecutionListener {
 
     @Override
     public void afterJob(JobExecution jobExecution) {
-        int moved = 0, failed = 0;
+        try {
+            Files.createDirectories(Paths.get(processedDir));
+        } catch (Exception e) {
+            log.error("Failed to create processed folder '{}': {}", processedDir, e.getMessage(), e);
+        }
+        jobCompleted = jobExecution.getStatus() == BatchStatus.COMPLETED;
+        if (checkpointService != null && !jobCompleted) {
+            keepForResume(jobExecution.getStatus());
+        }
+        if (completedFileFilter != null) {
+            filesToMove.addAll(completedFileFilter.getSkippedFiles());
+        }
+        if (parallel) {
+            finalizeInParallel();
+        } else {
+            finalizeSerially();
+        }
+    }
+
+    private void finalizeSerially() {
+        int moved = 0, failed = 0, clearFailed = 0;
+        Map<String, CompletableFuture<Void>> clears = new LinkedHashMap<>();
         for (String fileName : filesToMove) {
-            String contextId = contextIdProvider.getContextId(fileName);
+            if (move(fileName)) {
+                String contextId = contextIdProvider.getContextId(fileName);
+                clearCheckpoint(contextId);
+                markCompleted(fileName);
+                clears.put(contextId, cacheService.clearCacheForContextAsync(contextId, executor));
+                moved++;
+            } else {
+                failed++;
+            }
+        }
+        for (Map.Entry<String, CompletableFuture<Void>> clear : clears.entrySet()) {
             try {
-                Path source = Paths.get(inputDir, fileName);
-                Path target = Paths.get(processedDir, fileName);
-                Files.createDirectories(target.getParent());
-                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
-                log.info("Moved file '{}' to processed folder: {}", fileName, target);
+                clear.getValue().join();
+                log.info("Cleared cache for context '{}'", clear.getKey());
+                countClear(BatchConstant.OUTCOME_SUCCESS, 1);
+            } catch (CompletionException e) {
+                log.error("Failed to clear cache for context '{}': {}", clear.getKey(), e.getCause().getMessage(), e.getCause());
+                countClear(BatchConstant.OUTCOME_FAILURE, 1);
+                clearFailed++;
+            }
+        }
+        log.info("File move summary: moved={}, failed={}, clearFailed={}", moved, failed, clearFailed);
+    }
 
-                cacheService.clearCacheForContext(contextId);
-                log.info("Cleared cache for context '{}'", contextId);
+    private void finalizeInParallel() {
+        Map<String, CompletableFuture<Boolean>> moves = new LinkedHashMap<>();
+        for (String fileName : filesToMove) {
+            moves.put(fileName, CompletableFuture.supplyAsync(() -> move(fileName), executor));
+        }
+        int moved = 0, failed = 0, clearFailed = 0;
+        List<String> contextIds = new ArrayList<>();
+        for (Map.Entry<String, CompletableFuture<Boolean>> move : moves.entrySet()) {
+            if (move.getValue().join()) {
+                String contextId = contextIdProvider.getContextId(move.getKey());
+                clearCheckpoint(contextId);
+                markCompleted(move.getKey());
+                contextIds.add(contextId);
                 moved++;
-            } catch (Exception e) {
-                log.error("Failed to move file '{}': {}", fileName, e.getMessage(), e);
+            } else {
                 failed++;
             }
         }
-        log.info("File move summary: moved={}, failed={}", moved, failed);
+        if (!contextIds.isEmpty()) {
+            try {
+                cacheService.clearCacheForContext(contextIds);
+                log.info("Cleared cache for {} contexts in one call", contextIds.size());
+                countClear(BatchConstant.OUTCOME_SUCCESS, contextIds.size());
+            } catch (Exception e) {
+                log.error("Failed to clear cache for contexts {}: {}", contextIds, e.getMessage(), e);
+                countClear(BatchConstant.OUTCOME_FAILURE, contextIds.size());
+                clearFailed = contextIds.size();
+            }
+        }
+        log.info("File move summary: moved={}, failed={}, clearFailed={}", moved, failed, clearFailed);
     }
 
+    /**
+     * Leaves the files the failed job read, and their checkpoints, in place; skipped files were completed earlier and
+     * are still moved.
+     */
+    private void keepForResume(BatchStatus status) {
+        if (!filesToMove.isEmpty()) {
+            log.warn("Job ended with status {}: keeping {} files and their checkpoints for the re-run: {}",
+                    status, filesToMove.size(), filesToMove);
+            filesToMove.clear();
+        }
+    }
 
-}
\ No newline at end of file
+    /**
+     * Moves one file to the processed folder, recording its latency and outcome; never throws.
+     */
+    private boolean move(String fileName) {
+        long start = System.nanoTime();
+        try {
+            Path source = Paths.get(inputDir, fileName);
+            Path target = Paths.get(processedDir, fileName);
+            if (!target.getParent().equals(Paths.get(processedDir))) {
+                Files.createDirectories(target.getParent());
+            }
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+            moveSuccessTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            log.info("Moved file '{}' to processed folder: {}", fileName, target);
+            return true;
+        } catch (Exception e) {
+            moveFailureTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            log.error("Failed to move file '{}': {}", fileName, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Removes the checkpoint of a moved file, so a new file with the same name starts from the beginning.
+     */
+    private void clearCheckpoint(String contextId) {
+        if (checkpointService == null) {
+            return;
+        }
+        try {
+            checkpointService.clear(contextId);
+        } catch (Exception e) {
+            log.error("Failed to clear checkpoint for context '{}': {}", contextId, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Marks a moved file completed by content, so a redelivery of it is skipped before parsing. Files of a failed
+     * job may be partly processed and are not marked.
+     */
+    private void markCompleted(String fileName) {
+        if (completedFileFilter == null || !jobCompleted || completedFileFilter.getSkippedFiles().contains(fileName)) {
+            return;
+        }
+        try {
+            completedFileFilter.markCompleted(fileName);
+        } catch (Exception e) {
+            log.error("Failed to mark file '{}' completed: {}", fileName, e.getMessage(), e);
+        }
+    }
+
+    private Timer moveTimer(String outcome) {
+        return Timer.builder(BatchConstant.FILE_MOVE_METRIC)
+                .description("Latency of moving one input file to the processed folder")
+                .tag(BatchConstant.TAG_OUTCOME, outcome)
+                .register(meterRegistry);
+    }
+
+    private void countClear(String outcome, int files) {
+        meterRegistry.counter(BatchConstant.FILE_CLEAR_METRIC, BatchConstant.TAG_OUTCOME, outcome).increment(files);
+    }
+}
@@ -0,0 +1,118 @@
+package com.app.batch.common.reader;
+
+import com.app.batch.common.constant.BatchConstant;
+import com.ms.idempotentcache.cache.IdempotencyCacheService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Whole-file fast path (-Dbatch.skip.completed.files=true): drops input files whose exact content was already
+ * processed to completion, before any line is parsed.
+ * <p>
+ * Every input file is identified by the SHA-256 of its content, hashed over memory-mapped chunks of at most 64 MB.
+ * A completed file's hash is marked in a dedicated context of the cache service ("completed-files:employment-events"),
+ * which, unlike the per-file contexts, is never cleared: a marker lasts as long as the cache TTL. All input files are
+ * checked with one bulk filterUnprocessed call. A skipped file is a redelivery, so it is still handed to the
+ * FileMovingJobListener and moved to the processed folder.
+ */
+public class CompletedFileFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(CompletedFileFilter.class);
+
+    private static final long CHUNK_SIZE = 64L * 1024 * 1024;
+
+    private final IdempotencyCacheService cacheService;
+    private final Map<String, String> hashesByFileName = new ConcurrentHashMap<>();
+    private final Set<String> skippedFiles = ConcurrentHashMap.newKeySet();
+
+    public CompletedFileFilter(IdempotencyCacheService cacheService) {
+        this.cacheService = cacheService;
+    }
+
+    /**
+     * The resources whose content is not marked completed, in their original order. A file is hashed once, even if
+     * it is offered again (e.g. to both the multi-file reader and the partitioner).
+     */
+    public Resource[] withoutCompleted(Resource[] resources) {
+        if (resources == null || resources.length == 0) {
+            return resources;
+        }
+        String[] hashes = new String[resources.length];
+        for (int i = 0; i < resources.length; i++) {
+            Resource resource = resources[i];
+            hashes[i] = hashesByFileName.computeIfAbsent(resource.getFilename(), fileName -> contentHash(path(resource)));
+        }
+        Set<String> unprocessed = cacheService.filterUnprocessed(BatchConstant.COMPLETED_FILES_CONTEXT, List.of(hashes));
+        List<Resource> kept = new ArrayList<>();
+        for (int i = 0; i < resources.length; i++) {
+            if (unprocessed.contains(hashes[i])) {
+                kept.add(resources[i]);
+            } else {
+                skippedFiles.add(resources[i].getFilename());
+                log.info("Skipping file '{}': its content (sha256={}) was already processed", resources[i].getFilename(), hashes[i]);
+            }
+        }
+        log.info("Kept {} of {} input files after the completed-file check", kept.size(), resources.length);
+        return kept.toArray(new Resource[0]);
+    }
+
+    /**
+     * Marks the content of a file hashed by withoutCompleted as processed to completion.
+     */
+    public void markCompleted(String fileName) {
+        String hash = hashesByFileName.get(fileName);
+        if (hash == null) {
+            log.warn("No content hash for file '{}'; it is not marked completed", fileName);
+            return;
+        }
+        cacheService.markProcessed(BatchConstant.COMPLETED_FILES_CONTEXT, hash);
+    }
+
+    /**
+     * Files dropped by withoutCompleted, to be moved out of the input folder.
+     */
+    public Set<String> getSkippedFiles() {
+        return skippedFiles;
+    }
+
+    /**
+     * Hex SHA-256 of the file content, read through read-only mappings of at most CHUNK_SIZE bytes each.
+     */
+    static String contentHash(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long size = channel.size();
+            for (long position = 0; position < size; position += CHUNK_SIZE) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, size - position)));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not hash input file " + file, e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Path path(Resource resource) {
+        try {
+            return resource.getFile().toPath();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Input resource is not a file: " + resource, e);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.app.batch.common.reader;
+
+import com.app.batch.model.EmploymentEventRecord;
+import com.app.batch.model.EmploymentEventWithContext;
+import com.ms.idempotentcache.cache.IdempotencyCacheService;
+import com.ms.idempotentcache.checkpoint.Checkpoint;
+import com.ms.idempotentcache.context.ContextIdProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.ResourceAwareItemReaderItemStream;
+import org.springframework.core.io.Resource;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * NIO reader for employment event CSV files (ssn,plan,clientId,employmentEvent), used instead of
+ * FlatFileItemReader + DelimitedLineTokenizer + BeanWrapperFieldSetMapper with -Dbatch.reader.mode=nio.
+ * <p>
+ * The file is read through a FileChannel into one reusable byte buffer. Lines and fields are located in place,
+ * and each record is built directly from the four field ranges, without reflection and without a FieldSet or
+ * per-line String.
+ * <p>
+ * The reader saves the byte offset of the next unread line in the ExecutionContext, so a restarted step seeks
+ * straight to it instead of re-reading and skipping the items already processed. With a {@link FileCheckpointer}
+ * (-Dbatch.idempotency.mode=checkpoint) the position is also kept per file in the checkpoint store, so a new run
+ * of a partly processed file starts at its checkpoint.
+ * <p>
+ * With a ContextIdProvider (-Dbatch.warm.contexts=true) setResource also warms the file's context in the cache
+ * service, as ContextAwareFlatFileItemReader does.
+ * <p>
+ * Fields are comma separated and trimmed; quoted fields are not supported (the employment feeds never quote).
+ * Blank lines are skipped, and the last line does not need a trailing newline.
+ */
+public class EmploymentEventCsvItemReader extends ItemStreamSupport
+        implements ResourceAwareItemReaderItemStream<EmploymentEventWithContext> {
+
+    private static final Logger log = LoggerFactory.getLogger(EmploymentEventCsvItemReader.class);
+
+    private static final String BYTE_OFFSET = "byte.offset";
+    private static final int FIELD_COUNT = 4;
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final int[] fieldStarts = new int[FIELD_COUNT];
+    private final int[] fieldEnds = new int[FIELD_COUNT];
+
+    private Resource resource;
+    private String fileName;
+    private int linesToSkip = 0;
+    private boolean saveState = true;
+    private FileCheckpointer checkpointer;
+    private IdempotencyCacheService cacheService;
+    private ContextIdProvider<String> contextIdProvider;
+
+    private FileChannel channel;
+    private byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+    private long bufferOffset;
+    private int position;
+    private int limit;
+    private boolean endOfFile;
+    private int lineStart;
+    private int lineEnd;
+    private long lineNumber;
+
+    public EmploymentEventCsvItemReader() {
+        setName(ClassUtils.getShortName(EmploymentEventCsvItemReader.class));
+    }
+
+    @Override
+    public void setResource(Resource resource) {
+        this.resource = resource;
+        this.fileName = (resource != null) ? resource.getFilename() : null;
+        if (cacheService != null && contextIdProvider != null && fileName != null) {
+            String contextId = contextIdProvider.getContextId(fileName);
+            log.debug("Warming contextId='{}' for file {}", contextId, fileName);
+            cacheService.warmContext(contextId);
+        }
+    }
+
+    public void setLinesToSkip(int linesToSkip) {
+        this.linesToSkip = linesToSkip;
+    }
+
+    public void setSaveState(boolean saveState) {
+        this.saveState = saveState;
+    }
+
+    public void setCheckpointer(FileCheckpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
+
+    public void setCacheService(IdempotencyCacheService cacheService) {
+        this.cacheService = cacheService;
+    }
+
+    public void setContextIdProvider(ContextIdProvider<String> contextIdProvider) {
+        this.contextIdProvider = contextIdProvider;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.buffer = new byte[bufferSize];
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (resource == null || !resource.exists()) {
+            throw new ItemStreamException("Input resource must exist: " + resource);
+        }
+        long offset = executionContext.getLong(getExecutionContextKey(BYTE_OFFSET), 0L);
+        lineNumber = 0;
+        Checkpoint checkpoint = (checkpointer != null) ? checkpointer.open(resource) : null;
+        if (checkpoint != null && checkpoint.offset() > offset) {
+            offset = checkpoint.offset();
+            lineNumber = checkpoint.line();
+        }
+        try {
+            channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ);
+            channel.position(offset);
+        } catch (IOException e) {
+            throw new ItemStreamException("Could not open input resource " + resource, e);
+        }
+        bufferOffset = offset;
+        position = 0;
+        limit = 0;
+        endOfFile = false;
+        if (offset == 0) {
+            for (int i = 0; i < linesToSkip && nextLine(); i++) {
+                // header
+            }
+        } else {
+            log.info("Restarting file '{}' at byte offset {}", fileName, offset);
+        }
+    }
+
+    @Override
+    public EmploymentEventWithContext read() throws Exception {
+        while (nextLine()) {
+            if (lineEnd > lineStart) {
+                return new EmploymentEventWithContext(mapLine(), fileName);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Saves the byte offset of the next unread line, and advances the checkpoint to it.
+     */
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (saveState && channel != null) {
+            executionContext.putLong(getExecutionContextKey(BYTE_OFFSET), bufferOffset + position);
+        }
+        if (checkpointer != null) {
+            if (channel != null) {
+                checkpointer.mark(bufferOffset + position, lineNumber);
+            }
+            checkpointer.save();
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (checkpointer != null) {
+            if (channel != null) {
+                checkpointer.mark(bufferOffset + position, lineNumber);
+            }
+            checkpointer.close();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new ItemStreamException("Could not close input resource " + resource, e);
+            } finally {
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Splits the current line at its commas and builds the record directly from the trimmed field ranges.
+     */
+    private EmploymentEventRecord mapLine() {
+        int field = 0;
+        int start = lineStart;
+        for (int i = lineStart; i <= lineEnd; i++) {
+            if (i == lineEnd || buffer[i] == ',') {
+                if (field == FIELD_COUNT) {
+                    throw parseException("Too many fields");
+                }
+                fieldStarts[field] = start;
+                fieldEnds[field] = i;
+                field++;
+                start = i + 1;
+            } else if (buffer[i] == '"') {
+                throw parseException("Quoted fields are not supported");
+            }
+        }
+        if (field != FIELD_COUNT) {
+            throw parseException("Expected " + FIELD_COUNT + " fields but found " + field);
+        }
+        return new EmploymentEventRecord(field(0), field(1), field(2), field(3));
+    }
+
+    private String field(int index) {
+        int start = fieldStarts[index];
+        int end = fieldEnds[index];
+        while (start < end && buffer[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buffer[end - 1] <= ' ') {
+            end--;
+        }
+        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Advances to the next line, refilling the buffer as needed; sets lineStart/lineEnd (without the line break).
+     *
+     * @return false at the end of the file
+     */
+    private boolean nextLine() throws ItemStreamException {
+        int scan = position;
+        while (true) {
+            for (int i = scan; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    setLine(position, i);
+                    position = i + 1;
+                    return true;
+                }
+            }
+            if (endOfFile) {
+                if (position < limit) {
+                    setLine(position, limit);
+                    position = limit;
+                    return true;
+                }
+                return false;
+            }
+            scan = limit - position;
+            fill();
+        }
+    }
+
+    private void setLine(int start, int end) {
+        lineStart = start;
+        lineEnd = (end > start && buffer[end - 1] == '\r') ? end - 1 : end;
+        lineNumber++;
+    }
+
+    /**
+     * Moves the unread bytes to the front of the buffer (growing it if a single line fills it) and reads more.
+     */
+    private void fill() throws ItemStreamException {
+        int remaining = limit - position;
+        if (remaining == buffer.length) {
+            byte[] grown = new byte[buffer.length * 2];
+            System.arraycopy(buffer, position, grown, 0, remaining);
+            buffer = grown;
+        } else {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        }
+        bufferOffset += position;
+        position = 0;
+        limit = remaining;
+        try {
+            int read = channel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit));
+            if (read < 0) {
+                endOfFile = true;
+            } else {
+                limit += read;
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Could not read input resource " + resource, e);
+        }
+    }
+
+    private FlatFileParseException parseException(String message) {
+        String line = new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+        return new FlatFileParseException(message + " in " + fileName + " at line " + lineNumber + ": " + line,
+                line, (int) lineNumber);
+    }
+}
@@ -0,0 +1,163 @@
+package com.app.batch.common.reader;
+
+import com.ms.idempotentcache.checkpoint.Checkpoint;
+import com.ms.idempotentcache.checkpoint.CheckpointService;
+import com.ms.idempotentcache.context.ContextIdProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Keeps the checkpoint (high-water mark) of the file a reader is on, for -Dbatch.idempotency.mode=checkpoint.
+ * <p>
+ * The reader reports its position with mark and calls save from its ItemStream update, i.e. once the chunk has been
+ * written, so the stored offset never passes data that was not written. A file closed in the middle of a chunk
+ * (MultiResourceItemReader moving to the next file) keeps its final mark pending until that chunk is written.
+ * <p>
+ * The checksum covers the first and the last 4 KB before the offset (CRC32C). It detects a file that was replaced,
+ * truncated or rewritten since the mark, while verifying it on resume costs two small reads instead of re-reading
+ * the whole prefix. A mark that does not verify is ignored and the file is read from the start.
+ */
+public class FileCheckpointer {
+
+    private static final Logger log = LoggerFactory.getLogger(FileCheckpointer.class);
+
+    private static final int WINDOW = 4 * 1024;
+
+    private final CheckpointService checkpointService;
+    private final ContextIdProvider<String> contextIdProvider;
+    private final ByteBuffer window = ByteBuffer.allocate(2 * WINDOW);
+    private final Map<String, Checkpoint> pending = new LinkedHashMap<>();
+
+    private FileChannel channel;
+    private String fileName;
+    private String contextId;
+    private long offset;
+    private long line;
+    private long savedOffset;
+
+    public FileCheckpointer(CheckpointService checkpointService, ContextIdProvider<String> contextIdProvider) {
+        this.checkpointService = checkpointService;
+        this.contextIdProvider = contextIdProvider;
+    }
+
+    /**
+     * Starts tracking the file and returns its stored checkpoint, or null if it has none or it does not match the
+     * file any more.
+     */
+    public Checkpoint open(Resource resource) throws ItemStreamException {
+        fileName = resource.getFilename();
+        contextId = contextIdProvider.getContextId(fileName);
+        try {
+            channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new ItemStreamException("Could not open input resource " + resource, e);
+        }
+        offset = 0;
+        line = 0;
+        savedOffset = 0;
+        Checkpoint checkpoint = checkpointService.get(contextId);
+        if (checkpoint == null) {
+            return null;
+        }
+        if (!matches(checkpoint)) {
+            log.warn("Ignoring checkpoint {} of file '{}': the file changed since it was written", checkpoint, fileName);
+            return null;
+        }
+        offset = checkpoint.offset();
+        line = checkpoint.line();
+        savedOffset = offset;
+        log.info("Resuming file '{}' from checkpoint at byte offset {} (line {})", fileName, offset, line);
+        return checkpoint;
+    }
+
+    /**
+     * Records the position after the last item read: the next unread byte and the number of lines before it.
+     */
+    public void mark(long offset, long line) {
+        this.offset = offset;
+        this.line = line;
+    }
+
+    /**
+     * Stores the pending marks of closed files and the current mark, if it moved since the last save.
+     */
+    public void save() throws ItemStreamException {
+        pending.forEach(checkpointService::advance);
+        pending.clear();
+        if (channel != null && offset > savedOffset) {
+            checkpointService.advance(contextId, checkpoint());
+            savedOffset = offset;
+        }
+    }
+
+    /**
+     * Stops tracking the file; its last mark is stored by the next save.
+     */
+    public void close() throws ItemStreamException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (offset > savedOffset) {
+                pending.put(contextId, checkpoint());
+            }
+            channel.close();
+        } catch (IOException e) {
+            throw new ItemStreamException("Could not close checkpoint channel of " + fileName, e);
+        } finally {
+            channel = null;
+        }
+    }
+
+    private boolean matches(Checkpoint checkpoint) {
+        try {
+            return checkpoint.offset() <= channel.size() && checksum(checkpoint.offset()) == checkpoint.checksum();
+        } catch (IOException e) {
+            throw new ItemStreamException("Could not verify checkpoint of " + fileName, e);
+        }
+    }
+
+    private Checkpoint checkpoint() {
+        try {
+            return new Checkpoint(offset, line, checksum(offset));
+        } catch (IOException e) {
+            throw new ItemStreamException("Could not checksum " + fileName, e);
+        }
+    }
+
+    /**
+     * CRC32C of the head window [0, min(4 KB, end)) and the tail window [max(head, end - 4 KB), end).
+     */
+    private long checksum(long end) throws IOException {
+        long head = Math.min(WINDOW, end);
+        long tail = Math.max(head, end - WINDOW);
+        window.clear();
+        read(0, head);
+        read(tail, end - tail);
+        window.flip();
+        CRC32C crc = new CRC32C();
+        crc.update(window);
+        return crc.getValue();
+    }
+
+    private void read(long position, long length) throws IOException {
+        int start = window.position();
+        window.limit(start + (int) length);
+        while (window.hasRemaining()) {
+            if (channel.read(window, position + window.position() - start) < 0) {
+                throw new IOException("Unexpected end of file " + fileName);
+            }
+        }
+        window.limit(window.capacity());
+    }
+}
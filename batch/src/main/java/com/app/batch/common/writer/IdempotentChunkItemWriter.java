@@ -0,0 +1,80 @@
+package com.app.batch.common.writer;
+
+import com.ms.idempotentcache.cache.IdempotencyCacheService;
+import com.ms.idempotentcache.context.ContextIdProvider;
+import com.ms.idempotentcache.record.RecordKeyProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemWriter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ItemWriter decorator that applies idempotency to a whole chunk at once instead of item by item.
+ * <p>
+ * For every chunk it:
+ * - drops duplicates inside the chunk (first occurrence wins)
+ * - claims all remaining keys with a single bulk tryMarkProcessed call (one scripted round trip per context)
+ * - hands only the newly claimed records, in their original order, to the delegate writer
+ */
+public class IdempotentChunkItemWriter<T> implements ItemWriter<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotentChunkItemWriter.class);
+
+    private final ItemWriter<T> delegate;
+    private final IdempotencyCacheService cacheService;
+    private final ContextIdProvider<T> contextIdProvider;
+    private final RecordKeyProvider<T> recordKeyProvider;
+
+    public IdempotentChunkItemWriter(ItemWriter<T> delegate,
+                                     IdempotencyCacheService cacheService,
+                                     ContextIdProvider<T> contextIdProvider,
+                                     RecordKeyProvider<T> recordKeyProvider) {
+        this.delegate = delegate;
+        this.cacheService = cacheService;
+        this.contextIdProvider = contextIdProvider;
+        this.recordKeyProvider = recordKeyProvider;
+    }
+
+    @Override
+    public void write(Chunk<? extends T> chunk) throws Exception {
+        if (chunk.isEmpty()) {
+            delegate.write(chunk);
+            return;
+        }
+
+        // Drop in-chunk duplicates, keeping the first item seen for every (context, key)
+        List<? extends T> items = chunk.getItems();
+        String[] contextIds = new String[items.size()];
+        String[] keys = new String[items.size()];
+        boolean[] firstOccurrence = new boolean[items.size()];
+        Map<String, Set<String>> keysByContext = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            contextIds[i] = contextIdProvider.getContextId(items.get(i));
+            keys[i] = recordKeyProvider.getKey(items.get(i));
+            firstOccurrence[i] = keysByContext.computeIfAbsent(contextIds[i], id -> new LinkedHashSet<>()).add(keys[i]);
+            if (!firstOccurrence[i]) {
+                log.info("Skipping in-chunk duplicate: '{}' in context '{}'", keys[i], contextIds[i]);
+            }
+        }
+
+        Map<String, Set<String>> claimedByContext = cacheService.tryMarkProcessed(keysByContext);
+
+        // Keep original chunk order for the claimed items
+        List<T> fresh = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            Set<String> claimed = claimedByContext.get(contextIds[i]);
+            if (firstOccurrence[i] && claimed != null && claimed.contains(keys[i])) {
+                fresh.add(items.get(i));
+            }
+        }
+        log.info("Chunk dedupe: received={} new={} skipped={}", chunk.size(), fresh.size(), chunk.size() - fresh.size());
+        delegate.write(new Chunk<>(fresh));
+    }
+}
@@ -0,0 +1,50 @@
+package com.app.batch.common.key;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.app.batch.model.EmploymentEventRecord;
+import org.junit.jupiter.api.Test;
+
+class EmploymentEventNumericKeyProviderTest {
+
+    private final EmploymentEventNumericKeyProvider provider = new EmploymentEventNumericKeyProvider();
+
+    @Test
+    void packsEveryFieldIntoItsBits() {
+        long key = provider.getNumericKey(new EmploymentEventRecord("123-45-6789", "P1000", "ABC", "LOA"));
+
+        assertThat(key & ((1L << 30) - 1)).isEqualTo(123_456_789L);
+        assertThat((key >>> 30) & ((1L << 14) - 1)).isEqualTo(1000);
+        assertThat((key >>> 44) & 3).isEqualTo(3);
+        assertThat((key >>> 46) & ((1L << 15) - 1)).isEqualTo((1 * 27 + 2) * 27 + 3);
+        assertThat(key >>> 61).isEqualTo(EmploymentEventNumericKeyProvider.EVENTS.indexOf("LOA"));
+        assertThat(provider.getKey(new EmploymentEventRecord("123-45-6789", "P1000", "ABC", "LOA"))).isEqualTo(Long.toString(key));
+        assertThat(provider.getNumericKey(new EmploymentEventRecord("123-45-6789", "P1000", "AB", "LOA"))).isNotEqualTo(key);
+    }
+
+    @Test
+    void plansWithLeadingZerosKeepDistinctKeys() {
+        long shortPlan = provider.getNumericKey(new EmploymentEventRecord("123-45-6789", "P2", "ABC", "LOA"));
+        long paddedPlan = provider.getNumericKey(new EmploymentEventRecord("123-45-6789", "P0002", "ABC", "LOA"));
+
+        assertThat(shortPlan).isNotNegative().isNotEqualTo(paddedPlan);
+        assertThat(paddedPlan).isNotNegative();
+    }
+
+    @Test
+    void recordsThatDoNotFitAreHashedInsteadOfRejected() {
+        var records = new EmploymentEventRecord[]{
+                new EmploymentEventRecord("123456789", "P1000", "ABC", "LOA"),
+                new EmploymentEventRecord("123-45-6789", "P10000", "ABC", "LOA"),
+                new EmploymentEventRecord("123-45-6789", "1000", "ABC", "LOA"),
+                new EmploymentEventRecord("123-45-6789", "P1000", "abc", "LOA"),
+                new EmploymentEventRecord("123-45-6789", "P1000", "ABCD", "LOA"),
+                new EmploymentEventRecord("123-45-6789", "P1000", "ABC", "RETIRED")};
+        for (EmploymentEventRecord record : records) {
+            long key = provider.getNumericKey(record);
+            assertThat(key).isNegative().isEqualTo(provider.getNumericKey(record));
+        }
+        assertThat(provider.getNumericKey(records[3])).isNotEqualTo(
+                provider.getNumericKey(new EmploymentEventRecord("123-45-6789", "P1000", "abd", "LOA")));
+    }
+}
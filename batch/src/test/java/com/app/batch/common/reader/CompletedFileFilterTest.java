@@ -0,0 +1,51 @@
+package com.app.batch.common.reader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ms.idempotentcache.cache.OffHeapIdempotencyCacheService;
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+
+class CompletedFileFilterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void skipsFilesWhoseContentWasCompleted() throws Exception {
+        var cache = new OffHeapIdempotencyCacheService(new IdempotencyProperties());
+        Path first = directory.resolve("client-abc.csv");
+        Files.writeString(first, "ssn,plan,clientId,employmentEvent\n123-45-6789,P0002,ABC,EMPLOYED\n");
+        var filter = new CompletedFileFilter(cache);
+        assertThat(filter.withoutCompleted(resources(first))).hasSize(1);
+        filter.markCompleted("client-abc.csv");
+
+        Path resent = directory.resolve("client-abc-resent.csv");
+        Files.copy(first, resent);
+        Path changed = directory.resolve("client-abc-changed.csv");
+        Files.writeString(changed, Files.readString(first) + "987-65-3217,P1000,ABC,TERMINATED\n");
+        var nextRun = new CompletedFileFilter(cache);
+        Resource[] kept = nextRun.withoutCompleted(resources(first, resent, changed));
+
+        assertThat(kept).extracting(Resource::getFilename).containsExactly("client-abc-changed.csv");
+        assertThat(nextRun.getSkippedFiles()).containsExactlyInAnyOrder("client-abc.csv", "client-abc-resent.csv");
+        assertThat(CompletedFileFilter.contentHash(resent)).isEqualTo(CompletedFileFilter.contentHash(first))
+                .isEqualTo("%064x", new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(first))));
+    }
+
+    private static Resource[] resources(Path... files) {
+        Resource[] resources = new Resource[files.length];
+        for (int i = 0; i < files.length; i++) {
+            resources[i] = new FileSystemResource(files[i]);
+        }
+        return resources;
+    }
+}
@@ -0,0 +1,104 @@
+package com.app.batch.common.reader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.app.batch.model.EmploymentEventWithContext;
+import com.ms.idempotentcache.checkpoint.InMemoryCheckpointService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+class EmploymentEventCsvItemReaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsRecordsAndRestartsFromByteOffset() throws Exception {
+        Path file = directory.resolve("client-abc.csv");
+        Files.writeString(file, "ssn,plan,clientId,employmentEvent\r\n"
+                + "123-45-6789,P0002,ABC,EMPLOYED\r\n"
+                + "\n"
+                + "987-65-3217, P1000 ,ABC,TERMINATED\n"
+                + "123-34-1323,P0002,ABC,LOA");
+
+        var reader = reader(file, 8);
+        var executionContext = new ExecutionContext();
+        reader.open(executionContext);
+        EmploymentEventWithContext first = reader.read();
+        assertThat(first.getFileName()).isEqualTo("client-abc.csv");
+        assertThat(first.getRecord().getSsn()).isEqualTo("123-45-6789");
+        assertThat(first.getRecord().getEmploymentEvent()).isEqualTo("EMPLOYED");
+        reader.update(executionContext);
+        reader.close();
+
+        var restarted = reader(file, 1024);
+        restarted.open(executionContext);
+        assertThat(restarted.read().getRecord().getPlan()).isEqualTo("P1000");
+        assertThat(restarted.read().getRecord().getEmploymentEvent()).isEqualTo("LOA");
+        assertThat(restarted.read()).isNull();
+        restarted.close();
+    }
+
+    @Test
+    void resumesFromCheckpointUntilTheFileChanges() throws Exception {
+        Path file = directory.resolve("client-xyz.csv");
+        Files.writeString(file, "ssn,plan,clientId,employmentEvent\n"
+                + "123-45-6789,P0002,XYZ,EMPLOYED\n"
+                + "987-65-3217,P1000,XYZ,TERMINATED\n");
+        var checkpoints = new InMemoryCheckpointService();
+
+        var reader = reader(file, 1024);
+        reader.setCheckpointer(new FileCheckpointer(checkpoints, fileName -> "ctx:" + fileName));
+        reader.open(new ExecutionContext());
+        reader.read();
+        reader.update(new ExecutionContext());
+        reader.close();
+        assertThat(checkpoints.get("ctx:client-xyz.csv").line()).isEqualTo(2);
+
+        Files.writeString(file, "123-34-1323,P0002,XYZ,LOA\n", StandardOpenOption.APPEND);
+        var resumed = reader(file, 1024);
+        resumed.setCheckpointer(new FileCheckpointer(checkpoints, fileName -> "ctx:" + fileName));
+        resumed.open(new ExecutionContext());
+        assertThat(resumed.read().getRecord().getEmploymentEvent()).isEqualTo("TERMINATED");
+        assertThat(resumed.read().getRecord().getEmploymentEvent()).isEqualTo("LOA");
+        assertThat(resumed.read()).isNull();
+        resumed.close();
+
+        Files.writeString(file, "ssn,plan,clientId,employmentEvent\n"
+                + "555-55-5555,P0003,XYZ,EMPLOYED\n");
+        var replaced = reader(file, 1024);
+        replaced.setCheckpointer(new FileCheckpointer(checkpoints, fileName -> "ctx:" + fileName));
+        replaced.open(new ExecutionContext());
+        assertThat(replaced.read().getRecord().getSsn()).isEqualTo("555-55-5555");
+        replaced.close();
+    }
+
+    @Test
+    void rejectsLinesWithWrongFieldCount() throws Exception {
+        Path file = directory.resolve("client-bad.csv");
+        Files.writeString(file, "ssn,plan,clientId,employmentEvent\n123-45-6789,P0002,ABC\n");
+
+        var reader = reader(file, 1024);
+        reader.open(new ExecutionContext());
+        assertThatThrownBy(reader::read)
+                .isInstanceOf(FlatFileParseException.class)
+                .hasMessageContaining("Expected 4 fields");
+        reader.close();
+    }
+
+    private EmploymentEventCsvItemReader reader(Path file, int bufferSize) {
+        var reader = new EmploymentEventCsvItemReader();
+        reader.setResource(new FileSystemResource(file));
+        reader.setLinesToSkip(1);
+        reader.setBufferSize(bufferSize);
+        return reader;
+    }
+}
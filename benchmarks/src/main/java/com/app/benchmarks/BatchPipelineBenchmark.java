@@ -0,0 +1,113 @@
+package com.app.benchmarks;
+
+import com.app.batch.common.config.BatchConfig;
+import com.app.batch.common.constant.BatchConstant;
+import com.app.batch.model.EmploymentEventWithContext;
+import com.ms.idempotentcache.cache.IdempotencyCacheService;
+import com.ms.idempotentcache.checkpoint.InMemoryCheckpointService;
+import com.ms.idempotentcache.config.StoreType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.file.ResourceAwareItemReaderItemStream;
+
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end hot path of the batch job: the BatchConfig reader and idempotency processor over one generated CSV
+ * file, in records per second.
+ * <p>
+ * The file holds {@link #RECORDS} rows, every tenth one a duplicate of the row before it, and the context is cleared
+ * before each pass so every pass claims the same keys. The writer and the Spring Batch chunk machinery are left out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BatchPipelineBenchmark {
+
+    static final int RECORDS = 20_000;
+
+    @Param({"OFF_HEAP", "REDIS_SET"})
+    StoreType store;
+
+    @Param({BatchConstant.READER_MODE_FLAT, BatchConstant.READER_MODE_NIO})
+    String readerMode;
+
+    private BenchmarkCaches caches;
+    private IdempotencyCacheService cache;
+    private ItemProcessor<EmploymentEventWithContext, EmploymentEventWithContext> processor;
+    private ResourceAwareItemReaderItemStream<EmploymentEventWithContext> reader;
+    private String contextId;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = Files.createTempFile("employment-events-bench", ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("ssn,plan,clientId,employmentEvent\n");
+            for (int i = 0; i < RECORDS; i++) {
+                int row = i % 10 == 9 ? i - 1 : i;
+                writer.write(String.format("%03d-%02d-%04d,P%04d,BENCH,EMPLOYED%n",
+                        row / 1_000_000 % 1000, row / 10_000 % 100, row % 10_000, row % 7));
+            }
+        }
+
+        System.setProperty(BatchConstant.BATCH_READER_MODE, readerMode);
+        caches = new BenchmarkCaches(store);
+        cache = caches.cache();
+        BatchConfig config = new BatchConfig();
+        processor = config.processor(cache, config.recordKeyProvider(), config.contextIdProvider());
+        reader = config.partitionFileReader(cache, new InMemoryCheckpointService(), file.toUri().toString());
+        contextId = config.contextIdProvider().getContextId(file.getFileName().toString());
+    }
+
+    @Setup(Level.Invocation)
+    public void clearContext() {
+        cache.clearCacheForContext(contextId);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        cache.clearCacheForContext(contextId);
+        caches.close();
+        Files.deleteIfExists(file);
+        System.clearProperty(BatchConstant.BATCH_READER_MODE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public int readAndProcess() throws Exception {
+        int processed = 0;
+        reader.open(new ExecutionContext());
+        try {
+            EmploymentEventWithContext item;
+            while ((item = reader.read()) != null) {
+                if (processor.process(item) != null) {
+                    processed++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return processed;
+    }
+}
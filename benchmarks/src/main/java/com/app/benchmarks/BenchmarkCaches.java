@@ -0,0 +1,87 @@
+package com.app.benchmarks;
+
+import com.ms.idempotentcache.cache.BloomFilterIdempotencyCacheService;
+import com.ms.idempotentcache.cache.IdempotencyCacheService;
+import com.ms.idempotentcache.cache.MappedFileIdempotencyCacheService;
+import com.ms.idempotentcache.cache.OffHeapIdempotencyCacheService;
+import com.ms.idempotentcache.cache.RedisIdempotencyCacheService;
+import com.ms.idempotentcache.cache.RoaringBitmapIdempotencyCacheService;
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import com.ms.idempotentcache.config.StoreType;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Builds IdempotencyCacheService instances outside Spring, one per benchmark trial.
+ * <p>
+ * Redis stores connect to -Dredis.host / -Dredis.port (default localhost:6379). OFF_HEAP is the in-process
+ * stand-in that needs no Redis; MAPPED_FILE writes to a temporary directory deleted on close. The benchmark keys are
+ * not numeric, so ROARING and REDIS_ROARING store their 64-bit fingerprints.
+ */
+final class BenchmarkCaches implements AutoCloseable {
+
+    static final String PREFIX = "idempotent-cache-bench:";
+
+    private final IdempotencyCacheService cache;
+    private final LettuceConnectionFactory connectionFactory;
+    private final Path directory;
+
+    BenchmarkCaches(StoreType store) throws IOException {
+        IdempotencyProperties properties = new IdempotencyProperties();
+        properties.setPrefix(PREFIX);
+        properties.setStore(store);
+        if (store.isLocal()) {
+            connectionFactory = null;
+            if (store == StoreType.MAPPED_FILE) {
+                directory = Files.createTempDirectory("idempotent-cache-bench");
+                properties.getMappedFile().setDirectory(directory.toString());
+                cache = new MappedFileIdempotencyCacheService(properties);
+            } else if (store == StoreType.ROARING) {
+                directory = null;
+                cache = new RoaringBitmapIdempotencyCacheService(properties);
+            } else {
+                directory = null;
+                cache = new OffHeapIdempotencyCacheService(properties);
+            }
+            return;
+        }
+
+        directory = null;
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379)));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        properties.getBloom().setExpectedInsertions(1_000_000);
+        cache = switch (store) {
+            case REDIS_BLOOM -> new BloomFilterIdempotencyCacheService(redisTemplate, properties, null);
+            case REDIS_ROARING -> new RoaringBitmapIdempotencyCacheService(properties, redisTemplate);
+            default -> new RedisIdempotencyCacheService(redisTemplate, properties);
+        };
+    }
+
+    IdempotencyCacheService cache() {
+        return cache;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (cache instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (directory != null) {
+            try (var files = Files.walk(directory)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.app.benchmarks;
+
+import com.ms.idempotentcache.cache.IdempotencyCacheService;
+import com.ms.idempotentcache.config.StoreType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single and bulk operations of every IdempotencyCacheService store, in keys per second.
+ * <p>
+ * Every context holds a fixed pool of {@link #KEYS_PER_CONTEXT} keys, half of them marked processed during setup,
+ * so isProcessed and filterUnprocessed see a 50% hit rate. Writes cycle over the same pool, so after the first pass
+ * they measure the duplicate path as well. Each thread walks its own cursor over the contexts; run with -t to
+ * compare thread counts, e.g.
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar IdempotencyCacheBenchmark -t 8 -p store=OFF_HEAP,REDIS_SET
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdempotencyCacheBenchmark {
+
+    static final int KEYS_PER_CONTEXT = 16_384;
+    static final int BATCH_SIZE = 128;
+
+    @Param({"OFF_HEAP", "MAPPED_FILE", "ROARING", "REDIS_SET", "REDIS_BLOOM", "REDIS_ROARING"})
+    StoreType store;
+
+    @Param({"32", "256"})
+    int keySize;
+
+    @Param({"1", "64"})
+    int contexts;
+
+    private BenchmarkCaches caches;
+    private IdempotencyCacheService cache;
+    private String[] contextIds;
+    private String[][] keys;
+    private List<Set<String>>[] batches;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        caches = new BenchmarkCaches(store);
+        cache = caches.cache();
+        SplittableRandom random = new SplittableRandom(42);
+        contextIds = new String[contexts];
+        keys = new String[contexts][KEYS_PER_CONTEXT];
+        batches = new List[contexts];
+        for (int c = 0; c < contexts; c++) {
+            contextIds[c] = "bench-" + keySize + "-" + c;
+            cache.clearCacheForContext(contextIds[c]);
+            batches[c] = new ArrayList<>();
+            Set<String> processed = new LinkedHashSet<>();
+            Set<String> batch = new LinkedHashSet<>();
+            for (int i = 0; i < KEYS_PER_CONTEXT; i++) {
+                keys[c][i] = key(random, c, i);
+                if (i % 2 == 0) {
+                    processed.add(keys[c][i]);
+                }
+                batch.add(keys[c][i]);
+                if (batch.size() == BATCH_SIZE) {
+                    batches[c].add(batch);
+                    batch = new LinkedHashSet<>();
+                }
+            }
+            cache.markProcessed(contextIds[c], processed);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        for (String contextId : contextIds) {
+            cache.clearCacheForContext(contextId);
+        }
+        caches.close();
+    }
+
+    /**
+     * Per-thread position in the key pool, started at a random offset so threads do not move in lockstep.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int next = ThreadLocalRandom.current().nextInt(KEYS_PER_CONTEXT);
+
+        int advance() {
+            return next++ & Integer.MAX_VALUE;
+        }
+    }
+
+    @Benchmark
+    public boolean isProcessed(Cursor cursor) {
+        int position = cursor.advance();
+        int context = position % contexts;
+        return cache.isProcessed(contextIds[context], keys[context][position / contexts % KEYS_PER_CONTEXT]);
+    }
+
+    @Benchmark
+    public void markProcessed(Cursor cursor) {
+        int position = cursor.advance();
+        int context = position % contexts;
+        cache.markProcessed(contextIds[context], keys[context][position / contexts % KEYS_PER_CONTEXT]);
+    }
+
+    @Benchmark
+    public boolean tryMarkProcessed(Cursor cursor) {
+        int position = cursor.advance();
+        int context = position % contexts;
+        return cache.tryMarkProcessed(contextIds[context], keys[context][position / contexts % KEYS_PER_CONTEXT]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Set<String> filterUnprocessedBulk(Cursor cursor) {
+        int position = cursor.advance();
+        int context = position % contexts;
+        List<Set<String>> contextBatches = batches[context];
+        return cache.filterUnprocessed(contextIds[context], contextBatches.get(position / contexts % contextBatches.size()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void markProcessedBulk(Cursor cursor) {
+        int position = cursor.advance();
+        int context = position % contexts;
+        List<Set<String>> contextBatches = batches[context];
+        cache.markProcessed(contextIds[context], contextBatches.get(position / contexts % contextBatches.size()));
+    }
+
+    /**
+     * Unique key of exactly keySize characters: "context:index:" padded with random letters.
+     */
+    private String key(SplittableRandom random, int context, int index) {
+        StringBuilder key = new StringBuilder(keySize).append(context).append(':').append(index).append(':');
+        while (key.length() < keySize) {
+            key.append((char) ('a' + random.nextInt(26)));
+        }
+        return key.toString();
+    }
+}
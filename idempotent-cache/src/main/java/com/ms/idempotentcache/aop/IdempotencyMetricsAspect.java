@@ -1,27 +1,37 @@
 package com.ms.idempotentcache.aop;
 
 
+import com.ms.idempotentcache.config.IdempotencyProperties;
 import com.ms.idempotentcache.constant.IdempotencyConstant;
-import io.micrometer.core.instrument.Counter;
+import com.ms.idempotentcache.metrics.IdempotencyMeters;
+import com.ms.idempotentcache.metrics.IdempotencyMeters.Operation;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.aspectj.lang.ProceedingJoinPoint;
-import org.aspectj.lang.annotation.After;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
 
 /**
  * Aspect for collecting metrics on idempotency cache operations.
  * <p>
  * Tracks:
- * - cache hits and misses for isProcessed()
+ * - cache hits and misses for isProcessed() and the bulk filterUnprocessed()
  * - calls to markProcessed()
- * - cache clear operations
+ * - claims and duplicates reported by tryMarkProcessed()
+ * - cache clear operations, synchronous or asynchronous
+ * - latency of every call, keys per bulk call and errors by exception type (see {@link IdempotencyMeters})
  * <p>
  * All metrics are available via Micrometer and Spring Boot Actuator endpoints.
+ * With idempotency.key.metrics.mode=decorator, MeteredIdempotencyCacheService records the same meters without a proxy.
  */
 
 @Aspect
@@ -30,21 +40,25 @@ public class IdempotencyMetricsAspect {
 
     private static final Logger log = LoggerFactory.getLogger(IdempotencyMetricsAspect.class);
 
-    private final Counter cacheHitCounter;
-    private final Counter cacheMissCounter;
-    private final Counter markProcessedCounter;
-    private final Counter clearCacheCounter;
+    private final IdempotencyMeters meters;
 
     /**
-     * Registers counters with the provided MeterRegistry.
+     * Registers meters with the provided MeterRegistry, using the default SLO buckets.
      *
      * @param meterRegistry The registry used for collecting metrics.
      */
     public IdempotencyMetricsAspect(MeterRegistry meterRegistry) {
-        this.cacheHitCounter = meterRegistry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_HIT);
-        this.cacheMissCounter = meterRegistry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_MISS);
-        this.markProcessedCounter = meterRegistry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_MARK_PROCESSED);
-        this.clearCacheCounter = meterRegistry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_CLEARED);
+        this(meterRegistry, new IdempotencyProperties.Metrics());
+    }
+
+    /**
+     * Registers meters with the provided MeterRegistry.
+     *
+     * @param meterRegistry The registry used for collecting metrics.
+     * @param properties    SLO buckets and histogram settings of the timers.
+     */
+    public IdempotencyMetricsAspect(MeterRegistry meterRegistry, IdempotencyProperties.Metrics properties) {
+        this.meters = new IdempotencyMeters(meterRegistry, properties);
     }
 
     /**
@@ -53,29 +67,171 @@ public class IdempotencyMetricsAspect {
      */
     @Around(IdempotencyConstant.AOP_IS_PROCESSED_POINTCUT_EXPRESSION)
     public Object aroundIsProcessed(ProceedingJoinPoint pjp) throws Throwable {
-        Object result = pjp.proceed();
+        Object result = timed(pjp, Operation.IS_PROCESSED);
         if (result instanceof Boolean && (Boolean) result) {
-            cacheHitCounter.increment();
+            meters.hit(1);
+        } else {
+            meters.miss(1);
+        }
+        return result;
+    }
+
+    /**
+     * Tracks cache hits and misses for bulk idempotency checks.
+     * Every distinct requested key counts as a 'miss' if it is returned as unprocessed, as a 'hit' otherwise.
+     */
+    @Around(IdempotencyConstant.AOP_FILTER_UNPROCESSED_POINTCUT_EXPRESSION)
+    public Object aroundFilterUnprocessed(ProceedingJoinPoint pjp) throws Throwable {
+        Object result = timed(pjp, Operation.FILTER_UNPROCESSED);
+        long unprocessed = returnedKeyCount(result);
+        meters.hit(requestedKeyCount(pjp.getArgs()) - unprocessed);
+        meters.miss(unprocessed);
+        return result;
+    }
+
+    /**
+     * Tracks atomic check-and-mark calls (single and bulk).
+     * Increments 'claimed' for every key the call claimed, 'duplicate' for every other distinct key.
+     */
+    @Around(IdempotencyConstant.AOP_TRY_MARK_PROCESSED_POINTCUT_EXPRESSION)
+    public Object aroundTryMarkProcessed(ProceedingJoinPoint pjp) throws Throwable {
+        Object result = timed(pjp, Operation.TRY_MARK_PROCESSED);
+        if (result instanceof Boolean claimed) {
+            if (claimed) {
+                meters.claimed(1);
+            } else {
+                meters.duplicate(1);
+            }
         } else {
-            cacheMissCounter.increment();
+            long claimed = returnedKeyCount(result);
+            meters.claimed(claimed);
+            meters.duplicate(requestedKeyCount(pjp.getArgs()) - claimed);
+        }
+        return result;
+    }
+
+    /**
+     * Tracks processing/marking of records; counted whether or not the call succeeds.
+     */
+    @Around(IdempotencyConstant.AOP_MARK_PROCESSED_POINTCUT_EXPRESSION)
+    public Object aroundMarkProcessed(ProceedingJoinPoint pjp) throws Throwable {
+        try {
+            return timed(pjp, Operation.MARK_PROCESSED);
+        } finally {
+            meters.markProcessed();
+        }
+    }
+
+    /**
+     * Tracks cache clear operations, one per cleared context; counted whether or not the call succeeds.
+     */
+    @Around(IdempotencyConstant.AOP_CLEAR_CACHE_FOR_CONTEXT_POINTCUT_EXPRESSION)
+    public Object aroundClearCacheForContext(ProceedingJoinPoint pjp) throws Throwable {
+        try {
+            return timed(pjp, Operation.CLEAR_CACHE_FOR_CONTEXT);
+        } finally {
+            Object[] args = pjp.getArgs();
+            meters.cleared(args.length == 1 && args[0] instanceof Collection<?> contextIds ? contextIds.size() : 1);
+        }
+    }
+
+    /**
+     * Tracks asynchronous cache clears like synchronous ones, but when the returned future completes: the timer covers
+     * the whole clear and a failure is counted as an error of clearCacheForContext.
+     * (The clear runs on the target itself, so the synchronous advice does not count it a second time.)
+     */
+    @Around(IdempotencyConstant.AOP_CLEAR_CACHE_FOR_CONTEXT_ASYNC_POINTCUT_EXPRESSION)
+    public Object aroundClearCacheForContextAsync(ProceedingJoinPoint pjp) throws Throwable {
+        Class<?> implementation = pjp.getTarget().getClass();
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = pjp.proceed();
+        } catch (Throwable e) {
+            clearCompleted(implementation, start, e);
+            throw e;
         }
+        if (result instanceof CompletableFuture<?> future) {
+            return future.whenComplete((ignored, error) -> clearCompleted(implementation, start,
+                    error instanceof CompletionException && error.getCause() != null ? error.getCause() : error));
+        }
+        clearCompleted(implementation, start, null);
         return result;
     }
 
+    private void clearCompleted(Class<?> implementation, long start, Throwable error) {
+        if (error != null) {
+            meters.recordError(implementation, Operation.CLEAR_CACHE_FOR_CONTEXT, error);
+        }
+        meters.timer(implementation, Operation.CLEAR_CACHE_FOR_CONTEXT, false).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        meters.cleared(1);
+    }
+
+    /**
+     * Proceeds with the call, recording its latency, its batch size if it is a bulk call, and its error if any.
+     */
+    private Object timed(ProceedingJoinPoint pjp, Operation operation) throws Throwable {
+        Class<?> implementation = pjp.getTarget().getClass();
+        long batchSize = batchSize(pjp.getArgs());
+        if (batchSize >= 0) {
+            meters.recordBatchSize(operation, batchSize);
+        }
+        long start = System.nanoTime();
+        try {
+            return pjp.proceed();
+        } catch (Throwable e) {
+            meters.recordError(implementation, operation, e);
+            log.debug("Idempotency cache {} failed on {}: {}", operation.tag(), implementation.getSimpleName(), e.toString());
+            throw e;
+        } finally {
+            meters.timer(implementation, operation, batchSize >= 0).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Number of record keys passed to a bulk call, either (contextId, keys) or a map of keys by context, or of
+     * contexts passed to a bulk clear; -1 for a single-key call.
+     */
+    @SuppressWarnings("unchecked")
+    private long batchSize(Object[] args) {
+        if (args.length == 2 && args[1] instanceof Collection<?> recordKeys) {
+            return recordKeys.size();
+        }
+        if (args.length == 1 && args[0] instanceof Collection<?> contextIds) {
+            return contextIds.size();
+        }
+        if (args.length == 1 && args[0] instanceof Map<?, ?> recordKeysByContext) {
+            return IdempotencyMeters.keyCount((Map<?, ? extends Collection<?>>) recordKeysByContext);
+        }
+        return -1;
+    }
+
     /**
-     * Tracks successful processing/marking of records.
+     * Number of distinct record keys passed to a bulk call, either (contextId, keys) or a map of keys by context.
      */
-    @After(IdempotencyConstant.AOP_MARK_PROCESSED_POINTCUT_EXPRESSION)
-    public void afterMarkProcessed() {
-        markProcessedCounter.increment();
+    @SuppressWarnings("unchecked")
+    private long requestedKeyCount(Object[] args) {
+        if (args.length == 2 && args[1] instanceof Collection<?> recordKeys) {
+            return IdempotencyMeters.distinctKeyCount(recordKeys);
+        }
+        if (args.length == 1 && args[0] instanceof Map<?, ?> recordKeysByContext) {
+            return IdempotencyMeters.distinctKeyCount((Map<?, ? extends Collection<?>>) recordKeysByContext);
+        }
+        return 0;
     }
 
     /**
-     * Tracks cache clear operations.
+     * Number of record keys returned by a bulk call, either a set of keys or a map of key sets by context.
      */
-    @After(IdempotencyConstant.AOP_CLEAR_CACHE_FOR_CONTEXT_POINTCUT_EXPRESSION)
-    public void afterClearCacheForContext() {
-        clearCacheCounter.increment();
+    @SuppressWarnings("unchecked")
+    private long returnedKeyCount(Object result) {
+        if (result instanceof Collection<?> keys) {
+            return keys.size();
+        }
+        if (result instanceof Map<?, ?> keysByContext) {
+            return IdempotencyMeters.keyCount((Map<?, ? extends Collection<?>>) keysByContext);
+        }
+        return 0;
     }
 
-}
\ No newline at end of file
+}
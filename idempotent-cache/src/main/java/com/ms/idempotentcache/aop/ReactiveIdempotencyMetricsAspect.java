@@ -0,0 +1,131 @@
+package com.ms.idempotentcache.aop;
+
+import com.ms.idempotentcache.constant.IdempotencyConstant;
+import com.ms.idempotentcache.metrics.IdempotencyMeters;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Aspect for collecting metrics on reactive idempotency cache operations.
+ * <p>
+ * Records the same counters as {@link IdempotencyMetricsAspect}, so blocking and reactive callers of one cache
+ * show up in the same series. Counters are updated when the returned Mono completes, not when it is assembled:
+ * - cache hits and misses for isProcessed() and the bulk filterUnprocessed()
+ * - calls to markProcessed()
+ * - claims and duplicates reported by tryMarkProcessed()
+ * - cache clear operations
+ */
+@Aspect
+public class ReactiveIdempotencyMetricsAspect {
+
+    private final Counter cacheHitCounter;
+    private final Counter cacheMissCounter;
+    private final Counter markProcessedCounter;
+    private final Counter clearCacheCounter;
+    private final Counter claimedCounter;
+    private final Counter duplicateCounter;
+
+    /**
+     * Registers counters with the provided MeterRegistry.
+     *
+     * @param meterRegistry The registry used for collecting metrics.
+     */
+    public ReactiveIdempotencyMetricsAspect(MeterRegistry meterRegistry) {
+        this.cacheHitCounter = meterRegistry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_HIT);
+        this.cacheMissCounter = meterRegistry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_MISS);
+        this.markProcessedCounter = meterRegistry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_MARK_PROCESSED);
+        this.clearCacheCounter = meterRegistry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_CLEARED);
+        this.claimedCounter = meterRegistry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_CLAIMED);
+        this.duplicateCounter = meterRegistry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_DUPLICATE);
+    }
+
+    /**
+     * Tracks cache hits and misses for idempotency checks.
+     */
+    @Around(IdempotencyConstant.AOP_REACTIVE_IS_PROCESSED_POINTCUT_EXPRESSION)
+    public Object aroundIsProcessed(ProceedingJoinPoint pjp) throws Throwable {
+        return ((Mono<?>) pjp.proceed()).doOnNext(result ->
+                (Boolean.TRUE.equals(result) ? cacheHitCounter : cacheMissCounter).increment());
+    }
+
+    /**
+     * Tracks cache hits and misses for bulk idempotency checks, per distinct requested key.
+     */
+    @Around(IdempotencyConstant.AOP_REACTIVE_FILTER_UNPROCESSED_POINTCUT_EXPRESSION)
+    public Object aroundFilterUnprocessed(ProceedingJoinPoint pjp) throws Throwable {
+        long requested = requestedKeyCount(pjp.getArgs());
+        return ((Mono<?>) pjp.proceed()).doOnNext(result -> {
+            long unprocessed = returnedKeyCount(result);
+            cacheHitCounter.increment(requested - unprocessed);
+            cacheMissCounter.increment(unprocessed);
+        });
+    }
+
+    /**
+     * Tracks atomic check-and-mark calls (single and bulk).
+     */
+    @Around(IdempotencyConstant.AOP_REACTIVE_TRY_MARK_PROCESSED_POINTCUT_EXPRESSION)
+    public Object aroundTryMarkProcessed(ProceedingJoinPoint pjp) throws Throwable {
+        long requested = requestedKeyCount(pjp.getArgs());
+        return ((Mono<?>) pjp.proceed()).doOnNext(result -> {
+            if (result instanceof Boolean claimed) {
+                (claimed ? claimedCounter : duplicateCounter).increment();
+            } else {
+                long claimed = returnedKeyCount(result);
+                claimedCounter.increment(claimed);
+                duplicateCounter.increment(requested - claimed);
+            }
+        });
+    }
+
+    /**
+     * Tracks successful processing/marking of records.
+     */
+    @Around(IdempotencyConstant.AOP_REACTIVE_MARK_PROCESSED_POINTCUT_EXPRESSION)
+    public Object aroundMarkProcessed(ProceedingJoinPoint pjp) throws Throwable {
+        return ((Mono<?>) pjp.proceed()).doOnSuccess(ignored -> markProcessedCounter.increment());
+    }
+
+    /**
+     * Tracks cache clear operations.
+     */
+    @Around(IdempotencyConstant.AOP_REACTIVE_CLEAR_CACHE_FOR_CONTEXT_POINTCUT_EXPRESSION)
+    public Object aroundClearCacheForContext(ProceedingJoinPoint pjp) throws Throwable {
+        return ((Mono<?>) pjp.proceed()).doOnSuccess(ignored -> clearCacheCounter.increment());
+    }
+
+    /**
+     * Number of distinct record keys passed to a bulk call, either (contextId, keys) or a map of keys by context.
+     */
+    @SuppressWarnings("unchecked")
+    private long requestedKeyCount(Object[] args) {
+        if (args.length == 2 && args[1] instanceof Collection<?> recordKeys) {
+            return IdempotencyMeters.distinctKeyCount(recordKeys);
+        }
+        if (args.length == 1 && args[0] instanceof Map<?, ?> recordKeysByContext) {
+            return IdempotencyMeters.distinctKeyCount((Map<?, ? extends Collection<?>>) recordKeysByContext);
+        }
+        return 0;
+    }
+
+    /**
+     * Number of record keys emitted by a bulk call, either a set of keys or a map of key sets by context.
+     */
+    @SuppressWarnings("unchecked")
+    private long returnedKeyCount(Object result) {
+        if (result instanceof Collection<?> keys) {
+            return keys.size();
+        }
+        if (result instanceof Map<?, ?> keysByContext) {
+            return IdempotencyMeters.keyCount((Map<?, ? extends Collection<?>>) keysByContext);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,284 @@
+package com.ms.idempotentcache.cache;
+
+import com.ms.idempotentcache.config.ClearStrategy;
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import com.ms.idempotentcache.constant.IdempotencyConstant;
+import com.ms.idempotentcache.fingerprint.Murmur3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Bloom filter implementation of the IdempotencyCacheService interface, for very large contexts.
+ * <p>
+ * Each context is one Redis bitmap (prefix + "bloom:" + contextId) manipulated with GETBIT/SETBIT from Lua,
+ * so it runs on plain Redis without modules. Memory per context is fixed by the configured capacity and
+ * false-positive rate (about 14.4 bits per key at 0.1%), instead of growing with the length of every key.
+ * <p>
+ * Answers are "definitely new" or "probably processed": with the configured false-positive rate a new record is
+ * reported as a duplicate. With confirm-with-exact-set enabled, every positive is confirmed against an exact
+ * Redis Set and claims are made there, so no record is ever dropped, at the cost of also storing the set.
+ * <p>
+ * Without confirm-with-exact-set, every check or claim, single or bulk, is one scripted round trip per context.
+ * With it, a check that finds a positive costs a second round trip to confirm it (one per bulk call), and every
+ * claim or mark costs a round trip to the filter plus one to the exact set.
+ */
+public class BloomFilterIdempotencyCacheService implements IdempotencyCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(BloomFilterIdempotencyCacheService.class);
+
+    /**
+     * Redis bitmaps are limited to 2^32 bits (512 MB).
+     */
+    private static final long MAX_BITS = 1L << 32;
+
+    /**
+     * ARGV[1] = hash functions (k), then k bit offsets per key; returns 1 per key if all its bits are set.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> MIGHT_CONTAIN_SCRIPT = new DefaultRedisScript<>(
+            "local k = tonumber(ARGV[1]) "
+                    + "local result = {} "
+                    + "for i = 0, (#ARGV - 1) / k - 1 do "
+                    + "  local present = 1 "
+                    + "  for j = 1, k do "
+                    + "    if redis.call('GETBIT', KEYS[1], ARGV[1 + i * k + j]) == 0 then present = 0 break end "
+                    + "  end "
+                    + "  result[i + 1] = present "
+                    + "end "
+                    + "return result", List.class);
+
+    /**
+     * ARGV[1] = TTL millis, ARGV[2] = hash functions (k), then k bit offsets per key. Sets every bit and
+     * returns 1 per key if all its bits were already set (probably processed), 0 if the key is new.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> PUT_SCRIPT = new DefaultRedisScript<>(
+            "local k = tonumber(ARGV[2]) "
+                    + "local result = {} "
+                    + "for i = 0, (#ARGV - 2) / k - 1 do "
+                    + "  local present = 1 "
+                    + "  for j = 1, k do "
+                    + "    if redis.call('SETBIT', KEYS[1], ARGV[2 + i * k + j], 1) == 0 then present = 0 end "
+                    + "  end "
+                    + "  result[i + 1] = present "
+                    + "end "
+                    + "redis.call('PEXPIRE', KEYS[1], ARGV[1]) "
+                    + "return result", List.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final IdempotencyProperties properties;
+    private final IdempotencyCacheService exactSet;
+    private final long bits;
+    private final int hashFunctions;
+
+    /**
+     * @param exactSet set used to confirm positives, or null to trust the filter alone
+     */
+    public BloomFilterIdempotencyCacheService(StringRedisTemplate redisTemplate,
+                                              IdempotencyProperties properties,
+                                              IdempotencyCacheService exactSet) {
+        IdempotencyProperties.Bloom bloom = properties.getBloom();
+        if (bloom.getExpectedInsertions() <= 0 || bloom.getFalsePositiveRate() <= 0 || bloom.getFalsePositiveRate() >= 1) {
+            throw new IllegalArgumentException("bloom expectedInsertions must be > 0 and falsePositiveRate in (0, 1)");
+        }
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.exactSet = exactSet;
+        this.bits = optimalBits(bloom.getExpectedInsertions(), bloom.getFalsePositiveRate());
+        this.hashFunctions = optimalHashFunctions(bloom.getExpectedInsertions(), bits);
+        log.info("Bloom filter per context: bits={} ({} KiB), hashFunctions={}, expectedInsertions={}, falsePositiveRate={}, confirmWithExactSet={}",
+                bits, bits / 8 / 1024, hashFunctions, bloom.getExpectedInsertions(), bloom.getFalsePositiveRate(), exactSet != null);
+    }
+
+    @Override
+    public boolean isProcessed(String contextId, String recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        boolean result = mightContain(contextId, List.of(recordKey)).get(0)
+                && (exactSet == null || exactSet.isProcessed(contextId, recordKey));
+        log.debug("Check if contextId='{}' recordKey='{}' is processed: {}", contextId, recordKey, result);
+        return result;
+    }
+
+    @Override
+    public Set<String> filterUnprocessed(String contextId, Collection<String> recordKeys) {
+        requireContextId(contextId);
+        requireRecordKeys(recordKeys);
+        List<String> distinctKeys = new ArrayList<>(new LinkedHashSet<>(recordKeys));
+        List<Boolean> maybePresent = mightContain(contextId, distinctKeys);
+
+        Set<String> candidates = new LinkedHashSet<>();
+        for (int i = 0; i < distinctKeys.size(); i++) {
+            if (maybePresent.get(i)) {
+                candidates.add(distinctKeys.get(i));
+            }
+        }
+        Set<String> falsePositives = (exactSet == null || candidates.isEmpty())
+                ? Set.of() : exactSet.filterUnprocessed(contextId, candidates);
+
+        Set<String> unprocessed = new LinkedHashSet<>();
+        for (String key : distinctKeys) {
+            if (!candidates.contains(key) || falsePositives.contains(key)) {
+                unprocessed.add(key);
+            }
+        }
+        log.debug("Filtered contextId='{}' recordKeysCount={} unprocessedCount={}", contextId, distinctKeys.size(), unprocessed.size());
+        return unprocessed;
+    }
+
+    @Override
+    public void markProcessed(String contextId, String recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        put(contextId, List.of(recordKey));
+        if (exactSet != null) {
+            exactSet.markProcessed(contextId, recordKey);
+        }
+        log.info("Marked contextId='{}' recordKey='{}' as processed (TTL={})", contextId, recordKey, properties.getTtl());
+    }
+
+    @Override
+    public boolean tryMarkProcessed(String contextId, String recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        boolean maybePresent = put(contextId, List.of(recordKey)).get(0);
+        boolean claimed = exactSet == null ? !maybePresent : exactSet.tryMarkProcessed(contextId, recordKey);
+        log.debug("Try mark contextId='{}' recordKey='{}' claimed: {}", contextId, recordKey, claimed);
+        return claimed;
+    }
+
+    @Override
+    public Set<String> tryMarkProcessed(String contextId, Collection<String> recordKeys) {
+        requireContextId(contextId);
+        requireRecordKeys(recordKeys);
+        List<String> distinctKeys = new ArrayList<>(new LinkedHashSet<>(recordKeys));
+        List<Boolean> maybePresent = put(contextId, distinctKeys);
+        if (exactSet != null) {
+            return exactSet.tryMarkProcessed(contextId, distinctKeys);
+        }
+        Set<String> claimed = new LinkedHashSet<>();
+        for (int i = 0; i < distinctKeys.size(); i++) {
+            if (!maybePresent.get(i)) {
+                claimed.add(distinctKeys.get(i));
+            }
+        }
+        log.debug("Try mark contextId='{}' recordKeysCount={} claimedCount={}", contextId, distinctKeys.size(), claimed.size());
+        return claimed;
+    }
+
+    @Override
+    public void markProcessed(String contextId, Set<String> recordKeys) {
+        requireContextId(contextId);
+        requireRecordKeys(recordKeys);
+        put(contextId, new ArrayList<>(recordKeys));
+        if (exactSet != null) {
+            exactSet.markProcessed(contextId, recordKeys);
+        }
+        log.info("Marked contextId='{}' recordKeysCount={} as processed (TTL={})", contextId, recordKeys.size(), properties.getTtl());
+    }
+
+    @Override
+    public void clearCacheForContext(String contextId) {
+        requireContextId(contextId);
+        if (properties.getClearStrategy() == ClearStrategy.DELETE) {
+            redisTemplate.delete(redisKey(contextId));
+        } else {
+            redisTemplate.unlink(redisKey(contextId));
+        }
+        if (exactSet != null) {
+            exactSet.clearCacheForContext(contextId);
+        }
+        log.info("Cleared cache for contextId='{}'", contextId);
+    }
+
+    /**
+     * Optimal filter size for n insertions at false-positive rate p: m = -n ln(p) / ln(2)^2, capped at 2^32 bits.
+     */
+    static long optimalBits(long expectedInsertions, double falsePositiveRate) {
+        double bits = -expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        return Math.max(Long.SIZE, Math.min(MAX_BITS, (long) Math.ceil(bits)));
+    }
+
+    /**
+     * Optimal number of hash functions: k = m / n ln(2).
+     */
+    static int optimalHashFunctions(long expectedInsertions, long bits) {
+        return Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+    }
+
+    private List<Boolean> mightContain(String contextId, List<String> recordKeys) {
+        List<Object> args = new ArrayList<>(1 + recordKeys.size() * hashFunctions);
+        args.add(String.valueOf(hashFunctions));
+        addOffsets(args, recordKeys);
+        return flags(redisTemplate.execute(MIGHT_CONTAIN_SCRIPT, List.of(redisKey(contextId)), args.toArray()), recordKeys.size());
+    }
+
+    private List<Boolean> put(String contextId, List<String> recordKeys) {
+        List<Object> args = new ArrayList<>(2 + recordKeys.size() * hashFunctions);
+        args.add(String.valueOf(properties.getTtl().toMillis()));
+        args.add(String.valueOf(hashFunctions));
+        addOffsets(args, recordKeys);
+        return flags(redisTemplate.execute(PUT_SCRIPT, List.of(redisKey(contextId)), args.toArray()), recordKeys.size());
+    }
+
+    /**
+     * Derives k bit offsets per key from one Murmur3 128-bit hash (Kirsch-Mitzenmacher double hashing).
+     */
+    private void addOffsets(List<Object> args, List<String> recordKeys) {
+        for (String recordKey : recordKeys) {
+            byte[] bytes = recordKey.getBytes(StandardCharsets.UTF_8);
+            long[] hash = Murmur3.hash128(bytes, 0, bytes.length, 0);
+            for (int i = 0; i < hashFunctions; i++) {
+                args.add(String.valueOf(Math.floorMod(hash[0] + i * hash[1], bits)));
+            }
+        }
+    }
+
+    private List<Boolean> flags(List<?> reply, int size) {
+        List<Boolean> flags = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            flags.add(reply != null && i < reply.size() && Objects.equals(reply.get(i), 1L));
+        }
+        return flags;
+    }
+
+    private String redisKey(String contextId) {
+        return properties.getPrefix() + IdempotencyConstant.BLOOM_KEY_SEGMENT + contextId;
+    }
+
+    private void requireContextId(String contextId) {
+        if (!StringUtils.hasText(contextId)) {
+            log.warn("contextId required but was '{}'", contextId);
+            throw new IllegalArgumentException("contextId required");
+        }
+    }
+
+    private void requireRecordKey(String recordKey) {
+        if (!StringUtils.hasText(recordKey)) {
+            log.warn("record key required but was '{}'", recordKey);
+            throw new IllegalArgumentException("recordKey required");
+        }
+    }
+
+    private void requireRecordKeys(Collection<String> recordKeys) {
+        if (Objects.isNull(recordKeys) || recordKeys.isEmpty()) {
+            log.warn("record key set required but was '{}'", recordKeys);
+            throw new IllegalArgumentException("recordKeys required and must not be empty");
+        }
+        for (String key : recordKeys) {
+            requireRecordKey(key);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.ms.idempotentcache.cache;
+
+/**
+ * Closes the delegate of a decorator, so the resources of the store underneath (e.g. the mapped-file store) are
+ * released when Spring destroys the decorator bean.
+ */
+final class DelegateCloser {
+
+    private DelegateCloser() {
+    }
+
+    /**
+     * Closes the delegate if it holds resources; a checked failure is rethrown as an IllegalStateException.
+     */
+    static void close(IdempotencyCacheService delegate) {
+        if (delegate instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("Failed to close " + delegate.getClass().getSimpleName(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.ms.idempotentcache.cache;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import com.ms.idempotentcache.constant.IdempotencyConstant;
+import com.ms.idempotentcache.fingerprint.RecordKeyFingerprinter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * IdempotencyCacheService decorator adding a cross-context (global) dedupe scope, enabled with
+ * idempotency.key.global.enabled=true.
+ * <p>
+ * Record keys are claimed in their context by the delegate as before, and also in a global index shared by all
+ * contexts, so a record resent in a later file is reported as a duplicate. The index is split into time buckets
+ * (idempotency.key.global.bucket, default 1 hour), one Redis Set per bucket: prefix + "global:{" + scope + "}:" + n.
+ * A key is a duplicate if any bucket of the window (idempotency.key.global.window, default 1 day) holds it; new keys
+ * go to the current bucket. The window spans one bucket more than window / bucket, so a key is remembered for at
+ * least the window and at most one bucket longer. Each bucket expires, as a whole, when it leaves the window, so the
+ * index never needs a large DEL and clearing a context leaves it untouched.
+ * <p>
+ * The scope in braces is a Redis Cluster hash tag: all buckets live in one slot, so a single script checks every
+ * bucket of the window and claims the new keys, in one atomic round trip per call (single or bulk, one or many
+ * contexts). Members are the record key bytes, or their fingerprint when idempotency.key.fingerprint.enabled=true.
+ */
+public class GlobalDedupeIdempotencyCacheService implements IdempotencyCacheService, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(GlobalDedupeIdempotencyCacheService.class);
+
+    /**
+     * KEYS = the buckets of the window, newest first; returns 1 per member of ARGV held by any of them.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SEEN_SCRIPT = new DefaultRedisScript<>(
+            "local seen = {} "
+                    + "for i = 1, #ARGV do "
+                    + "  seen[i] = 0 "
+                    + "  for k = 1, #KEYS do "
+                    + "    if redis.call('SISMEMBER', KEYS[k], ARGV[i]) == 1 then seen[i] = 1 break end "
+                    + "  end "
+                    + "end "
+                    + "return seen", List.class);
+
+    /**
+     * KEYS = the buckets of the window, current first; ARGV[1] = expiry (epoch millis) of the current bucket, then
+     * the members. Adds every member held by no bucket to the current one; returns 1 per member newly claimed.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local claimed = {} "
+                    + "local added = false "
+                    + "for i = 2, #ARGV do "
+                    + "  local seen = false "
+                    + "  for k = 2, #KEYS do "
+                    + "    if redis.call('SISMEMBER', KEYS[k], ARGV[i]) == 1 then seen = true break end "
+                    + "  end "
+                    + "  if not seen and redis.call('SADD', KEYS[1], ARGV[i]) == 1 then "
+                    + "    claimed[i - 1] = 1 added = true "
+                    + "  else claimed[i - 1] = 0 end "
+                    + "end "
+                    + "if added then redis.call('PEXPIREAT', KEYS[1], ARGV[1]) end "
+                    + "return claimed", List.class);
+
+    private final IdempotencyCacheService delegate;
+    private final StringRedisTemplate redisTemplate;
+    private final RecordKeyFingerprinter fingerprinter;
+    private final Clock clock;
+    private final String keyPrefix;
+    private final long bucketMillis;
+    private final int windowBuckets;
+
+    public GlobalDedupeIdempotencyCacheService(IdempotencyCacheService delegate, StringRedisTemplate redisTemplate,
+                                               IdempotencyProperties properties) {
+        this(delegate, redisTemplate, properties, Clock.systemUTC());
+    }
+
+    public GlobalDedupeIdempotencyCacheService(IdempotencyCacheService delegate, StringRedisTemplate redisTemplate,
+                                               IdempotencyProperties properties, Clock clock) {
+        IdempotencyProperties.Global global = properties.getGlobal();
+        if (global.getBucket() == null || global.getBucket().toMillis() < 1) {
+            log.warn("global bucket must be positive but was '{}'", global.getBucket());
+            throw new IllegalArgumentException("global bucket must be positive");
+        }
+        if (global.getWindow() == null || global.getWindow().compareTo(global.getBucket()) < 0) {
+            log.warn("global window must be at least one bucket but was '{}'", global.getWindow());
+            throw new IllegalArgumentException("global window must be at least one bucket");
+        }
+        this.delegate = delegate;
+        this.redisTemplate = redisTemplate;
+        this.fingerprinter = RedisIdempotencyCacheService.fingerprinter(properties.getFingerprint());
+        this.clock = clock;
+        this.keyPrefix = properties.getPrefix() + IdempotencyConstant.GLOBAL_KEY_SEGMENT + "{" + global.getScope() + "}:";
+        this.bucketMillis = global.getBucket().toMillis();
+        this.windowBuckets = (int) ((global.getWindow().toMillis() + bucketMillis - 1) / bucketMillis) + 1;
+    }
+
+    public IdempotencyCacheService getDelegate() {
+        return delegate;
+    }
+    /**
+     * Closes the delegate if it holds resources (e.g. the mapped-file store); a checked failure is rethrown as an
+     * IllegalStateException.
+     */
+    @Override
+    public void close() {
+        DelegateCloser.close(delegate);
+    }
+
+    @Override
+    public boolean isProcessed(String contextId, String recordKey) {
+        return delegate.isProcessed(contextId, recordKey) || seen(List.of(fingerprinter.fingerprint(recordKey)))[0];
+    }
+
+    @Override
+    public boolean isProcessed(String contextId, byte[] recordKey) {
+        return delegate.isProcessed(contextId, recordKey) || seen(List.of(fingerprinter.fingerprint(recordKey)))[0];
+    }
+
+    @Override
+    public Set<String> filterUnprocessed(String contextId, Collection<String> recordKeys) {
+        return unseen(delegate.filterUnprocessed(contextId, recordKeys));
+    }
+
+    @Override
+    public Map<String, Set<String>> filterUnprocessed(Map<String, ? extends Collection<String>> recordKeysByContext) {
+        Map<String, Set<String>> unprocessed = delegate.filterUnprocessed(recordKeysByContext);
+        List<String> keys = flatten(unprocessed);
+        return select(unprocessed, seen(members(keys)), false);
+    }
+
+    @Override
+    public void markProcessed(String contextId, String recordKey) {
+        delegate.markProcessed(contextId, recordKey);
+        claim(List.of(fingerprinter.fingerprint(recordKey)));
+    }
+
+    @Override
+    public void markProcessed(String contextId, Set<String> recordKeys) {
+        delegate.markProcessed(contextId, recordKeys);
+        if (!recordKeys.isEmpty()) {
+            claim(members(recordKeys));
+        }
+    }
+
+    @Override
+    public boolean tryMarkProcessed(String contextId, String recordKey) {
+        boolean claimed = delegate.tryMarkProcessed(contextId, recordKey) && claim(List.of(fingerprinter.fingerprint(recordKey)))[0];
+        log.debug("Try mark contextId='{}' recordKey='{}' claimed globally: {}", contextId, recordKey, claimed);
+        return claimed;
+    }
+
+    @Override
+    public boolean tryMarkProcessed(String contextId, byte[] recordKey) {
+        return delegate.tryMarkProcessed(contextId, recordKey) && claim(List.of(fingerprinter.fingerprint(recordKey)))[0];
+    }
+
+    /**
+     * Keys new to the context are claimed in the global index; keys already claimed by another context within the
+     * window stay marked in this context but are not returned.
+     */
+    @Override
+    public Set<String> tryMarkProcessed(String contextId, Collection<String> recordKeys) {
+        Set<String> claimed = delegate.tryMarkProcessed(contextId, recordKeys);
+        if (claimed.isEmpty()) {
+            return claimed;
+        }
+        List<String> keys = new ArrayList<>(claimed);
+        boolean[] flags = claim(members(keys));
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i < flags.length; i++) {
+            if (flags[i]) {
+                result.add(keys.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Claims in every context through the delegate, then claims all keys new to their context in one global call;
+     * a key new to two contexts of the same call goes to the first one.
+     */
+    @Override
+    public Map<String, Set<String>> tryMarkProcessed(Map<String, ? extends Collection<String>> recordKeysByContext) {
+        Map<String, Set<String>> claimed = delegate.tryMarkProcessed(recordKeysByContext);
+        List<String> keys = flatten(claimed);
+        return select(claimed, keys.isEmpty() ? new boolean[0] : claim(members(keys)), true);
+    }
+
+    /**
+     * Clears the context through the delegate only: the global buckets expire on their own.
+     */
+    @Override
+    public void clearCacheForContext(String contextId) {
+        delegate.clearCacheForContext(contextId);
+    }
+
+    @Override
+    public void clearCacheForContext(Collection<String> contextIds) {
+        delegate.clearCacheForContext(contextIds);
+    }
+
+    @Override
+    public void warmContext(String contextId) {
+        delegate.warmContext(contextId);
+    }
+
+    private Set<String> unseen(Set<String> recordKeys) {
+        if (recordKeys.isEmpty()) {
+            return recordKeys;
+        }
+        List<String> keys = new ArrayList<>(recordKeys);
+        boolean[] seen = seen(members(keys));
+        Set<String> unseen = new LinkedHashSet<>();
+        for (int i = 0; i < seen.length; i++) {
+            if (!seen[i]) {
+                unseen.add(keys.get(i));
+            }
+        }
+        return unseen;
+    }
+
+    private boolean[] seen(List<byte[]> members) {
+        if (members.isEmpty()) {
+            return new boolean[0];
+        }
+        List<?> replies = redisTemplate.execute(SEEN_SCRIPT, RedisSerializer.byteArray(), null,
+                windowKeys(bucket()), members.toArray());
+        return flags(replies, members.size());
+    }
+
+    private boolean[] claim(List<byte[]> members) {
+        long bucket = bucket();
+        Object[] args = new Object[members.size() + 1];
+        args[0] = String.valueOf((bucket + windowBuckets) * bucketMillis).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < members.size(); i++) {
+            args[i + 1] = members.get(i);
+        }
+        List<?> replies = redisTemplate.execute(CLAIM_SCRIPT, RedisSerializer.byteArray(), null, windowKeys(bucket), args);
+        return flags(replies, members.size());
+    }
+
+    private long bucket() {
+        return clock.millis() / bucketMillis;
+    }
+
+    /**
+     * Keys of the buckets inside the window ending at the given bucket, newest first.
+     */
+    private List<String> windowKeys(long bucket) {
+        List<String> keys = new ArrayList<>(windowBuckets);
+        for (int i = 0; i < windowBuckets; i++) {
+            keys.add(keyPrefix + (bucket - i));
+        }
+        return keys;
+    }
+
+    private List<byte[]> members(Collection<String> recordKeys) {
+        List<byte[]> members = new ArrayList<>(recordKeys.size());
+        for (String recordKey : recordKeys) {
+            members.add(fingerprinter.fingerprint(recordKey));
+        }
+        return members;
+    }
+
+    private static boolean[] flags(List<?> replies, int size) {
+        boolean[] flags = new boolean[size];
+        for (int i = 0; replies != null && i < size && i < replies.size(); i++) {
+            flags[i] = Objects.equals(replies.get(i), 1L);
+        }
+        return flags;
+    }
+
+    private static List<String> flatten(Map<String, Set<String>> keysByContext) {
+        List<String> keys = new ArrayList<>();
+        keysByContext.values().forEach(keys::addAll);
+        return keys;
+    }
+
+    /**
+     * Keeps, per context, the keys whose flag (in flatten order) equals wanted.
+     */
+    private static Map<String, Set<String>> select(Map<String, Set<String>> keysByContext, boolean[] flags, boolean wanted) {
+        Map<String, Set<String>> result = new LinkedHashMap<>();
+        int index = 0;
+        for (Map.Entry<String, Set<String>> entry : keysByContext.entrySet()) {
+            Set<String> selected = new LinkedHashSet<>();
+            for (String key : entry.getValue()) {
+                if (flags.length > index && flags[index] == wanted) {
+                    selected.add(key);
+                }
+                index++;
+            }
+            result.put(entry.getKey(), selected);
+        }
+        return result;
+    }
+}
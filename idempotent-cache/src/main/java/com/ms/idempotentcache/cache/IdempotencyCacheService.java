@@ -1,6 +1,13 @@
 package com.ms.idempotentcache.cache;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 public interface IdempotencyCacheService {
 
@@ -9,11 +16,71 @@ public interface IdempotencyCacheService {
      */
     boolean isProcessed(String contextId, String recordKey);
 
+    /**
+     * Checks a record key given as its UTF-8 bytes, e.g. written by a BinaryRecordKeyProvider.
+     * Implementations that store bytes use them as they are instead of decoding a String.
+     */
+    default boolean isProcessed(String contextId, byte[] recordKey) {
+        return isProcessed(contextId, recordKey == null ? null : new String(recordKey, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the record keys that have not been processed yet for the given context (bulk check).
+     * Duplicate keys in the input are reported once; the returned set keeps the input order.
+     */
+    Set<String> filterUnprocessed(String contextId, Collection<String> recordKeys);
+
+    /**
+     * Returns the unprocessed record keys for several contexts at once, keyed by contextId.
+     * Implementations may resolve all contexts in a single round trip.
+     */
+    default Map<String, Set<String>> filterUnprocessed(Map<String, ? extends Collection<String>> recordKeysByContext) {
+        Map<String, Set<String>> result = new LinkedHashMap<>();
+        recordKeysByContext.forEach((contextId, recordKeys) ->
+                result.put(contextId, filterUnprocessed(contextId, recordKeys)));
+        return result;
+    }
+
     /**
      * Marks the record key as processed for the given context.
      */
     void markProcessed(String contextId, String recordKey);
 
+    /**
+     * Atomically marks the record key as processed and reports whether this call was the first to claim it.
+     * Replaces the racy isProcessed + markProcessed sequence.
+     *
+     * @return true if the key was newly claimed, false if it was already processed (duplicate)
+     */
+    boolean tryMarkProcessed(String contextId, String recordKey);
+
+    /**
+     * Atomically claims a record key given as its UTF-8 bytes, e.g. written by a BinaryRecordKeyProvider.
+     * Implementations that store bytes use them as they are instead of decoding a String.
+     */
+    default boolean tryMarkProcessed(String contextId, byte[] recordKey) {
+        return tryMarkProcessed(contextId, recordKey == null ? null : new String(recordKey, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Atomically claims a batch of record keys for the given context.
+     * Duplicate keys in the input are claimed at most once.
+     *
+     * @return the keys newly claimed by this call, in input order; all other keys were already processed
+     */
+    Set<String> tryMarkProcessed(String contextId, Collection<String> recordKeys);
+
+    /**
+     * Atomically claims record keys for several contexts at once, keyed by contextId.
+     * Implementations may resolve all contexts in a single round trip.
+     */
+    default Map<String, Set<String>> tryMarkProcessed(Map<String, ? extends Collection<String>> recordKeysByContext) {
+        Map<String, Set<String>> result = new LinkedHashMap<>();
+        recordKeysByContext.forEach((contextId, recordKeys) ->
+                result.put(contextId, tryMarkProcessed(contextId, recordKeys)));
+        return result;
+    }
+
     /**
      * Marks multiple records as processed (bulk insert).
      */
@@ -23,4 +90,37 @@ public interface IdempotencyCacheService {
      * Removes all cached record keys for the context (called after successful processing).
      */
     void clearCacheForContext(String contextId);
+
+    /**
+     * Removes all cached record keys for every given context, e.g. all files of a finished job.
+     * Implementations batch the deletes into as few round trips as they can.
+     */
+    default void clearCacheForContext(Collection<String> contextIds) {
+        for (String contextId : contextIds) {
+            clearCacheForContext(contextId);
+        }
+    }
+
+    /**
+     * Loads the keys already marked for the context into a local structure, e.g. when a file is opened, so that
+     * later checks and claims of known keys are answered without a round trip. A hint only: stores that are already
+     * local ignore it.
+     */
+    default void warmContext(String contextId) {
+    }
+
+    /**
+     * Clears the context without blocking the caller, on the common fork-join pool.
+     */
+    default CompletableFuture<Void> clearCacheForContextAsync(String contextId) {
+        return clearCacheForContextAsync(contextId, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Clears the context without blocking the caller, on the given executor, e.g. to clear many contexts in parallel.
+     * The future completes exceptionally if the clear fails.
+     */
+    default CompletableFuture<Void> clearCacheForContextAsync(String contextId, Executor executor) {
+        return CompletableFuture.runAsync(() -> clearCacheForContext(contextId), executor);
+    }
 }
@@ -0,0 +1,431 @@
+package com.ms.idempotentcache.cache;
+
+import com.ms.idempotentcache.config.FsyncPolicy;
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import com.ms.idempotentcache.config.TtlStrategy;
+import com.ms.idempotentcache.fingerprint.Murmur3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Local-disk implementation of the IdempotencyCacheService interface, for sites that must dedupe across
+ * restarts without a network dependency.
+ * <p>
+ * Each context is one memory-mapped {@link MappedLongHashTable} file (directory/URL-encoded contextId + ".idx")
+ * holding 64-bit Murmur3 fingerprints of the record keys. Claims are plain stores into the page cache, so they
+ * are as fast as the off-heap store and survive a process crash; the configured {@link FsyncPolicy} decides how
+ * often they are forced to disk to also survive a power loss.
+ * <p>
+ * Tables are opened on first use and stay mapped until the context is cleared or expires, or the service is
+ * closed. A table that was not closed cleanly is recovered on open. Each open table holds a file lock, so a context
+ * can be open in one process at a time; another process (or another service on the same directory) fails fast
+ * with an IllegalStateException instead of sharing the file. With BATCH, a background thread forces tables that
+ * were written since their last force once the fsync interval has passed, so the last claims reach the disk even
+ * if no further write arrives; close forces the rest.
+ * <p>
+ * The expiry is stored in the file header (idempotency.key.ttl after the last write, or after creation with
+ * ON_CREATE). Expired files are deleted on access, when the service starts and whenever a new context is created.
+ * clearCacheForContext simply deletes the file.
+ */
+public class MappedFileIdempotencyCacheService implements IdempotencyCacheService, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedFileIdempotencyCacheService.class);
+
+    static final String FILE_SUFFIX = ".idx";
+
+    private final IdempotencyProperties properties;
+    private final IdempotencyProperties.MappedFile mappedFile;
+    private final Path directory;
+    private final ConcurrentMap<String, Context> contexts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService fsyncTimer;
+
+    public MappedFileIdempotencyCacheService(IdempotencyProperties properties) {
+        this.properties = properties;
+        this.mappedFile = properties.getMappedFile();
+        this.directory = Path.of(mappedFile.getDirectory());
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not create idempotency directory " + directory, e);
+        }
+        log.info("Mapped-file idempotency store in '{}' (fsyncPolicy={})", directory.toAbsolutePath(), mappedFile.getFsyncPolicy());
+        reclaimExpiredFiles();
+        this.fsyncTimer = mappedFile.getFsyncPolicy() == FsyncPolicy.BATCH ? startFsyncTimer() : null;
+    }
+
+    @Override
+    public boolean isProcessed(String contextId, String recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        boolean result = contains(contextId, fingerprint(recordKey));
+        log.debug("Check if contextId='{}' recordKey='{}' is processed: {}", contextId, recordKey, result);
+        return result;
+    }
+
+    @Override
+    public boolean isProcessed(String contextId, byte[] recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        boolean result = contains(contextId, Murmur3.hash64(recordKey));
+        log.debug("Check if contextId='{}' recordKeyBytes={} is processed: {}", contextId, recordKey.length, result);
+        return result;
+    }
+
+    @Override
+    public Set<String> filterUnprocessed(String contextId, Collection<String> recordKeys) {
+        requireContextId(contextId);
+        requireRecordKeys(recordKeys);
+        Set<String> unprocessed = new LinkedHashSet<>(recordKeys);
+        Context context = context(contextId, false);
+        if (context != null) {
+            synchronized (context) {
+                if (!context.deleted) {
+                    unprocessed.removeIf(key -> context.table.contains(fingerprint(key)));
+                }
+            }
+        }
+        log.debug("Filtered contextId='{}' recordKeysCount={} unprocessedCount={}", contextId, recordKeys.size(), unprocessed.size());
+        return unprocessed;
+    }
+
+    @Override
+    public void markProcessed(String contextId, String recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        claim(contextId, Set.of(recordKey));
+        log.info("Marked contextId='{}' recordKey='{}' as processed (TTL={})", contextId, recordKey, properties.getTtl());
+    }
+
+    @Override
+    public boolean tryMarkProcessed(String contextId, String recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        boolean claimed = !claim(contextId, Set.of(recordKey)).isEmpty();
+        log.debug("Try mark contextId='{}' recordKey='{}' claimed: {}", contextId, recordKey, claimed);
+        return claimed;
+    }
+
+    @Override
+    public boolean tryMarkProcessed(String contextId, byte[] recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        boolean claimed = !claim(contextId, List.of(recordKey), Murmur3::hash64).isEmpty();
+        log.debug("Try mark contextId='{}' recordKeyBytes={} claimed: {}", contextId, recordKey.length, claimed);
+        return claimed;
+    }
+
+    @Override
+    public Set<String> tryMarkProcessed(String contextId, Collection<String> recordKeys) {
+        requireContextId(contextId);
+        requireRecordKeys(recordKeys);
+        Set<String> claimed = claim(contextId, recordKeys);
+        log.debug("Try mark contextId='{}' recordKeysCount={} claimedCount={}", contextId, recordKeys.size(), claimed.size());
+        return claimed;
+    }
+
+    @Override
+    public void markProcessed(String contextId, Set<String> recordKeys) {
+        requireContextId(contextId);
+        requireRecordKeys(recordKeys);
+        claim(contextId, recordKeys);
+        log.info("Marked contextId='{}' recordKeysCount={} as processed (TTL={})", contextId, recordKeys.size(), properties.getTtl());
+    }
+
+    /**
+     * Deletes the context file; no per-key work is needed.
+     */
+    @Override
+    public void clearCacheForContext(String contextId) {
+        requireContextId(contextId);
+        Context context = contexts.remove(contextId);
+        try {
+            if (context != null) {
+                synchronized (context) {
+                    context.deleted = true;
+                    context.table.delete();
+                }
+            } else if (!MappedLongHashTable.deleteIfUnused(path(contextId), Long.MAX_VALUE)) {
+                throw new IllegalStateException("idempotency table is in use by another process: " + path(contextId));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not delete idempotency table for contextId=" + contextId, e);
+        }
+        log.info("Cleared cache for contextId='{}'", contextId);
+    }
+
+    /**
+     * Stops the fsync timer and closes every open table cleanly (forcing it to disk unless the fsync policy is NEVER).
+     */
+    @Override
+    public void close() {
+        if (fsyncTimer != null) {
+            fsyncTimer.shutdown();
+        }
+        for (Map.Entry<String, Context> entry : contexts.entrySet()) {
+            Context context = entry.getValue();
+            synchronized (context) {
+                if (!context.deleted) {
+                    context.deleted = true;
+                    try {
+                        context.table.close(mappedFile.getFsyncPolicy() != FsyncPolicy.NEVER);
+                    } catch (IOException e) {
+                        log.warn("Could not close idempotency table for contextId='{}'", entry.getKey(), e);
+                    }
+                }
+            }
+        }
+        contexts.clear();
+    }
+
+    /**
+     * Adds the keys under the context lock, refreshes the expiry and applies the fsync policy.
+     */
+    private Set<String> claim(String contextId, Collection<String> recordKeys) {
+        return claim(contextId, recordKeys, MappedFileIdempotencyCacheService::fingerprint);
+    }
+
+    private <K> Set<K> claim(String contextId, Collection<K> recordKeys, ToLongFunction<K> fingerprint) {
+        while (true) {
+            Context context = context(contextId, true);
+            synchronized (context) {
+                if (context.deleted) {
+                    continue;
+                }
+                Set<K> claimed = new LinkedHashSet<>();
+                for (K key : recordKeys) {
+                    if (context.table.add(fingerprint.applyAsLong(key))) {
+                        claimed.add(key);
+                    }
+                }
+                if (properties.getTtlStrategy() != TtlStrategy.ON_CREATE) {
+                    context.table.expiresAtMillis(System.currentTimeMillis() + properties.getTtl().toMillis());
+                }
+                sync(context);
+                return claimed;
+            }
+        }
+    }
+
+    private boolean contains(String contextId, long fingerprint) {
+        Context context = context(contextId, false);
+        if (context == null) {
+            return false;
+        }
+        synchronized (context) {
+            return !context.deleted && context.table.contains(fingerprint);
+        }
+    }
+
+    private void sync(Context context) {
+        context.dirty = true;
+        boolean due = switch (mappedFile.getFsyncPolicy()) {
+            case ALWAYS -> true;
+            case BATCH -> isForceDue(context, System.nanoTime());
+            case NEVER -> false;
+        };
+        if (due) {
+            force(context);
+        }
+    }
+
+    private boolean isForceDue(Context context, long now) {
+        return context.dirty && now - context.lastForceNanos >= mappedFile.getFsyncInterval().toNanos();
+    }
+
+    private void force(Context context) {
+        context.table.force();
+        context.lastForceNanos = System.nanoTime();
+        context.dirty = false;
+    }
+
+    /**
+     * BATCH only forces on a write once the interval has passed; the timer forces tables whose last writes would
+     * otherwise wait for the next one.
+     */
+    private ScheduledExecutorService startFsyncTimer() {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "idempotency-mapped-file-fsync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalNanos = mappedFile.getFsyncInterval().toNanos();
+        timer.scheduleWithFixedDelay(this::forceDueTables, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+        return timer;
+    }
+
+    private void forceDueTables() {
+        for (Map.Entry<String, Context> entry : contexts.entrySet()) {
+            Context context = entry.getValue();
+            synchronized (context) {
+                try {
+                    if (!context.deleted && isForceDue(context, System.nanoTime())) {
+                        force(context);
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Could not force idempotency table for contextId='{}'", entry.getKey(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the open table of the context, opening its file if it exists (or creating it when create is set).
+     * An expired table is deleted and treated as missing.
+     */
+    private Context context(String contextId, boolean create) {
+        Context context = contexts.get(contextId);
+        if (context != null && !isExpired(context)) {
+            return context;
+        }
+        if (context != null) {
+            expire(contextId, context);
+        }
+        boolean[] created = new boolean[1];
+        context = contexts.computeIfAbsent(contextId, id -> {
+            Path path = path(id);
+            if (!create && !Files.exists(path)) {
+                return null;
+            }
+            try {
+                created[0] = !Files.exists(path);
+                long expiresAt = System.currentTimeMillis() + properties.getTtl().toMillis();
+                MappedLongHashTable table = MappedLongHashTable.open(path, mappedFile.getInitialCapacity(), expiresAt);
+                if (table.isRecovered()) {
+                    log.warn("Recovered idempotency table for contextId='{}' after an unclean shutdown ({} keys)", id, table.size());
+                }
+                return new Context(table);
+            } catch (IOException e) {
+                throw new UncheckedIOException("could not open idempotency table for contextId=" + id, e);
+            }
+        });
+        if (context != null && isExpired(context)) {
+            expire(contextId, context);
+            return create ? context(contextId, true) : null;
+        }
+        if (created[0]) {
+            reclaimExpiredFiles();
+        }
+        return context;
+    }
+
+    private boolean isExpired(Context context) {
+        synchronized (context) {
+            return !context.deleted && context.table.expiresAtMillis() <= System.currentTimeMillis();
+        }
+    }
+
+    private void expire(String contextId, Context context) {
+        if (contexts.remove(contextId, context)) {
+            synchronized (context) {
+                try {
+                    context.deleted = true;
+                    context.table.delete();
+                } catch (IOException e) {
+                    log.warn("Could not delete expired idempotency table for contextId='{}'", contextId, e);
+                }
+            }
+            log.debug("Expired contextId='{}'", contextId);
+        }
+    }
+
+    /**
+     * Deletes expired table files that are not open, and side files left behind by an interrupted resize.
+     */
+    private void reclaimExpiredFiles() {
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(FILE_SUFFIX) && !contexts.containsKey(contextId(name))
+                        && MappedLongHashTable.deleteIfUnused(file, now)) {
+                    log.info("Reclaimed expired idempotency table '{}'", name);
+                } else if (name.endsWith(FILE_SUFFIX + MappedLongHashTable.RESIZE_SUFFIX)) {
+                    // A side file is only left over if its table is not open here or in another process.
+                    String tableName = name.substring(0, name.length() - MappedLongHashTable.RESIZE_SUFFIX.length());
+                    if (!contexts.containsKey(contextId(tableName)) && !MappedLongHashTable.isLocked(file.resolveSibling(tableName))) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not reclaim expired idempotency tables in '{}'", directory, e);
+        }
+    }
+
+    private Path path(String contextId) {
+        return directory.resolve(URLEncoder.encode(contextId, StandardCharsets.UTF_8) + FILE_SUFFIX);
+    }
+
+    private static String contextId(String fileName) {
+        return URLDecoder.decode(fileName.substring(0, fileName.length() - FILE_SUFFIX.length()), StandardCharsets.UTF_8);
+    }
+
+    private static long fingerprint(String recordKey) {
+        return Murmur3.hash64(recordKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void requireRecordKey(byte[] recordKey) {
+        if (recordKey == null || recordKey.length == 0) {
+            log.warn("record key bytes required but were empty");
+            throw new IllegalArgumentException("recordKey required");
+        }
+    }
+
+    private void requireContextId(String contextId) {
+        if (!StringUtils.hasText(contextId)) {
+            log.warn("contextId required but was '{}'", contextId);
+            throw new IllegalArgumentException("contextId required");
+        }
+    }
+
+    private void requireRecordKey(String recordKey) {
+        if (!StringUtils.hasText(recordKey)) {
+            log.warn("record key required but was '{}'", recordKey);
+            throw new IllegalArgumentException("recordKey required");
+        }
+    }
+
+    private void requireRecordKeys(Collection<String> recordKeys) {
+        if (Objects.isNull(recordKeys) || recordKeys.isEmpty()) {
+            log.warn("record key set required but was '{}'", recordKeys);
+            throw new IllegalArgumentException("recordKeys required and must not be empty");
+        }
+        for (String key : recordKeys) {
+            requireRecordKey(key);
+        }
+    }
+
+    private static final class Context {
+
+        private final MappedLongHashTable table;
+        private boolean deleted;
+        private boolean dirty;
+        private long lastForceNanos = System.nanoTime();
+
+        private Context(MappedLongHashTable table) {
+            this.table = table;
+        }
+    }
+}
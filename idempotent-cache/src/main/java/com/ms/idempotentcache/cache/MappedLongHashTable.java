@@ -0,0 +1,323 @@
+package com.ms.idempotentcache.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Open-addressing long hash table in a memory-mapped file, with the same probing as {@link OffHeapLongHashSet}.
+ * <p>
+ * File layout (little-endian): a 64-byte header followed by capacity 8-byte slots.
+ * - 0: magic, 8: state (0 = closed cleanly, 1 = open, 2 = retired), 12: capacity, 16: size, 20: contains-zero flag
+ * - 24: expiry as epoch millis
+ * <p>
+ * A claim is a single 8-byte store into the page cache, so it survives a process crash as soon as the call
+ * returns; {@link #force()} makes it survive a power loss. The header is marked open while the table is in
+ * use; a table found open was not closed cleanly, and its size is recounted from the slots on open.
+ * <p>
+ * The owner holds an exclusive {@link FileLock} on the file from open to close, so a second process opening the
+ * same table fails instead of corrupting it. A file that was renamed over or deleted is marked retired before its
+ * lock is released; an opener that locks it afterwards starts over with whatever file the path now names.
+ * <p>
+ * Growing writes a doubled table to a side file and atomically renames it over the original, so a crash during
+ * a resize leaves the previous table intact. Not thread-safe: callers synchronize on the instance.
+ */
+final class MappedLongHashTable {
+
+    static final String RESIZE_SUFFIX = ".resize";
+
+    private static final long MAGIC = 0x4944454d50543031L;
+    private static final int HEADER_BYTES = 64;
+    private static final int STATE_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+    private static final int SIZE_OFFSET = 16;
+    private static final int ZERO_OFFSET = 20;
+    private static final int EXPIRES_AT_OFFSET = 24;
+    private static final int CLEAN = 0;
+    private static final int OPEN = 1;
+    private static final int RETIRED = 2;
+
+    private final Path path;
+    private FileChannel channel;
+    private FileLock lock;
+    private MappedByteBuffer header;
+    private MappedByteBuffer slots;
+    private int mask;
+    private int size;
+    private boolean recovered;
+
+    private MappedLongHashTable(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Opens the table stored at path, or creates it with room for expectedKeys keys.
+     *
+     * @throws IllegalStateException if another process (or another store in this one) has the table open
+     */
+    static MappedLongHashTable open(Path path, int expectedKeys, long expiresAtMillis) throws IOException {
+        while (true) {
+            MappedLongHashTable table = new MappedLongHashTable(path);
+            table.lock();
+            try {
+                Files.deleteIfExists(resizePath(path));
+                boolean exists = table.channel.size() >= HEADER_BYTES;
+                if (exists && isRetired(table.channel)) {
+                    table.channel.close();
+                    continue;
+                }
+                table.map(exists ? 0 : OffHeapLongHashSet.capacityFor(expectedKeys));
+                if (exists) {
+                    table.load();
+                } else {
+                    table.header.putLong(0, MAGIC);
+                    table.header.putLong(EXPIRES_AT_OFFSET, expiresAtMillis);
+                }
+                table.header.putInt(STATE_OFFSET, OPEN);
+                table.header.force();
+                return table;
+            } catch (IOException | RuntimeException e) {
+                table.channel.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Deletes the table file at path if nobody has it open and it expires at or before maxExpiresAtMillis; tables
+     * with an unreadable header count as expired.
+     *
+     * @return true if the file is gone, false if it is open elsewhere or not expired
+     */
+    static boolean deleteIfUnused(Path path, long maxExpiresAtMillis) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (tryLock(channel) == null) {
+                return false;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(buffer, 0);
+            if (buffer.getLong(0) == MAGIC) {
+                if (buffer.getInt(STATE_OFFSET) != RETIRED && buffer.getLong(EXPIRES_AT_OFFSET) > maxExpiresAtMillis) {
+                    return false;
+                }
+                retire(channel);
+            }
+            Files.deleteIfExists(path);
+            return true;
+        } catch (NoSuchFileException e) {
+            return true;
+        }
+    }
+
+    /**
+     * True if the table file at path is locked by an open table.
+     */
+    static boolean isLocked(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return tryLock(channel) == null;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    boolean add(long key) {
+        if (key == 0) {
+            boolean added = header.getInt(ZERO_OFFSET) == 0;
+            header.putInt(ZERO_OFFSET, 1);
+            return added && incrementSize();
+        }
+        if ((size + 1) * 2L > capacity()) {
+            resize(capacity() * 2);
+        }
+        return OffHeapLongHashSet.insert(slots, mask, key) && incrementSize();
+    }
+
+    boolean contains(long key) {
+        return key == 0 ? header.getInt(ZERO_OFFSET) != 0 : OffHeapLongHashSet.contains(slots, mask, key);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * True if the table was found open, i.e. the previous owner crashed, and its size had to be recounted.
+     */
+    boolean isRecovered() {
+        return recovered;
+    }
+
+    long expiresAtMillis() {
+        return header.getLong(EXPIRES_AT_OFFSET);
+    }
+
+    void expiresAtMillis(long expiresAtMillis) {
+        header.putLong(EXPIRES_AT_OFFSET, expiresAtMillis);
+    }
+
+    /**
+     * Forces the slots and the header to disk.
+     */
+    void force() {
+        slots.force();
+        header.force();
+    }
+
+    /**
+     * Marks the table closed cleanly and releases the file and its lock; pages are forced first if requested.
+     */
+    void close(boolean force) throws IOException {
+        header.putInt(STATE_OFFSET, CLEAN);
+        if (force) {
+            force();
+        }
+        channel.close();
+    }
+
+    /**
+     * Deletes the file, then releases it and its lock; the mapping stays valid until it is collected.
+     */
+    void delete() throws IOException {
+        try {
+            header.putInt(STATE_OFFSET, RETIRED);
+            Files.deleteIfExists(path);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private boolean incrementSize() {
+        size++;
+        header.putInt(SIZE_OFFSET, size);
+        return true;
+    }
+
+    private int capacity() {
+        return mask + 1;
+    }
+
+    private void load() throws IOException {
+        if (header.getLong(0) != MAGIC) {
+            throw new IOException("not an idempotency table: " + path);
+        }
+        if (header.getInt(STATE_OFFSET) == OPEN) {
+            recovered = true;
+            int count = header.getInt(ZERO_OFFSET) != 0 ? 1 : 0;
+            for (int i = 0; i < capacity(); i++) {
+                if (slots.getLong(i << 3) != 0) {
+                    count++;
+                }
+            }
+            header.putInt(SIZE_OFFSET, count);
+        }
+        size = header.getInt(SIZE_OFFSET);
+    }
+
+    /**
+     * Opens the file and takes its lock, failing fast if the table is already open elsewhere.
+     */
+    private void lock() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        lock = tryLock(channel);
+        if (lock == null) {
+            channel.close();
+            throw new IllegalStateException("idempotency table is in use by another process: " + path);
+        }
+    }
+
+    /**
+     * Maps the header and the slots of the locked file; capacity 0 takes the capacity recorded in an existing header.
+     */
+    private void map(int capacity) throws IOException {
+        header = mapRegion(0, HEADER_BYTES);
+        if (capacity == 0) {
+            capacity = header.getInt(CAPACITY_OFFSET);
+            if (Integer.bitCount(capacity) != 1 || capacity > OffHeapLongHashSet.MAX_CAPACITY) {
+                channel.close();
+                throw new IOException("corrupt idempotency table header: " + path);
+            }
+        } else {
+            header.putInt(CAPACITY_OFFSET, capacity);
+        }
+        slots = mapRegion(HEADER_BYTES, capacity * Long.BYTES);
+        mask = capacity - 1;
+    }
+
+    private MappedByteBuffer mapRegion(long position, int bytes) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private void resize(int newCapacity) {
+        if (newCapacity > OffHeapLongHashSet.MAX_CAPACITY) {
+            throw new IllegalStateException("idempotency table is full (" + size + " keys): " + path);
+        }
+        try {
+            Path resizePath = resizePath(path);
+            MappedLongHashTable resized = new MappedLongHashTable(resizePath);
+            resized.lock();
+            resized.map(newCapacity);
+            resized.header.putLong(0, MAGIC);
+            resized.header.putInt(ZERO_OFFSET, header.getInt(ZERO_OFFSET));
+            resized.header.putLong(EXPIRES_AT_OFFSET, expiresAtMillis());
+            resized.header.putInt(SIZE_OFFSET, size);
+            for (int i = 0; i < capacity(); i++) {
+                long slot = slots.getLong(i << 3);
+                if (slot != 0) {
+                    OffHeapLongHashSet.insert(resized.slots, resized.mask, slot);
+                }
+            }
+            resized.header.putInt(STATE_OFFSET, OPEN);
+            resized.force();
+            // The resized file keeps its lock across the rename; the replaced one is retired before it is unlocked.
+            Files.move(resizePath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            header.putInt(STATE_OFFSET, RETIRED);
+            channel.close();
+            channel = resized.channel;
+            lock = resized.lock;
+            header = resized.header;
+            slots = resized.slots;
+            mask = resized.mask;
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not resize idempotency table " + path, e);
+        }
+    }
+
+    /**
+     * Takes the exclusive lock of the file, or returns null if another process or another channel of this one
+     * holds it.
+     */
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private static boolean isRetired(FileChannel channel) throws IOException {
+        ByteBuffer state = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(state, STATE_OFFSET);
+        return state.getInt(0) == RETIRED;
+    }
+
+    private static void retire(FileChannel channel) throws IOException {
+        ByteBuffer state = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(0, RETIRED);
+        channel.write(state, STATE_OFFSET);
+    }
+
+    private static Path resizePath(Path path) {
+        return path.resolveSibling(path.getFileName() + RESIZE_SUFFIX);
+    }
+}
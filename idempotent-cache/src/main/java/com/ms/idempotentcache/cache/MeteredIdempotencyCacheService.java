@@ -0,0 +1,259 @@
+package com.ms.idempotentcache.cache;
+
+import com.ms.idempotentcache.metrics.IdempotencyMeters;
+import com.ms.idempotentcache.metrics.IdempotencyMeters.Operation;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IdempotencyCacheService decorator recording the same meters as IdempotencyMetricsAspect, selected with
+ * idempotency.key.metrics.mode=decorator.
+ * <p>
+ * Calls are plain virtual calls instead of going through an AOP proxy and a reflective join point, and every timer is
+ * resolved once in the constructor, so instrumenting a single-key call costs two System.nanoTime() reads and a few
+ * counter increments.
+ */
+public class MeteredIdempotencyCacheService implements IdempotencyCacheService, AutoCloseable {
+
+    private final IdempotencyCacheService delegate;
+    private final IdempotencyMeters meters;
+    private final Class<?> implementation;
+    private final Timer isProcessedTimer;
+    private final Timer filterUnprocessedTimer;
+    private final Timer markProcessedTimer;
+    private final Timer markProcessedBulkTimer;
+    private final Timer tryMarkProcessedTimer;
+    private final Timer tryMarkProcessedBulkTimer;
+    private final Timer clearCacheTimer;
+    private final Timer clearCacheBulkTimer;
+
+    public MeteredIdempotencyCacheService(IdempotencyCacheService delegate, IdempotencyMeters meters) {
+        this.delegate = delegate;
+        this.meters = meters;
+        this.implementation = delegate.getClass();
+        this.isProcessedTimer = meters.timer(implementation, Operation.IS_PROCESSED, false);
+        this.filterUnprocessedTimer = meters.timer(implementation, Operation.FILTER_UNPROCESSED, true);
+        this.markProcessedTimer = meters.timer(implementation, Operation.MARK_PROCESSED, false);
+        this.markProcessedBulkTimer = meters.timer(implementation, Operation.MARK_PROCESSED, true);
+        this.tryMarkProcessedTimer = meters.timer(implementation, Operation.TRY_MARK_PROCESSED, false);
+        this.tryMarkProcessedBulkTimer = meters.timer(implementation, Operation.TRY_MARK_PROCESSED, true);
+        this.clearCacheTimer = meters.timer(implementation, Operation.CLEAR_CACHE_FOR_CONTEXT, false);
+        this.clearCacheBulkTimer = meters.timer(implementation, Operation.CLEAR_CACHE_FOR_CONTEXT, true);
+    }
+
+    @Override
+    public boolean isProcessed(String contextId, String recordKey) {
+        long start = System.nanoTime();
+        try {
+            return countHitOrMiss(delegate.isProcessed(contextId, recordKey));
+        } catch (RuntimeException e) {
+            throw error(Operation.IS_PROCESSED, e);
+        } finally {
+            isProcessedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean isProcessed(String contextId, byte[] recordKey) {
+        long start = System.nanoTime();
+        try {
+            return countHitOrMiss(delegate.isProcessed(contextId, recordKey));
+        } catch (RuntimeException e) {
+            throw error(Operation.IS_PROCESSED, e);
+        } finally {
+            isProcessedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Set<String> filterUnprocessed(String contextId, Collection<String> recordKeys) {
+        meters.recordBatchSize(Operation.FILTER_UNPROCESSED, IdempotencyMeters.keyCount(recordKeys));
+        long start = System.nanoTime();
+        try {
+            Set<String> unprocessed = delegate.filterUnprocessed(contextId, recordKeys);
+            meters.hit(IdempotencyMeters.distinctKeyCount(recordKeys) - unprocessed.size());
+            meters.miss(unprocessed.size());
+            return unprocessed;
+        } catch (RuntimeException e) {
+            throw error(Operation.FILTER_UNPROCESSED, e);
+        } finally {
+            filterUnprocessedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Map<String, Set<String>> filterUnprocessed(Map<String, ? extends Collection<String>> recordKeysByContext) {
+        meters.recordBatchSize(Operation.FILTER_UNPROCESSED, IdempotencyMeters.keyCount(recordKeysByContext));
+        long start = System.nanoTime();
+        try {
+            Map<String, Set<String>> unprocessed = delegate.filterUnprocessed(recordKeysByContext);
+            long unprocessedCount = IdempotencyMeters.keyCount(unprocessed);
+            meters.hit(IdempotencyMeters.distinctKeyCount(recordKeysByContext) - unprocessedCount);
+            meters.miss(unprocessedCount);
+            return unprocessed;
+        } catch (RuntimeException e) {
+            throw error(Operation.FILTER_UNPROCESSED, e);
+        } finally {
+            filterUnprocessedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void markProcessed(String contextId, String recordKey) {
+        long start = System.nanoTime();
+        try {
+            delegate.markProcessed(contextId, recordKey);
+        } catch (RuntimeException e) {
+            throw error(Operation.MARK_PROCESSED, e);
+        } finally {
+            markProcessedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            meters.markProcessed();
+        }
+    }
+
+    @Override
+    public boolean tryMarkProcessed(String contextId, String recordKey) {
+        long start = System.nanoTime();
+        try {
+            return countClaim(delegate.tryMarkProcessed(contextId, recordKey));
+        } catch (RuntimeException e) {
+            throw error(Operation.TRY_MARK_PROCESSED, e);
+        } finally {
+            tryMarkProcessedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean tryMarkProcessed(String contextId, byte[] recordKey) {
+        long start = System.nanoTime();
+        try {
+            return countClaim(delegate.tryMarkProcessed(contextId, recordKey));
+        } catch (RuntimeException e) {
+            throw error(Operation.TRY_MARK_PROCESSED, e);
+        } finally {
+            tryMarkProcessedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Set<String> tryMarkProcessed(String contextId, Collection<String> recordKeys) {
+        meters.recordBatchSize(Operation.TRY_MARK_PROCESSED, IdempotencyMeters.keyCount(recordKeys));
+        long start = System.nanoTime();
+        try {
+            Set<String> claimed = delegate.tryMarkProcessed(contextId, recordKeys);
+            meters.claimed(claimed.size());
+            meters.duplicate(IdempotencyMeters.distinctKeyCount(recordKeys) - claimed.size());
+            return claimed;
+        } catch (RuntimeException e) {
+            throw error(Operation.TRY_MARK_PROCESSED, e);
+        } finally {
+            tryMarkProcessedBulkTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Map<String, Set<String>> tryMarkProcessed(Map<String, ? extends Collection<String>> recordKeysByContext) {
+        meters.recordBatchSize(Operation.TRY_MARK_PROCESSED, IdempotencyMeters.keyCount(recordKeysByContext));
+        long start = System.nanoTime();
+        try {
+            Map<String, Set<String>> claimed = delegate.tryMarkProcessed(recordKeysByContext);
+            long claimedCount = IdempotencyMeters.keyCount(claimed);
+            meters.claimed(claimedCount);
+            meters.duplicate(IdempotencyMeters.distinctKeyCount(recordKeysByContext) - claimedCount);
+            return claimed;
+        } catch (RuntimeException e) {
+            throw error(Operation.TRY_MARK_PROCESSED, e);
+        } finally {
+            tryMarkProcessedBulkTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void markProcessed(String contextId, Set<String> recordKeys) {
+        meters.recordBatchSize(Operation.MARK_PROCESSED, IdempotencyMeters.keyCount(recordKeys));
+        long start = System.nanoTime();
+        try {
+            delegate.markProcessed(contextId, recordKeys);
+        } catch (RuntimeException e) {
+            throw error(Operation.MARK_PROCESSED, e);
+        } finally {
+            markProcessedBulkTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            meters.markProcessed();
+        }
+    }
+
+    @Override
+    public void clearCacheForContext(String contextId) {
+        long start = System.nanoTime();
+        try {
+            delegate.clearCacheForContext(contextId);
+        } catch (RuntimeException e) {
+            throw error(Operation.CLEAR_CACHE_FOR_CONTEXT, e);
+        } finally {
+            clearCacheTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            meters.cleared(1);
+        }
+    }
+
+    @Override
+    public void clearCacheForContext(Collection<String> contextIds) {
+        meters.recordBatchSize(Operation.CLEAR_CACHE_FOR_CONTEXT, IdempotencyMeters.keyCount(contextIds));
+        long start = System.nanoTime();
+        try {
+            delegate.clearCacheForContext(contextIds);
+        } catch (RuntimeException e) {
+            throw error(Operation.CLEAR_CACHE_FOR_CONTEXT, e);
+        } finally {
+            clearCacheBulkTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            meters.cleared(IdempotencyMeters.keyCount(contextIds));
+        }
+    }
+
+    @Override
+    public void warmContext(String contextId) {
+        delegate.warmContext(contextId);
+    }
+
+    /**
+     * The decorated service, e.g. to reach implementation-specific methods.
+     */
+    public IdempotencyCacheService getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Closes the delegate if it holds resources (e.g. the mapped-file store); a checked failure is rethrown as an
+     * IllegalStateException.
+     */
+    @Override
+    public void close() {
+        DelegateCloser.close(delegate);
+    }
+
+    private boolean countHitOrMiss(boolean processed) {
+        if (processed) {
+            meters.hit(1);
+        } else {
+            meters.miss(1);
+        }
+        return processed;
+    }
+
+    private boolean countClaim(boolean claimed) {
+        if (claimed) {
+            meters.claimed(1);
+        } else {
+            meters.duplicate(1);
+        }
+        return claimed;
+    }
+
+    private RuntimeException error(Operation operation, RuntimeException e) {
+        meters.recordError(implementation, operation, e);
+        return e;
+    }
+}
@@ -0,0 +1,343 @@
+package com.ms.idempotentcache.cache;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import com.ms.idempotentcache.constant.IdempotencyConstant;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.Topic;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Two-tier IdempotencyCacheService: a bounded local cache of confirmed-processed keys in front of a remote
+ * delegate (usually {@link RedisIdempotencyCacheService}).
+ * <p>
+ * Only positive answers are cached: once a key is known to be processed it stays processed until its context is
+ * cleared or expires, so a local hit never needs a round trip. Misses always go to the delegate.
+ * <p>
+ * Local entries are invalidated through Redis pub/sub:
+ * - an explicit invalidation channel (prefix + "near-cache:invalidate") published on every clearCacheForContext
+ * - keyspace notifications (del/unlink/expired/evicted) for the context keys, when enabled on the server; with a
+ *   sharded layout the removal of any bucket evicts the whole context locally
+ * Invalidations published while the listener is disconnected are lost, so every (re)subscription evicts all local
+ * entries. Keys read from the delegate are only remembered in the local set that existed before the call: if the
+ * context was evicted meanwhile, the answer may predate the clear and is not cached.
+ * <p>
+ * Local hits and misses are reported as idempotency.cache.near.hit / idempotency.cache.near.miss. Every near miss is
+ * one lookup answered by the delegate. The regular idempotency.cache.* counters (aspect or metered decorator) wrap
+ * this service, so they count local hits and delegate answers together.
+ */
+public class NearCacheIdempotencyCacheService implements IdempotencyCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(NearCacheIdempotencyCacheService.class);
+
+    private final IdempotencyCacheService delegate;
+    private final StringRedisTemplate redisTemplate;
+    private final IdempotencyProperties properties;
+    private final RedisSetKeyLayout layout;
+    private final Map<String, Set<String>> localContexts;
+    private final Counter nearHitCounter;
+    private final Counter nearMissCounter;
+
+    public NearCacheIdempotencyCacheService(IdempotencyCacheService delegate,
+                                            StringRedisTemplate redisTemplate,
+                                            IdempotencyProperties properties,
+                                            MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.layout = new RedisSetKeyLayout(properties);
+        this.localContexts = Collections.synchronizedMap(lruMap(properties.getNearCache().getMaxContexts()));
+        this.nearHitCounter = meterRegistry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_NEAR_HIT);
+        this.nearMissCounter = meterRegistry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_NEAR_MISS);
+    }
+
+    @Override
+    public boolean isProcessed(String contextId, String recordKey) {
+        if (isKnownLocally(contextId, recordKey)) {
+            nearHitCounter.increment();
+            return true;
+        }
+        nearMissCounter.increment();
+        Set<String> localKeys = localKeys(contextId);
+        boolean processed = delegate.isProcessed(contextId, recordKey);
+        if (processed) {
+            rememberLocally(contextId, localKeys, List.of(recordKey));
+        }
+        return processed;
+    }
+
+    @Override
+    public Set<String> filterUnprocessed(String contextId, Collection<String> recordKeys) {
+        Set<String> localKeys = localKeys(contextId);
+        Set<String> remote = unknownLocally(localKeys, recordKeys);
+        if (remote.isEmpty()) {
+            return remote;
+        }
+        Set<String> unprocessed = delegate.filterUnprocessed(contextId, remote);
+        remote.removeAll(unprocessed);
+        rememberLocally(contextId, localKeys, remote);
+        return unprocessed;
+    }
+
+    @Override
+    public Map<String, Set<String>> filterUnprocessed(Map<String, ? extends Collection<String>> recordKeysByContext) {
+        Map<String, Set<String>> localKeysByContext = localKeys(recordKeysByContext.keySet());
+        Map<String, Set<String>> remoteByContext = unknownLocally(localKeysByContext, recordKeysByContext);
+        Map<String, Set<String>> result = new LinkedHashMap<>();
+        recordKeysByContext.keySet().forEach(contextId -> result.put(contextId, new LinkedHashSet<>()));
+        if (remoteByContext.isEmpty()) {
+            return result;
+        }
+        result.putAll(delegate.filterUnprocessed(remoteByContext));
+        remoteByContext.forEach((contextId, remote) -> {
+            remote.removeAll(result.get(contextId));
+            rememberLocally(contextId, localKeysByContext.get(contextId), remote);
+        });
+        return result;
+    }
+
+    @Override
+    public void markProcessed(String contextId, String recordKey) {
+        Set<String> localKeys = localKeys(contextId);
+        delegate.markProcessed(contextId, recordKey);
+        rememberLocally(contextId, localKeys, List.of(recordKey));
+    }
+
+    @Override
+    public boolean tryMarkProcessed(String contextId, String recordKey) {
+        if (isKnownLocally(contextId, recordKey)) {
+            nearHitCounter.increment();
+            return false;
+        }
+        nearMissCounter.increment();
+        Set<String> localKeys = localKeys(contextId);
+        boolean claimed = delegate.tryMarkProcessed(contextId, recordKey);
+        rememberLocally(contextId, localKeys, List.of(recordKey));
+        return claimed;
+    }
+
+    @Override
+    public Set<String> tryMarkProcessed(String contextId, Collection<String> recordKeys) {
+        Set<String> localKeys = localKeys(contextId);
+        Set<String> remote = unknownLocally(localKeys, recordKeys);
+        if (remote.isEmpty()) {
+            return remote;
+        }
+        Set<String> claimed = delegate.tryMarkProcessed(contextId, remote);
+        rememberLocally(contextId, localKeys, remote);
+        return claimed;
+    }
+
+    @Override
+    public Map<String, Set<String>> tryMarkProcessed(Map<String, ? extends Collection<String>> recordKeysByContext) {
+        Map<String, Set<String>> localKeysByContext = localKeys(recordKeysByContext.keySet());
+        Map<String, Set<String>> remoteByContext = unknownLocally(localKeysByContext, recordKeysByContext);
+        Map<String, Set<String>> result = new LinkedHashMap<>();
+        recordKeysByContext.keySet().forEach(contextId -> result.put(contextId, new LinkedHashSet<>()));
+        if (remoteByContext.isEmpty()) {
+            return result;
+        }
+        result.putAll(delegate.tryMarkProcessed(remoteByContext));
+        remoteByContext.forEach((contextId, remote) -> rememberLocally(contextId, localKeysByContext.get(contextId), remote));
+        return result;
+    }
+
+    @Override
+    public void markProcessed(String contextId, Set<String> recordKeys) {
+        Set<String> localKeys = localKeys(contextId);
+        delegate.markProcessed(contextId, recordKeys);
+        rememberLocally(contextId, localKeys, recordKeys);
+    }
+
+    /**
+     * Clears the context remotely and locally, then tells every other node to drop its local entries.
+     */
+    @Override
+    public void clearCacheForContext(String contextId) {
+        delegate.clearCacheForContext(contextId);
+        evictLocally(contextId);
+        redisTemplate.convertAndSend(invalidationChannel(), contextId);
+    }
+
+    /**
+     * Clears the contexts remotely with the delegate's bulk clear, then locally and on every other node.
+     */
+    @Override
+    public void clearCacheForContext(Collection<String> contextIds) {
+        delegate.clearCacheForContext(contextIds);
+        for (String contextId : contextIds) {
+            evictLocally(contextId);
+            redisTemplate.convertAndSend(invalidationChannel(), contextId);
+        }
+    }
+
+    @Override
+    public void warmContext(String contextId) {
+        delegate.warmContext(contextId);
+    }
+
+    /**
+     * Listener for the invalidation channel and for keyspace notifications on the context keys; it also evicts every
+     * local entry whenever the container (re)subscribes it.
+     */
+    public MessageListener invalidationListener() {
+        return new InvalidationListener();
+    }
+
+    /**
+     * Topics the invalidation listener must be subscribed to.
+     */
+    public List<Topic> invalidationTopics() {
+        return List.of(new ChannelTopic(invalidationChannel()),
+                new PatternTopic(IdempotencyConstant.KEYSPACE_CHANNEL_PATTERN + properties.getPrefix() + "*"));
+    }
+
+    private void onInvalidation(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (channel.equals(invalidationChannel())) {
+            evictLocally(body);
+            return;
+        }
+        // Keyspace channel: __keyspace@<db>__:<prefix><contextId> (or a bucket key), body is the event name
+        int keyStart = channel.indexOf("__:");
+        if (keyStart < 0 || !isRemovalEvent(body)) {
+            return;
+        }
+        String contextId = layout.contextId(channel.substring(keyStart + 3));
+        if (contextId != null) {
+            evictLocally(contextId);
+        }
+    }
+
+    private void evictAllLocally() {
+        localContexts.clear();
+        log.debug("Evicted all near cache entries after (re)subscribing to invalidations");
+    }
+
+    private boolean isRemovalEvent(String event) {
+        return "del".equals(event) || "unlink".equals(event) || "expired".equals(event)
+                || "evicted".equals(event);
+    }
+
+    private String invalidationChannel() {
+        return properties.getPrefix() + IdempotencyConstant.NEAR_CACHE_INVALIDATION_CHANNEL;
+    }
+
+    private boolean isKnownLocally(String contextId, String recordKey) {
+        Set<String> keys = localContexts.get(contextId);
+        return keys != null && keys.contains(recordKey);
+    }
+
+    /**
+     * Returns the local key set of the context, creating it if needed. Captured before a delegate call, it is the
+     * token that tells rememberLocally whether the context was evicted during the call.
+     */
+    private Set<String> localKeys(String contextId) {
+        int maxKeys = properties.getNearCache().getMaxKeysPerContext();
+        return localContexts.computeIfAbsent(contextId,
+                id -> Collections.synchronizedSet(Collections.newSetFromMap(lruMap(maxKeys))));
+    }
+
+    private Map<String, Set<String>> localKeys(Collection<String> contextIds) {
+        Map<String, Set<String>> localKeysByContext = new LinkedHashMap<>();
+        contextIds.forEach(contextId -> localKeysByContext.put(contextId, localKeys(contextId)));
+        return localKeysByContext;
+    }
+
+    /**
+     * Returns the distinct keys that are not in the local set, counting every key answered locally as a near hit.
+     */
+    private Set<String> unknownLocally(Set<String> localKeys, Collection<String> recordKeys) {
+        Set<String> unknown = new LinkedHashSet<>();
+        int distinct = 0;
+        for (String recordKey : new LinkedHashSet<>(recordKeys)) {
+            distinct++;
+            if (!localKeys.contains(recordKey)) {
+                unknown.add(recordKey);
+            }
+        }
+        nearHitCounter.increment(distinct - unknown.size());
+        nearMissCounter.increment(unknown.size());
+        return unknown;
+    }
+
+    private Map<String, Set<String>> unknownLocally(Map<String, Set<String>> localKeysByContext,
+                                                    Map<String, ? extends Collection<String>> recordKeysByContext) {
+        Map<String, Set<String>> unknownByContext = new LinkedHashMap<>();
+        recordKeysByContext.forEach((contextId, recordKeys) -> {
+            Set<String> unknown = unknownLocally(localKeysByContext.get(contextId), recordKeys);
+            if (!unknown.isEmpty()) {
+                unknownByContext.put(contextId, unknown);
+            }
+        });
+        return unknownByContext;
+    }
+
+    /**
+     * Adds the keys to localKeys, the set captured before the delegate call, unless the context was evicted (or
+     * dropped by the LRU) since: then the delegate's answer may predate a clear.
+     */
+    private void rememberLocally(String contextId, Set<String> localKeys, Collection<String> recordKeys) {
+        if (recordKeys.isEmpty()) {
+            return;
+        }
+        synchronized (localContexts) {
+            if (localContexts.get(contextId) == localKeys) {
+                localKeys.addAll(recordKeys);
+            }
+        }
+    }
+
+    private void evictLocally(String contextId) {
+        if (localContexts.remove(contextId) != null) {
+            log.debug("Evicted near cache entries for contextId='{}'", contextId);
+        }
+    }
+
+    private final class InvalidationListener implements MessageListener, SubscriptionListener {
+
+        @Override
+        public void onMessage(Message message, byte[] pattern) {
+            onInvalidation(message, pattern);
+        }
+
+        @Override
+        public void onChannelSubscribed(byte[] channel, long count) {
+            evictAllLocally();
+        }
+
+        @Override
+        public void onPatternSubscribed(byte[] pattern, long count) {
+            evictAllLocally();
+        }
+    }
+
+    /**
+     * Access-ordered map that drops its eldest entry once it grows beyond maxEntries.
+     */
+    private static <V> Map<String, V> lruMap(int maxEntries) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+}
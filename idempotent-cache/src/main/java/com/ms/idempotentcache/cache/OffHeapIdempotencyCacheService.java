@@ -0,0 +1,287 @@
+package com.ms.idempotentcache.cache;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import com.ms.idempotentcache.config.TtlStrategy;
+import com.ms.idempotentcache.fingerprint.Murmur3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-process implementation of the IdempotencyCacheService interface, for single-node runs and tests.
+ * <p>
+ * Each context is an {@link OffHeapLongHashSet} of 64-bit Murmur3 fingerprints of the record keys, held in
+ * direct memory: no Redis round trip, no boxed keys and no per-key heap objects. With 64-bit fingerprints the
+ * chance of any false duplicate stays below 1e-6 up to about 6 million keys per context.
+ * <p>
+ * A context expires idempotency.key.ttl after its last write (after its creation with the ON_CREATE strategy);
+ * expired contexts are dropped lazily on access and whenever a new context is created. A cleared or expired context
+ * is marked deleted under its lock and its direct memory is freed at once; a write that finds its context deleted
+ * starts over on the live one, so a mark racing with a clear is never lost in a dropped table.
+ * <p>
+ * State is local to the JVM: it is neither shared between nodes nor kept across restarts.
+ */
+public class OffHeapIdempotencyCacheService implements IdempotencyCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(OffHeapIdempotencyCacheService.class);
+
+    private final IdempotencyProperties properties;
+    private final ConcurrentMap<String, Context> contexts = new ConcurrentHashMap<>();
+
+    public OffHeapIdempotencyCacheService(IdempotencyProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public boolean isProcessed(String contextId, String recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        boolean result = contains(contextId, fingerprint(recordKey));
+        log.debug("Check if contextId='{}' recordKey='{}' is processed: {}", contextId, recordKey, result);
+        return result;
+    }
+
+    @Override
+    public boolean isProcessed(String contextId, byte[] recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        boolean result = contains(contextId, Murmur3.hash64(recordKey));
+        log.debug("Check if contextId='{}' recordKeyBytes={} is processed: {}", contextId, recordKey.length, result);
+        return result;
+    }
+
+    @Override
+    public Set<String> filterUnprocessed(String contextId, Collection<String> recordKeys) {
+        requireContextId(contextId);
+        requireRecordKeys(recordKeys);
+        Set<String> unprocessed = new LinkedHashSet<>(recordKeys);
+        Context context = liveContext(contextId);
+        if (context != null) {
+            synchronized (context) {
+                if (!context.deleted) {
+                    unprocessed.removeIf(key -> context.keys.contains(fingerprint(key)));
+                }
+            }
+        }
+        log.debug("Filtered contextId='{}' recordKeysCount={} unprocessedCount={}", contextId, recordKeys.size(), unprocessed.size());
+        return unprocessed;
+    }
+
+    @Override
+    public void markProcessed(String contextId, String recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        tryMarkProcessed(contextId, Set.of(recordKey));
+        log.info("Marked contextId='{}' recordKey='{}' as processed (TTL={})", contextId, recordKey, properties.getTtl());
+    }
+
+    @Override
+    public boolean tryMarkProcessed(String contextId, String recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        boolean claimed = add(contextId, fingerprint(recordKey));
+        log.debug("Try mark contextId='{}' recordKey='{}' claimed: {}", contextId, recordKey, claimed);
+        return claimed;
+    }
+
+    @Override
+    public boolean tryMarkProcessed(String contextId, byte[] recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        boolean claimed = add(contextId, Murmur3.hash64(recordKey));
+        log.debug("Try mark contextId='{}' recordKeyBytes={} claimed: {}", contextId, recordKey.length, claimed);
+        return claimed;
+    }
+
+    @Override
+    public Set<String> tryMarkProcessed(String contextId, Collection<String> recordKeys) {
+        requireContextId(contextId);
+        requireRecordKeys(recordKeys);
+        Set<String> claimed = new LinkedHashSet<>();
+        while (true) {
+            Context context = writableContext(contextId);
+            synchronized (context) {
+                if (context.deleted) {
+                    continue;
+                }
+                for (String key : recordKeys) {
+                    if (context.keys.add(fingerprint(key))) {
+                        claimed.add(key);
+                    }
+                }
+                break;
+            }
+        }
+        log.debug("Try mark contextId='{}' recordKeysCount={} claimedCount={}", contextId, recordKeys.size(), claimed.size());
+        return claimed;
+    }
+
+    @Override
+    public void markProcessed(String contextId, Set<String> recordKeys) {
+        requireContextId(contextId);
+        requireRecordKeys(recordKeys);
+        tryMarkProcessed(contextId, recordKeys);
+        log.info("Marked contextId='{}' recordKeysCount={} as processed (TTL={})", contextId, recordKeys.size(), properties.getTtl());
+    }
+
+    /**
+     * Drops the context table and frees its direct memory.
+     */
+    @Override
+    public void clearCacheForContext(String contextId) {
+        requireContextId(contextId);
+        Context context = contexts.remove(contextId);
+        if (context != null) {
+            context.delete();
+        }
+        log.info("Cleared cache for contextId='{}'", contextId);
+    }
+
+    /**
+     * Off-heap bytes currently held by all live contexts.
+     */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Context context : contexts.values()) {
+            synchronized (context) {
+                bytes += context.deleted ? 0 : context.keys.memoryBytes();
+            }
+        }
+        return bytes;
+    }
+
+    private Context liveContext(String contextId) {
+        Context context = contexts.get(contextId);
+        if (context != null && context.isExpired(System.nanoTime())) {
+            if (contexts.remove(contextId, context)) {
+                context.delete();
+            }
+            log.debug("Expired contextId='{}'", contextId);
+            return null;
+        }
+        return context;
+    }
+
+    /**
+     * Returns the live context, creating it if needed, and refreshes its TTL unless the strategy is ON_CREATE.
+     */
+    private Context writableContext(String contextId) {
+        long now = System.nanoTime();
+        long ttlNanos = properties.getTtl().toNanos();
+        boolean[] created = new boolean[1];
+        Context[] expired = new Context[1];
+        Context context = contexts.compute(contextId, (id, existing) -> {
+            if (existing == null || existing.isExpired(now)) {
+                created[0] = true;
+                expired[0] = existing;
+                return new Context(properties.getOffHeap().getInitialCapacity(), now + ttlNanos);
+            }
+            if (properties.getTtlStrategy() != TtlStrategy.ON_CREATE) {
+                existing.expiresAtNanos = now + ttlNanos;
+            }
+            return existing;
+        });
+        if (expired[0] != null) {
+            expired[0].delete();
+        }
+        if (created[0]) {
+            contexts.forEach((id, existing) -> {
+                if (existing.isExpired(now) && contexts.remove(id, existing)) {
+                    existing.delete();
+                }
+            });
+        }
+        return context;
+    }
+
+    private boolean contains(String contextId, long fingerprint) {
+        Context context = liveContext(contextId);
+        if (context == null) {
+            return false;
+        }
+        synchronized (context) {
+            return !context.deleted && context.keys.contains(fingerprint);
+        }
+    }
+
+    /**
+     * Adds the key under the context lock, starting over if the context was cleared or expired in between.
+     */
+    private boolean add(String contextId, long fingerprint) {
+        while (true) {
+            Context context = writableContext(contextId);
+            synchronized (context) {
+                if (!context.deleted) {
+                    return context.keys.add(fingerprint);
+                }
+            }
+        }
+    }
+
+    private static long fingerprint(String recordKey) {
+        return Murmur3.hash64(recordKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void requireRecordKey(byte[] recordKey) {
+        if (recordKey == null || recordKey.length == 0) {
+            log.warn("record key bytes required but were empty");
+            throw new IllegalArgumentException("recordKey required");
+        }
+    }
+
+    private void requireContextId(String contextId) {
+        if (!StringUtils.hasText(contextId)) {
+            log.warn("contextId required but was '{}'", contextId);
+            throw new IllegalArgumentException("contextId required");
+        }
+    }
+
+    private void requireRecordKey(String recordKey) {
+        if (!StringUtils.hasText(recordKey)) {
+            log.warn("record key required but was '{}'", recordKey);
+            throw new IllegalArgumentException("recordKey required");
+        }
+    }
+
+    private void requireRecordKeys(Collection<String> recordKeys) {
+        if (Objects.isNull(recordKeys) || recordKeys.isEmpty()) {
+            log.warn("record key set required but was '{}'", recordKeys);
+            throw new IllegalArgumentException("recordKeys required and must not be empty");
+        }
+        for (String key : recordKeys) {
+            requireRecordKey(key);
+        }
+    }
+
+    private static final class Context {
+
+        private final OffHeapLongHashSet keys;
+        private volatile long expiresAtNanos;
+        private boolean deleted;
+
+        private Context(int initialCapacity, long expiresAtNanos) {
+            this.keys = new OffHeapLongHashSet(initialCapacity);
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+
+        /**
+         * Marks the context deleted and frees its table; called once it is no longer in the map.
+         */
+        private synchronized void delete() {
+            deleted = true;
+            keys.free();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.ms.idempotentcache.cache;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Open-addressing hash set of primitive longs stored outside the Java heap.
+ * <p>
+ * Slots are 8-byte cells of a direct ByteBuffer probed linearly; 0 marks an empty slot, so the value 0 itself
+ * is tracked by a separate flag. Keys are expected to be hashes already (e.g. Murmur3 fingerprints) and are
+ * only folded, not re-mixed, to find their home slot. The table doubles once it is half full, which keeps
+ * probe sequences short; nothing is boxed and the heap only holds the buffer handle. A replaced table and a
+ * {@link #free() freed} set release their direct memory at once instead of waiting for the buffer to be collected.
+ * <p>
+ * Not thread-safe: callers synchronize on the instance.
+ */
+final class OffHeapLongHashSet {
+
+    /**
+     * Largest power-of-two table a single ByteBuffer can address (2^27 slots = 1 GiB).
+     */
+    static final int MAX_CAPACITY = 1 << 27;
+
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * sun.misc.Unsafe.invokeCleaner bound to the Unsafe instance, or null if the runtime does not expose it (the
+     * memory is then released when the buffer is collected).
+     */
+    private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+    private ByteBuffer slots;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+
+    /**
+     * @param expectedKeys number of keys the table should hold before its first resize
+     */
+    OffHeapLongHashSet(int expectedKeys) {
+        allocate(capacityFor(expectedKeys));
+    }
+
+    /**
+     * @return true if the key was added, false if it was already present
+     */
+    boolean add(long key) {
+        if (slots == null) {
+            throw new IllegalStateException("off-heap hash set was freed");
+        }
+        if (key == 0) {
+            boolean added = !containsZero;
+            containsZero = true;
+            size += added ? 1 : 0;
+            return added;
+        }
+        if ((size + 1) * 2L > capacity()) {
+            resize(capacity() * 2);
+        }
+        if (insert(slots, mask, key)) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    boolean contains(long key) {
+        if (slots == null) {
+            return false;
+        }
+        return key == 0 ? containsZero : contains(slots, mask, key);
+    }
+
+    /**
+     * Releases the direct memory; the set is empty afterwards and rejects new keys.
+     */
+    void free() {
+        if (slots != null) {
+            release(slots);
+            slots = null;
+            mask = -1;
+            size = 0;
+            containsZero = false;
+        }
+    }
+
+    boolean isFreed() {
+        return slots == null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Off-heap bytes held by the table.
+     */
+    long memoryBytes() {
+        return slots == null ? 0 : (long) capacity() * Long.BYTES;
+    }
+
+    private int capacity() {
+        return mask + 1;
+    }
+
+    private void resize(int newCapacity) {
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("off-heap hash set is full (" + size + " keys)");
+        }
+        ByteBuffer oldSlots = slots;
+        int oldCapacity = capacity();
+        allocate(newCapacity);
+        for (int i = 0; i < oldCapacity; i++) {
+            long slot = oldSlots.getLong(i << 3);
+            if (slot != 0) {
+                insert(slots, mask, slot);
+            }
+        }
+        release(oldSlots);
+    }
+
+    private void allocate(int capacity) {
+        slots = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder());
+        mask = capacity - 1;
+    }
+
+    /**
+     * Linear probing lookup of a non-zero key in a table of 8-byte slots.
+     */
+    static boolean contains(ByteBuffer slots, int mask, long key) {
+        int index = home(key, mask);
+        while (true) {
+            long slot = slots.getLong(index << 3);
+            if (slot == key) {
+                return true;
+            }
+            if (slot == 0) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Linear probing insert of a non-zero key; returns false if the key is already present.
+     */
+    static boolean insert(ByteBuffer slots, int mask, long key) {
+        int index = home(key, mask);
+        while (true) {
+            long slot = slots.getLong(index << 3);
+            if (slot == key) {
+                return false;
+            }
+            if (slot == 0) {
+                slots.putLong(index << 3, key);
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    static int home(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    private static void release(ByteBuffer buffer) {
+        if (INVOKE_CLEANER != null) {
+            try {
+                INVOKE_CLEANER.invokeExact(buffer);
+            } catch (Throwable e) {
+                throw new IllegalStateException("could not release off-heap hash set memory", e);
+            }
+        }
+    }
+
+    private static MethodHandle invokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Smallest power-of-two capacity that keeps the load factor at or below 0.5 for the expected keys.
+     */
+    static int capacityFor(long expectedKeys) {
+        long capacity = Long.highestOneBit(Math.max(MIN_CAPACITY, expectedKeys * 2 - 1)) << 1;
+        return (int) Math.min(MAX_CAPACITY, capacity);
+    }
+}
@@ -0,0 +1,83 @@
+package com.ms.idempotentcache.cache;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Non-blocking counterpart of {@link IdempotencyCacheService} for reactive callers (WebFlux handlers,
+ * reactive Kafka consumers, ...). Every operation is deferred until subscription and never blocks the
+ * subscribing thread on Redis I/O.
+ * <p>
+ * Semantics match the blocking interface; invalid arguments are signalled as an {@link IllegalArgumentException}
+ * error instead of being thrown.
+ */
+public interface ReactiveIdempotencyCacheService {
+
+    /**
+     * Checks if the record key exists for the given context.
+     */
+    Mono<Boolean> isProcessed(String contextId, String recordKey);
+
+    /**
+     * Returns the record keys that have not been processed yet for the given context (bulk check).
+     * Duplicate keys in the input are reported once; the returned set keeps the input order.
+     */
+    Mono<Set<String>> filterUnprocessed(String contextId, Collection<String> recordKeys);
+
+    /**
+     * Returns the unprocessed record keys for several contexts at once, keyed by contextId.
+     * The contexts are resolved concurrently.
+     */
+    default Mono<Map<String, Set<String>>> filterUnprocessed(Map<String, ? extends Collection<String>> recordKeysByContext) {
+        return Flux.fromIterable(recordKeysByContext.entrySet())
+                .flatMapSequential(entry -> filterUnprocessed(entry.getKey(), entry.getValue())
+                        .map(unprocessed -> Map.entry(entry.getKey(), unprocessed)))
+                .collect(LinkedHashMap::new, (result, entry) -> result.put(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * Marks the record key as processed for the given context.
+     */
+    Mono<Void> markProcessed(String contextId, String recordKey);
+
+    /**
+     * Atomically marks the record key as processed and reports whether this call was the first to claim it.
+     *
+     * @return true if the key was newly claimed, false if it was already processed (duplicate)
+     */
+    Mono<Boolean> tryMarkProcessed(String contextId, String recordKey);
+
+    /**
+     * Atomically claims a batch of record keys for the given context.
+     * Duplicate keys in the input are claimed at most once.
+     *
+     * @return the keys newly claimed by this call, in input order; all other keys were already processed
+     */
+    Mono<Set<String>> tryMarkProcessed(String contextId, Collection<String> recordKeys);
+
+    /**
+     * Atomically claims record keys for several contexts at once, keyed by contextId.
+     * The contexts are claimed concurrently.
+     */
+    default Mono<Map<String, Set<String>>> tryMarkProcessed(Map<String, ? extends Collection<String>> recordKeysByContext) {
+        return Flux.fromIterable(recordKeysByContext.entrySet())
+                .flatMapSequential(entry -> tryMarkProcessed(entry.getKey(), entry.getValue())
+                        .map(claimed -> Map.entry(entry.getKey(), claimed)))
+                .collect(LinkedHashMap::new, (result, entry) -> result.put(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * Marks multiple records as processed (bulk insert).
+     */
+    Mono<Void> markProcessed(String contextId, Set<String> recordKeys);
+
+    /**
+     * Removes all cached record keys for the context (called after successful processing).
+     */
+    Mono<Void> clearCacheForContext(String contextId);
+}
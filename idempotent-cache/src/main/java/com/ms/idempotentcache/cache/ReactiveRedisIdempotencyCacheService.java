@@ -0,0 +1,314 @@
+package com.ms.idempotentcache.cache;
+
+import com.ms.idempotentcache.config.ClearStrategy;
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import com.ms.idempotentcache.config.TtlStrategy;
+import com.ms.idempotentcache.fingerprint.RecordKeyFingerprinter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Reactive implementation of the ReactiveIdempotencyCacheService interface on top of a
+ * {@link ReactiveStringRedisTemplate} (Lettuce's non-blocking API).
+ * <p>
+ * Uses exactly the same Redis layout as {@link RedisIdempotencyCacheService}: one Redis Set per context
+ * (prefix + contextId), or per bucket with idempotency.key.sharding.buckets (see {@link RedisSetKeyLayout}), whose
+ * members are the fingerprinted record keys, so blocking and reactive consumers share one dedupe cache. Claims run
+ * the same Lua scripts, and the context TTL follows the configured {@link TtlStrategy}. Bulk calls on a sharded
+ * context issue one command per bucket concurrently over the multiplexed connection. Contexts are deleted according
+ * to the configured {@link ClearStrategy}.
+ */
+public class ReactiveRedisIdempotencyCacheService implements ReactiveIdempotencyCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveRedisIdempotencyCacheService.class);
+
+    private static final RedisElementWriter<byte[]> ARGS_WRITER = RedisElementWriter.from(RedisSerializer.byteArray());
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final IdempotencyProperties properties;
+    private final RecordKeyFingerprinter fingerprinter;
+    private final RedisTtlPolicy ttlPolicy;
+    private final RedisSetKeyLayout layout;
+
+    public ReactiveRedisIdempotencyCacheService(ReactiveStringRedisTemplate redisTemplate, IdempotencyProperties properties) {
+        this(redisTemplate, properties, RedisIdempotencyCacheService.fingerprinter(properties.getFingerprint()));
+    }
+
+    public ReactiveRedisIdempotencyCacheService(ReactiveStringRedisTemplate redisTemplate, IdempotencyProperties properties,
+                                                RecordKeyFingerprinter fingerprinter) {
+        this(redisTemplate, properties, fingerprinter, Metrics.globalRegistry);
+    }
+
+    public ReactiveRedisIdempotencyCacheService(ReactiveStringRedisTemplate redisTemplate, IdempotencyProperties properties,
+                                                RecordKeyFingerprinter fingerprinter, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.fingerprinter = fingerprinter;
+        this.ttlPolicy = new RedisTtlPolicy(properties, meterRegistry);
+        this.layout = new RedisSetKeyLayout(properties);
+    }
+
+    @Override
+    public Mono<Boolean> isProcessed(String contextId, String recordKey) {
+        return Mono.defer(() -> {
+            requireContextId(contextId);
+            requireRecordKey(recordKey);
+            byte[] member = member(recordKey);
+            ByteBuffer key = rawKey(layout.key(contextId, member));
+            return redisTemplate.execute(connection -> connection.setCommands().sIsMember(key, ByteBuffer.wrap(member)))
+                    .next()
+                    .map(Boolean.TRUE::equals)
+                    .defaultIfEmpty(false)
+                    .doOnNext(result -> log.debug("Check if contextId='{}' recordKey='{}' is processed: {}", contextId, recordKey, result));
+        });
+    }
+
+    /**
+     * Resolves the whole batch with one SMISMEMBER call (one per bucket when sharded) and emits the keys not yet seen.
+     */
+    @Override
+    public Mono<Set<String>> filterUnprocessed(String contextId, Collection<String> recordKeys) {
+        return Mono.defer(() -> {
+            requireContextId(contextId);
+            requireRecordKeys(recordKeys);
+            Set<String> distinctKeys = new LinkedHashSet<>(recordKeys);
+            List<RedisSetKeyLayout.Batch> batches = layout.batches(contextId, members(distinctKeys), 0);
+            return Flux.fromIterable(batches)
+                    .flatMapSequential(batch -> redisTemplate.execute(connection ->
+                                    connection.setCommands().sMIsMember(rawKey(batch.key()), buffers(batch.members())))
+                            .next()
+                            .defaultIfEmpty(List.of()))
+                    .collectList()
+                    .map(replies -> select(distinctKeys, RedisSetKeyLayout.flags(batches, replies, Boolean.TRUE, distinctKeys.size()), false))
+                    .doOnNext(unprocessed -> log.debug("Filtered contextId='{}' recordKeysCount={} unprocessedCount={}",
+                            contextId, distinctKeys.size(), unprocessed.size()));
+        });
+    }
+
+    @Override
+    public Mono<Void> markProcessed(String contextId, String recordKey) {
+        return Mono.defer(() -> {
+            requireContextId(contextId);
+            requireRecordKey(recordKey);
+            return add(contextId, new byte[][]{member(recordKey)})
+                    .doOnSuccess(ignored -> log.info("Marked contextId='{}' recordKey='{}' as processed (TTL={})",
+                            contextId, recordKey, properties.getTtl()));
+        });
+    }
+
+    /**
+     * Claims the record key with a single scripted SADD (and TTL refresh).
+     */
+    @Override
+    public Mono<Boolean> tryMarkProcessed(String contextId, String recordKey) {
+        return Mono.defer(() -> {
+            requireContextId(contextId);
+            requireRecordKey(recordKey);
+            byte[] member = member(recordKey);
+            return eval(RedisSetScripts.TRY_MARK_PROCESSED_SCRIPT, layout.key(contextId, member), new byte[][]{member})
+                    .next()
+                    .map(added -> Objects.equals(added, 1L))
+                    .defaultIfEmpty(false)
+                    .doOnNext(claimed -> log.debug("Try mark contextId='{}' recordKey='{}' claimed: {}", contextId, recordKey, claimed));
+        });
+    }
+
+    /**
+     * Claims the whole batch with one scripted call (one per bucket when sharded) that tests and adds every key and
+     * refreshes the TTL.
+     */
+    @Override
+    public Mono<Set<String>> tryMarkProcessed(String contextId, Collection<String> recordKeys) {
+        return Mono.defer(() -> {
+            requireContextId(contextId);
+            requireRecordKeys(recordKeys);
+            Set<String> distinctKeys = new LinkedHashSet<>(recordKeys);
+            List<RedisSetKeyLayout.Batch> batches = layout.batches(contextId, members(distinctKeys), 0);
+            return Flux.fromIterable(batches)
+                    .flatMapSequential(batch -> addScripted(batch.key(), batch.members()))
+                    .collectList()
+                    .map(replies -> select(distinctKeys, RedisSetKeyLayout.flags(batches, replies, 1L, distinctKeys.size()), true))
+                    .doOnNext(claimed -> log.debug("Try mark contextId='{}' recordKeysCount={} claimedCount={}",
+                            contextId, distinctKeys.size(), claimed.size()));
+        });
+    }
+
+    @Override
+    public Mono<Void> markProcessed(String contextId, Set<String> recordKeys) {
+        return Mono.defer(() -> {
+            requireContextId(contextId);
+            requireRecordKeys(recordKeys);
+            return add(contextId, members(recordKeys))
+                    .doOnSuccess(ignored -> log.info("Marked contextId='{}' recordKeysCount={} as processed (TTL={})",
+                            contextId, recordKeys.size(), properties.getTtl()));
+        });
+    }
+
+    @Override
+    public Mono<Void> clearCacheForContext(String contextId) {
+        return Mono.defer(() -> {
+            requireContextId(contextId);
+            List<String> keys = layout.keys(contextId);
+            String[] keyArray = keys.toArray(new String[0]);
+            Mono<Long> clear = switch (properties.getClearStrategy()) {
+                case DELETE -> redisTemplate.delete(keyArray);
+                case UNLINK -> redisTemplate.unlink(keyArray);
+                case INCREMENTAL -> Flux.fromIterable(keys)
+                        .concatMap(this::removeIncrementally)
+                        .then(redisTemplate.unlink(keyArray));
+            };
+            return clear
+                    .doOnSuccess(ignored -> {
+                        keys.forEach(ttlPolicy::forget);
+                        log.info("Cleared cache for contextId='{}' ({})", contextId, properties.getClearStrategy());
+                    })
+                    .then();
+        });
+    }
+
+    /**
+     * Empties the set with SSCAN and one SREM per clear-batch-size members, one batch in flight at a time.
+     */
+    private Mono<Long> removeIncrementally(String redisKey) {
+        ByteBuffer key = rawKey(redisKey);
+        int batchSize = Math.max(1, properties.getClearBatchSize());
+        ScanOptions options = ScanOptions.scanOptions().count(batchSize).build();
+        return redisTemplate.execute(connection -> connection.setCommands().sScan(key.duplicate(), options)
+                        .buffer(batchSize)
+                        .concatMap(batch -> connection.setCommands().sRem(key.duplicate(), batch)))
+                .reduce(0L, Long::sum);
+    }
+
+    /**
+     * Adds members for markProcessed, per bucket when sharded: SADD then a separate PEXPIRE for EVERY_WRITE,
+     * one script otherwise.
+     */
+    private Mono<Void> add(String contextId, byte[][] members) {
+        return Flux.fromIterable(layout.batches(contextId, members, 0))
+                .flatMap(batch -> ttlPolicy.usesSeparateExpire() ? addWithExpire(batch) : addScripted(batch.key(), batch.members()).then())
+                .then();
+    }
+
+    private Mono<Void> addWithExpire(RedisSetKeyLayout.Batch batch) {
+        ByteBuffer key = rawKey(batch.key());
+        return redisTemplate.execute(connection -> connection.setCommands().sAdd(key, buffers(batch.members()))
+                        .then(connection.keyCommands().pExpire(key.duplicate(), properties.getTtl())))
+                .doOnNext(ignored -> ttlPolicy.recordSeparateExpire())
+                .then();
+    }
+
+    /**
+     * Runs the bulk claim script and collects its 0/1 flags, whether the driver emits them one by one or as a list.
+     */
+    @SuppressWarnings("unchecked")
+    private Mono<List<?>> addScripted(String redisKey, byte[][] members) {
+        RedisScript<Object> script = (RedisScript<Object>) (RedisScript<?>) RedisSetScripts.TRY_MARK_PROCESSED_BULK_SCRIPT;
+        return eval(script, redisKey, members)
+                .collectList()
+                .map(reply -> reply.size() == 1 && reply.get(0) instanceof List<?> flags ? flags : reply);
+    }
+
+    private <T> Flux<T> eval(RedisScript<T> script, String redisKey, byte[][] members) {
+        byte[][] ttlArgs = ttlPolicy.args(redisKey);
+        List<byte[]> args = new ArrayList<>(members.length + 2);
+        args.add(ttlArgs[0]);
+        args.add(ttlArgs[1]);
+        args.addAll(Arrays.asList(members));
+        return redisTemplate.execute(script, List.of(redisKey), args, ARGS_WRITER, passThrough());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> RedisElementReader<T> passThrough() {
+        return buffer -> (T) bytes(buffer);
+    }
+
+    private static ByteBuffer rawKey(String redisKey) {
+        return ByteBuffer.wrap(redisKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private byte[] member(String recordKey) {
+        return fingerprinter.fingerprint(recordKey);
+    }
+
+    private byte[][] members(Collection<String> recordKeys) {
+        byte[][] members = new byte[recordKeys.size()][];
+        int index = 0;
+        for (String key : recordKeys) {
+            members[index++] = member(key);
+        }
+        return members;
+    }
+
+    private static List<ByteBuffer> buffers(byte[][] members) {
+        List<ByteBuffer> buffers = new ArrayList<>(members.length);
+        for (byte[] member : members) {
+            buffers.add(ByteBuffer.wrap(member));
+        }
+        return buffers;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Keys whose flag equals the wanted value.
+     */
+    private static Set<String> select(Set<String> keys, boolean[] flags, boolean wanted) {
+        Set<String> selected = new LinkedHashSet<>();
+        int index = 0;
+        for (String key : keys) {
+            if (flags[index++] == wanted) {
+                selected.add(key);
+            }
+        }
+        return selected;
+    }
+
+    private void requireContextId(String contextId) {
+        if (!StringUtils.hasText(contextId)) {
+            log.warn("contextId required but was '{}'", contextId);
+            throw new IllegalArgumentException("contextId required");
+        }
+    }
+
+    private void requireRecordKey(String recordKey) {
+        if (!StringUtils.hasText(recordKey)) {
+            log.warn("record key required but was '{}'", recordKey);
+            throw new IllegalArgumentException("recordKey required");
+        }
+    }
+
+    private void requireRecordKeys(Collection<String> recordKeys) {
+        if (Objects.isNull(recordKeys) || recordKeys.isEmpty()) {
+            log.warn("record key set required but was '{}'", recordKeys);
+            throw new IllegalArgumentException("recordKeys required and must not be empty");
+        }
+        for (String key : recordKeys) {
+            requireRecordKey(key);
+        }
+    }
+}
@@ -1,14 +1,37 @@
 package com.ms.idempotentcache.cache;
 
+import com.ms.idempotentcache.config.ClearStrategy;
 import com.ms.idempotentcache.config.IdempotencyProperties;
+import com.ms.idempotentcache.config.TtlStrategy;
+import com.ms.idempotentcache.fingerprint.HashingRecordKeyFingerprinter;
+import com.ms.idempotentcache.fingerprint.Murmur3;
+import com.ms.idempotentcache.fingerprint.RecordKeyFingerprinter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.util.StringUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Redis-backed implementation of the IdempotencyCacheService interface.
@@ -20,7 +43,30 @@ import java.util.Set;
  *   Key: idempotent-cache:context-1   (Set of processed recordKeys for context-1)
  *   Key: idempotent-cache:context-2   (Set of processed recordKeys for context-2)
  *
- * Supports TTL (expiration) and bulk operations.
+ * Supports TTL (expiration) and bulk operations. Bulk membership checks use SMISMEMBER (Redis 6.2+),
+ * so a whole batch of record keys is resolved in a single round trip.
+ * <p>
+ * With idempotency.key.sharding.buckets=N each context is split into N hash-tagged sets (see
+ * {@link RedisSetKeyLayout}) so that no single key grows with the whole context and, on Redis Cluster, the buckets
+ * spread over the shards. Bulk calls then send one command per bucket in a single pipeline; the cluster connection
+ * routes each command to the node owning its slot.
+ * <p>
+ * Set members are the bytes produced by a {@link RecordKeyFingerprinter}: the UTF-8 record key by default, or a
+ * fixed 64/128-bit digest when idempotency.key.fingerprint.enabled=true.
+ * <p>
+ * The context TTL is maintained according to the configured {@link TtlStrategy}; TTL refreshes are counted in
+ * idempotency.cache.ttl.refresh, tagged with the strategy and whether they cost a separate EXPIRE round trip.
+ * <p>
+ * Contexts are deleted according to the configured {@link ClearStrategy}: DEL, UNLINK, or SSCAN + SREM in batches
+ * so that clearing a multi-million-member set never stalls the server.
+ * <p>
+ * warmContext streams a context with SSCAN (idempotency.key.warm.scan-count members per call) into a local
+ * {@link OffHeapLongHashSet} of 64-bit Murmur3 hashes of the members, and keeps it up to date with the keys this node
+ * marks or claims afterwards. Checks and claims of keys found there are answered locally; every other key still goes
+ * to Redis, so keys marked by other nodes are never missed. The local copy is dropped by clearCacheForContext and,
+ * beyond idempotency.key.warm.max-contexts, the context warmed first is dropped; a dropped or re-warmed copy frees
+ * its off-heap memory at once. It does not see clears made by other nodes nor the expiry of the context, and two
+ * keys with the same 64-bit hash are taken for one.
  */
 
 public class RedisIdempotencyCacheService implements IdempotencyCacheService {
@@ -28,13 +74,29 @@ public class RedisIdempotencyCacheService implements IdempotencyCacheService {
     private static final Logger log = LoggerFactory.getLogger(RedisIdempotencyCacheService.class);
 
     private final StringRedisTemplate redisTemplate;
-    private final SetOperations<String, String> setOps;
     private final IdempotencyProperties properties;
+    private final RecordKeyFingerprinter fingerprinter;
+    private final RedisTtlPolicy ttlPolicy;
+    private final RedisSetKeyLayout layout;
+    private final Map<String, OffHeapLongHashSet> warmContexts = new ConcurrentHashMap<>();
+    private final Deque<String> warmOrder = new ArrayDeque<>();
 
     public RedisIdempotencyCacheService(StringRedisTemplate redisTemplate, IdempotencyProperties properties) {
+        this(redisTemplate, properties, fingerprinter(properties.getFingerprint()));
+    }
+
+    public RedisIdempotencyCacheService(StringRedisTemplate redisTemplate, IdempotencyProperties properties,
+                                        RecordKeyFingerprinter fingerprinter) {
+        this(redisTemplate, properties, fingerprinter, Metrics.globalRegistry);
+    }
+
+    public RedisIdempotencyCacheService(StringRedisTemplate redisTemplate, IdempotencyProperties properties,
+                                        RecordKeyFingerprinter fingerprinter, MeterRegistry meterRegistry) {
         this.redisTemplate = redisTemplate;
-        this.setOps = redisTemplate.opsForSet();
         this.properties = properties;
+        this.fingerprinter = fingerprinter;
+        this.ttlPolicy = new RedisTtlPolicy(properties, meterRegistry);
+        this.layout = new RedisSetKeyLayout(properties);
     }
 
     /**
@@ -44,11 +106,62 @@ public class RedisIdempotencyCacheService implements IdempotencyCacheService {
     public boolean isProcessed(String contextId, String recordKey) {
         requireContextId(contextId);
         requireRecordKey(recordKey);
-        boolean result = Boolean.TRUE.equals(setOps.isMember(redisKey(contextId), recordKey));
+        byte[] member = member(recordKey);
+        boolean result = isWarmMember(contextId, member) || isMember(contextId, member);
         log.debug("Check if contextId='{}' recordKey='{}' is processed: {}", contextId, recordKey, result);
         return result;
     }
 
+    /**
+     * Checks the UTF-8 record key bytes as they are; no String is decoded or re-encoded.
+     */
+    @Override
+    public boolean isProcessed(String contextId, byte[] recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        byte[] member = fingerprinter.fingerprint(recordKey);
+        boolean result = isWarmMember(contextId, member) || isMember(contextId, member);
+        log.debug("Check if contextId='{}' recordKeyBytes={} is processed: {}", contextId, recordKey.length, result);
+        return result;
+    }
+
+    /**
+     * Resolves the whole batch with one SMISMEMBER call (one per bucket when sharded) and returns the keys not yet seen.
+     */
+    @Override
+    public Set<String> filterUnprocessed(String contextId, Collection<String> recordKeys) {
+        requireContextId(contextId);
+        requireRecordKeys(recordKeys);
+        Set<String> distinctKeys = new LinkedHashSet<>(recordKeys);
+        Set<String> remoteKeys = withoutWarmMembers(contextId, distinctKeys);
+        Set<String> unprocessed = remoteKeys.isEmpty() ? remoteKeys : select(remoteKeys, 0,
+                membership(layout.batches(contextId, members(remoteKeys), 0), remoteKeys.size()), false);
+        log.debug("Filtered contextId='{}' recordKeysCount={} unprocessedCount={}", contextId, distinctKeys.size(), unprocessed.size());
+        return unprocessed;
+    }
+
+    /**
+     * Pipelines one SMISMEMBER per context (per bucket when sharded) so that all contexts are resolved in a single
+     * round trip.
+     */
+    @Override
+    public Map<String, Set<String>> filterUnprocessed(Map<String, ? extends Collection<String>> recordKeysByContext) {
+        Map<String, Set<String>> distinctKeysByContext = distinctKeysByContext(recordKeysByContext);
+        Map<String, Set<String>> remoteKeysByContext = withoutWarmMembers(distinctKeysByContext);
+        boolean[] membership = remoteKeysByContext.isEmpty() ? new boolean[0]
+                : membership(batches(remoteKeysByContext), keyCount(remoteKeysByContext));
+
+        Map<String, Set<String>> result = new LinkedHashMap<>();
+        int offset = 0;
+        for (String contextId : distinctKeysByContext.keySet()) {
+            Set<String> remoteKeys = remoteKeysByContext.getOrDefault(contextId, Set.of());
+            result.put(contextId, select(remoteKeys, offset, membership, false));
+            offset += remoteKeys.size();
+        }
+        log.debug("Filtered contextsCount={} in a single pipeline", result.size());
+        return result;
+    }
+
     /**
      * Marks the record key as processed for the given context.
      */
@@ -56,11 +169,85 @@ public class RedisIdempotencyCacheService implements IdempotencyCacheService {
     public void markProcessed(String contextId, String recordKey) {
         requireContextId(contextId);
         requireRecordKey(recordKey);
-        setOps.add(redisKey(contextId), recordKey);
-        redisTemplate.expire(redisKey(contextId), properties.getTtl());
+        byte[] member = member(recordKey);
+        add(contextId, new byte[][]{member});
+        addWarmMember(contextId, member);
         log.info("Marked contextId='{}' recordKey='{}' as processed (TTL={})", contextId, recordKey, properties.getTtl());
     }
 
+    /**
+     * Claims the record key with a single scripted SADD (and TTL refresh); the SADD reply tells whether
+     * this call added the key, so concurrent workers can never both claim the same record.
+     */
+    @Override
+    public boolean tryMarkProcessed(String contextId, String recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        byte[] member = member(recordKey);
+        boolean claimed = !isWarmMember(contextId, member) && claim(contextId, member);
+        if (claimed) {
+            addWarmMember(contextId, member);
+        }
+        log.debug("Try mark contextId='{}' recordKey='{}' claimed: {}", contextId, recordKey, claimed);
+        return claimed;
+    }
+
+    /**
+     * Claims the UTF-8 record key bytes as they are; no String is decoded or re-encoded.
+     */
+    @Override
+    public boolean tryMarkProcessed(String contextId, byte[] recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        byte[] member = fingerprinter.fingerprint(recordKey);
+        boolean claimed = !isWarmMember(contextId, member) && claim(contextId, member);
+        if (claimed) {
+            addWarmMember(contextId, member);
+        }
+        log.debug("Try mark contextId='{}' recordKeyBytes={} claimed: {}", contextId, recordKey.length, claimed);
+        return claimed;
+    }
+
+    /**
+     * Claims the whole batch with one scripted call that tests and adds every key and refreshes the TTL.
+     */
+    @Override
+    public Set<String> tryMarkProcessed(String contextId, Collection<String> recordKeys) {
+        requireContextId(contextId);
+        requireRecordKeys(recordKeys);
+        Set<String> distinctKeys = new LinkedHashSet<>(recordKeys);
+        Set<String> remoteKeys = withoutWarmMembers(contextId, distinctKeys);
+        Set<String> claimed = remoteKeys.isEmpty() ? remoteKeys : select(remoteKeys, 0,
+                claims(layout.batches(contextId, members(remoteKeys), 0), remoteKeys.size()), true);
+        addWarmMembers(contextId, claimed);
+        log.debug("Try mark contextId='{}' recordKeysCount={} claimedCount={}", contextId, distinctKeys.size(), claimed.size());
+        return claimed;
+    }
+
+    /**
+     * Pipelines one bulk claim script per context (per bucket when sharded) so that all contexts are claimed in a
+     * single round trip.
+     */
+    @Override
+    public Map<String, Set<String>> tryMarkProcessed(Map<String, ? extends Collection<String>> recordKeysByContext) {
+        Map<String, Set<String>> distinctKeysByContext = distinctKeysByContext(recordKeysByContext);
+        Map<String, Set<String>> remoteKeysByContext = withoutWarmMembers(distinctKeysByContext);
+        boolean[] added = remoteKeysByContext.isEmpty() ? new boolean[0]
+                : claims(batches(remoteKeysByContext), keyCount(remoteKeysByContext));
+
+        Map<String, Set<String>> result = new LinkedHashMap<>();
+        int offset = 0;
+        for (String contextId : distinctKeysByContext.keySet()) {
+            Set<String> remoteKeys = remoteKeysByContext.getOrDefault(contextId, Set.of());
+            Set<String> claimed = select(remoteKeys, offset, added, true);
+            addWarmMembers(contextId, claimed);
+            result.put(contextId, claimed);
+            offset += remoteKeys.size();
+        }
+        log.debug("Try mark contextsCount={} in a single pipeline", result.size());
+        return result;
+    }
+
     /**
      * Marks multiple records as processed (bulk insert) for the given context.
      */
@@ -68,23 +255,438 @@ public class RedisIdempotencyCacheService implements IdempotencyCacheService {
     public void markProcessed(String contextId, Set<String> recordKeys) {
         requireContextId(contextId);
         requireRecordKeys(recordKeys);
-        setOps.add(redisKey(contextId), recordKeys.toArray(new String[0]));
-        redisTemplate.expire(redisKey(contextId), properties.getTtl());
+        add(contextId, members(recordKeys));
+        addWarmMembers(contextId, recordKeys);
         log.info("Marked contextId='{}' recordKeysCount={} as processed (TTL={})", contextId, recordKeys.size(), properties.getTtl());
     }
 
     /**
-     * Removes all cached record keys for the context (called after successful processing).
+     * Removes all cached record keys for the context (called after successful processing), every bucket when sharded,
+     * with the configured {@link ClearStrategy}.
      */
     @Override
     public void clearCacheForContext(String contextId) {
         requireContextId(contextId);
-        redisTemplate.delete(redisKey(contextId));
-        log.info("Cleared cache for contextId='{}'", contextId);
+        List<String> keys = layout.keys(contextId);
+        switch (properties.getClearStrategy()) {
+            case DELETE -> redisTemplate.delete(keys);
+            case UNLINK -> redisTemplate.unlink(keys);
+            case INCREMENTAL -> {
+                keys.forEach(this::removeIncrementally);
+                redisTemplate.unlink(keys);
+            }
+        }
+        keys.forEach(ttlPolicy::forget);
+        dropWarmContext(contextId);
+        log.info("Cleared cache for contextId='{}' ({})", contextId, properties.getClearStrategy());
+    }
+
+    /**
+     * Streams every bucket of the context with SSCAN into a local hash set, sized from SCARD. An empty context is
+     * not kept: there is nothing to answer locally.
+     */
+    @Override
+    public void warmContext(String contextId) {
+        requireContextId(contextId);
+        List<String> keys = layout.keys(contextId);
+        long size = 0;
+        for (String key : keys) {
+            Long card = redisTemplate.opsForSet().size(key);
+            size += card == null ? 0 : card;
+        }
+        if (size == 0) {
+            dropWarmContext(contextId);
+            log.debug("Nothing to warm for contextId='{}'", contextId);
+            return;
+        }
+        OffHeapLongHashSet warmed = new OffHeapLongHashSet((int) Math.min(size, OffHeapLongHashSet.MAX_CAPACITY / 2));
+        ScanOptions options = ScanOptions.scanOptions().count(Math.max(1, properties.getWarm().getScanCount())).build();
+        try {
+            for (String key : keys) {
+                redisTemplate.execute((RedisCallback<Object>) connection -> {
+                    try (Cursor<byte[]> cursor = connection.setCommands().sScan(raw(key), options)) {
+                        while (cursor.hasNext()) {
+                            warmed.add(Murmur3.hash64(cursor.next()));
+                        }
+                    }
+                    return null;
+                });
+            }
+        } catch (RuntimeException e) {
+            warmed.free();
+            throw e;
+        }
+        synchronized (warmOrder) {
+            OffHeapLongHashSet replaced = warmContexts.put(contextId, warmed);
+            if (replaced == null) {
+                warmOrder.addLast(contextId);
+            } else {
+                free(replaced);
+            }
+            while (warmOrder.size() > Math.max(1, properties.getWarm().getMaxContexts())) {
+                free(warmContexts.remove(warmOrder.removeFirst()));
+            }
+        }
+        log.info("Warmed contextId='{}' membersCount={} ({} bytes off-heap)", contextId, warmed.size(), warmed.memoryBytes());
+    }
+
+    private boolean isMember(String contextId, byte[] member) {
+        byte[] key = raw(layout.key(contextId, member));
+        return Boolean.TRUE.equals(redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.setCommands().sIsMember(key, member)));
+    }
+
+    private boolean claim(String contextId, byte[] member) {
+        String key = layout.key(contextId, member);
+        byte[][] ttlArgs = ttlPolicy.args(key);
+        Long added = redisTemplate.execute(RedisSetScripts.TRY_MARK_PROCESSED_SCRIPT, RedisSerializer.byteArray(), null,
+                List.of(key), ttlArgs[0], ttlArgs[1], member);
+        return Objects.equals(added, 1L);
+    }
+
+    /**
+     * Deletes the keys of every context with one pipeline of DEL / UNLINK commands, one per key so that the keys may
+     * live in different cluster slots. INCREMENTAL clears context by context, each being a scan.
+     */
+    @Override
+    public void clearCacheForContext(Collection<String> contextIds) {
+        requireContextIds(contextIds);
+        if (properties.getClearStrategy() == ClearStrategy.INCREMENTAL) {
+            for (String contextId : new LinkedHashSet<>(contextIds)) {
+                clearCacheForContext(contextId);
+            }
+            return;
+        }
+        List<String> keys = new ArrayList<>();
+        for (String contextId : new LinkedHashSet<>(contextIds)) {
+            keys.addAll(layout.keys(contextId));
+        }
+        boolean unlink = properties.getClearStrategy() == ClearStrategy.UNLINK;
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                if (unlink) {
+                    connection.keyCommands().unlink(raw(key));
+                } else {
+                    connection.keyCommands().del(raw(key));
+                }
+            }
+            return null;
+        });
+        keys.forEach(ttlPolicy::forget);
+        contextIds.forEach(this::dropWarmContext);
+        log.info("Cleared cache for contextsCount={} in a single pipeline ({})", contextIds.size(), properties.getClearStrategy());
+    }
+
+    /**
+     * Empties the set with SSCAN and one SREM per clear-batch-size members, so no single command frees more than a
+     * batch; members added concurrently may survive and are dropped by the UNLINK that follows.
+     */
+    private void removeIncrementally(String redisKey) {
+        byte[] key = raw(redisKey);
+        int batchSize = Math.max(1, properties.getClearBatchSize());
+        ScanOptions options = ScanOptions.scanOptions().count(batchSize).build();
+        Long removed = redisTemplate.execute((RedisCallback<Long>) connection -> {
+            long count = 0;
+            List<byte[]> batch = new ArrayList<>(batchSize);
+            try (Cursor<byte[]> cursor = connection.setCommands().sScan(key, options)) {
+                while (cursor.hasNext()) {
+                    batch.add(cursor.next());
+                    if (batch.size() == batchSize) {
+                        count += sRem(connection, key, batch);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                count += sRem(connection, key, batch);
+            }
+            return count;
+        });
+        log.debug("Removed redisKey='{}' membersCount={} incrementally", redisKey, removed);
+    }
+
+    private boolean isWarmMember(String contextId, byte[] member) {
+        OffHeapLongHashSet warmed = warmContexts.get(contextId);
+        if (warmed == null) {
+            return false;
+        }
+        long hash = Murmur3.hash64(member);
+        synchronized (warmed) {
+            return !warmed.isFreed() && warmed.contains(hash);
+        }
+    }
+
+    private void addWarmMember(String contextId, byte[] member) {
+        OffHeapLongHashSet warmed = warmContexts.get(contextId);
+        if (warmed != null) {
+            long hash = Murmur3.hash64(member);
+            synchronized (warmed) {
+                if (!warmed.isFreed()) {
+                    warmed.add(hash);
+                }
+            }
+        }
+    }
+
+    private void addWarmMembers(String contextId, Collection<String> recordKeys) {
+        OffHeapLongHashSet warmed = warmContexts.get(contextId);
+        if (warmed != null && !recordKeys.isEmpty()) {
+            byte[][] members = members(recordKeys);
+            synchronized (warmed) {
+                if (!warmed.isFreed()) {
+                    for (byte[] member : members) {
+                        warmed.add(Murmur3.hash64(member));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The keys not found in the warmed copy of the context, i.e. those left for Redis; the keys themselves when the
+     * context is not warm.
+     */
+    private Set<String> withoutWarmMembers(String contextId, Set<String> distinctKeys) {
+        OffHeapLongHashSet warmed = warmContexts.get(contextId);
+        if (warmed == null) {
+            return distinctKeys;
+        }
+        byte[][] members = members(distinctKeys);
+        Set<String> remoteKeys = new LinkedHashSet<>();
+        int index = 0;
+        synchronized (warmed) {
+            if (warmed.isFreed()) {
+                return distinctKeys;
+            }
+            for (String key : distinctKeys) {
+                if (!warmed.contains(Murmur3.hash64(members[index++]))) {
+                    remoteKeys.add(key);
+                }
+            }
+        }
+        return remoteKeys;
+    }
+
+    /**
+     * Per-context keys left for Redis; contexts answered entirely from their warmed copy are left out.
+     */
+    private Map<String, Set<String>> withoutWarmMembers(Map<String, Set<String>> distinctKeysByContext) {
+        if (warmContexts.isEmpty()) {
+            return distinctKeysByContext;
+        }
+        Map<String, Set<String>> remoteKeysByContext = new LinkedHashMap<>();
+        distinctKeysByContext.forEach((contextId, distinctKeys) -> {
+            Set<String> remoteKeys = withoutWarmMembers(contextId, distinctKeys);
+            if (!remoteKeys.isEmpty()) {
+                remoteKeysByContext.put(contextId, remoteKeys);
+            }
+        });
+        return remoteKeysByContext;
+    }
+
+    private void dropWarmContext(String contextId) {
+        synchronized (warmOrder) {
+            OffHeapLongHashSet dropped = warmContexts.remove(contextId);
+            if (dropped != null) {
+                warmOrder.remove(contextId);
+                free(dropped);
+            }
+        }
+    }
+
+    /**
+     * Releases the direct memory of a warmed set that was replaced, evicted or dropped; a lookup still holding it
+     * treats it as a miss.
+     */
+    private static void free(OffHeapLongHashSet warmed) {
+        synchronized (warmed) {
+            warmed.free();
+        }
+    }
+
+    private static long sRem(RedisConnection connection, byte[] key, List<byte[]> batch) {
+        Long removed = connection.setCommands().sRem(key, batch.toArray(new byte[0][]));
+        batch.clear();
+        return removed == null ? 0 : removed;
+    }
+
+    /**
+     * SMISMEMBER flags of every member of the batches, by index: one command for a single batch, one pipeline otherwise.
+     */
+    private boolean[] membership(List<RedisSetKeyLayout.Batch> batches, int size) {
+        if (batches.size() == 1) {
+            RedisSetKeyLayout.Batch batch = batches.get(0);
+            List<Boolean> flags = redisTemplate.execute((RedisCallback<List<Boolean>>) connection ->
+                    connection.setCommands().sMIsMember(raw(batch.key()), batch.members()));
+            return RedisSetKeyLayout.flags(batches, Collections.singletonList(flags), Boolean.TRUE, size);
+        }
+        List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (RedisSetKeyLayout.Batch batch : batches) {
+                connection.setCommands().sMIsMember(raw(batch.key()), batch.members());
+            }
+            return null;
+        }, RedisSerializer.byteArray());
+        return RedisSetKeyLayout.flags(batches, replies, Boolean.TRUE, size);
+    }
+
+    /**
+     * Claims every member of the batches with the bulk script and returns the SADD flags by index: one scripted call
+     * for a single batch, one pipeline otherwise.
+     */
+    private boolean[] claims(List<RedisSetKeyLayout.Batch> batches, int size) {
+        if (batches.size() == 1) {
+            RedisSetKeyLayout.Batch batch = batches.get(0);
+            return RedisSetKeyLayout.flags(batches, Collections.singletonList(addScripted(batch.key(), batch.members())), 1L, size);
+        }
+        byte[] script = RedisSetScripts.TRY_MARK_PROCESSED_BULK_LUA.getBytes(StandardCharsets.UTF_8);
+        List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (RedisSetKeyLayout.Batch batch : batches) {
+                connection.scriptingCommands().eval(script, ReturnType.MULTI, 1, keysAndArgs(batch));
+            }
+            return null;
+        }, RedisSerializer.byteArray());
+        return RedisSetKeyLayout.flags(batches, replies, 1L, size);
+    }
+
+    /**
+     * KEYS and ARGV of the bulk script for one batch: the key, the TTL arguments, then the members.
+     */
+    private byte[][] keysAndArgs(RedisSetKeyLayout.Batch batch) {
+        byte[][] ttlArgs = ttlPolicy.args(batch.key());
+        byte[][] keysAndArgs = new byte[batch.members().length + 3][];
+        keysAndArgs[0] = raw(batch.key());
+        keysAndArgs[1] = ttlArgs[0];
+        keysAndArgs[2] = ttlArgs[1];
+        System.arraycopy(batch.members(), 0, keysAndArgs, 3, batch.members().length);
+        return keysAndArgs;
+    }
+
+    /**
+     * Batches of every context, indexed in the iteration order of the map so they share one result array.
+     */
+    private List<RedisSetKeyLayout.Batch> batches(Map<String, Set<String>> distinctKeysByContext) {
+        List<RedisSetKeyLayout.Batch> batches = new ArrayList<>();
+        int offset = 0;
+        for (Map.Entry<String, Set<String>> entry : distinctKeysByContext.entrySet()) {
+            batches.addAll(layout.batches(entry.getKey(), members(entry.getValue()), offset));
+            offset += entry.getValue().size();
+        }
+        return batches;
+    }
+
+    private static int keyCount(Map<String, Set<String>> distinctKeysByContext) {
+        int count = 0;
+        for (Set<String> keys : distinctKeysByContext.values()) {
+            count += keys.size();
+        }
+        return count;
     }
 
-    private String redisKey(String contextId) {
-        return properties.getPrefix() + contextId;
+    private Map<String, Set<String>> distinctKeysByContext(Map<String, ? extends Collection<String>> recordKeysByContext) {
+        if (Objects.isNull(recordKeysByContext) || recordKeysByContext.isEmpty()) {
+            log.warn("record keys by context required but was '{}'", recordKeysByContext);
+            throw new IllegalArgumentException("recordKeysByContext required and must not be empty");
+        }
+        Map<String, Set<String>> distinctKeysByContext = new LinkedHashMap<>();
+        recordKeysByContext.forEach((contextId, recordKeys) -> {
+            requireContextId(contextId);
+            requireRecordKeys(recordKeys);
+            distinctKeysByContext.put(contextId, new LinkedHashSet<>(recordKeys));
+        });
+        return distinctKeysByContext;
+    }
+
+    /**
+     * Keys whose flag, starting at offset, equals the wanted value.
+     */
+    private static Set<String> select(Set<String> keys, int offset, boolean[] flags, boolean wanted) {
+        Set<String> selected = new LinkedHashSet<>();
+        int index = offset;
+        for (String key : keys) {
+            if (flags[index++] == wanted) {
+                selected.add(key);
+            }
+        }
+        return selected;
+    }
+
+    private static byte[] raw(String redisKey) {
+        return redisKey.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] member(String recordKey) {
+        return fingerprinter.fingerprint(recordKey);
+    }
+
+    private byte[][] members(Collection<String> recordKeys) {
+        byte[][] members = new byte[recordKeys.size()][];
+        int index = 0;
+        for (String key : recordKeys) {
+            members[index++] = member(key);
+        }
+        return members;
+    }
+
+    /**
+     * Adds members for markProcessed: SADD then a separate EXPIRE for EVERY_WRITE, one script otherwise.
+     * When the members span several buckets the commands of all buckets are sent in one pipeline.
+     */
+    private void add(String contextId, byte[][] members) {
+        List<RedisSetKeyLayout.Batch> batches = layout.batches(contextId, members, 0);
+        if (batches.size() > 1) {
+            addPipelined(batches);
+            return;
+        }
+        String key = batches.get(0).key();
+        if (ttlPolicy.usesSeparateExpire()) {
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.setCommands().sAdd(raw(key), members));
+            redisTemplate.expire(key, properties.getTtl());
+            ttlPolicy.recordSeparateExpire();
+        } else {
+            addScripted(key, members);
+        }
+    }
+
+    private void addPipelined(List<RedisSetKeyLayout.Batch> batches) {
+        boolean separateExpire = ttlPolicy.usesSeparateExpire();
+        byte[] script = RedisSetScripts.TRY_MARK_PROCESSED_BULK_LUA.getBytes(StandardCharsets.UTF_8);
+        long ttlMillis = properties.getTtl().toMillis();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (RedisSetKeyLayout.Batch batch : batches) {
+                if (separateExpire) {
+                    connection.setCommands().sAdd(raw(batch.key()), batch.members());
+                    connection.keyCommands().pExpire(raw(batch.key()), ttlMillis);
+                } else {
+                    connection.scriptingCommands().eval(script, ReturnType.MULTI, 1, keysAndArgs(batch));
+                }
+            }
+            return null;
+        }, RedisSerializer.byteArray());
+        if (separateExpire) {
+            batches.forEach(batch -> ttlPolicy.recordSeparateExpire());
+        }
+    }
+
+    private List<?> addScripted(String redisKey, byte[][] members) {
+        byte[][] args = new byte[members.length + 2][];
+        byte[][] ttlArgs = ttlPolicy.args(redisKey);
+        args[0] = ttlArgs[0];
+        args[1] = ttlArgs[1];
+        System.arraycopy(members, 0, args, 2, members.length);
+        return redisTemplate.execute(RedisSetScripts.TRY_MARK_PROCESSED_BULK_SCRIPT, RedisSerializer.byteArray(), null,
+                List.of(redisKey), (Object[]) args);
+    }
+
+    /**
+     * The fingerprinter configured by idempotency.key.fingerprint.*, or {@link RecordKeyFingerprinter#NONE}.
+     */
+    public static RecordKeyFingerprinter fingerprinter(IdempotencyProperties.Fingerprint fingerprint) {
+        if (!fingerprint.isEnabled()) {
+            return RecordKeyFingerprinter.NONE;
+        }
+        log.info("Fingerprinting record keys with {} ({} bits); collision probability for {} keys per context ~ {}",
+                fingerprint.getAlgorithm(), fingerprint.getBits(), fingerprint.getExpectedKeysPerContext(),
+                HashingRecordKeyFingerprinter.collisionProbability(fingerprint.getExpectedKeysPerContext(), fingerprint.getBits()));
+        return new HashingRecordKeyFingerprinter(fingerprint.getAlgorithm(), fingerprint.getBits());
     }
 
     private void requireContextId(String contextId) {
@@ -94,6 +696,16 @@ public class RedisIdempotencyCacheService implements IdempotencyCacheService {
         }
     }
 
+    private void requireContextIds(Collection<String> contextIds) {
+        if (Objects.isNull(contextIds) || contextIds.isEmpty()) {
+            log.warn("context id set required but was '{}'", contextIds);
+            throw new IllegalArgumentException("contextIds required and must not be empty");
+        }
+        for (String contextId : contextIds) {
+            requireContextId(contextId);
+        }
+    }
+
     private void requireRecordKey(String recordKey) {
         if (!StringUtils.hasText(recordKey)) {
             log.warn("record key required but was '{}'", recordKey);
@@ -101,7 +713,14 @@ public class RedisIdempotencyCacheService implements IdempotencyCacheService {
         }
     }
 
-    private void requireRecordKeys(Set<String> recordKeys) {
+    private void requireRecordKey(byte[] recordKey) {
+        if (recordKey == null || recordKey.length == 0) {
+            log.warn("record key bytes required but were empty");
+            throw new IllegalArgumentException("recordKey required");
+        }
+    }
+
+    private void requireRecordKeys(Collection<String> recordKeys) {
         if (Objects.isNull(recordKeys) || recordKeys.isEmpty()) {
             log.warn("record key set required but was '{}'", recordKeys);
             throw new IllegalArgumentException("recordKeys required and must not be empty");
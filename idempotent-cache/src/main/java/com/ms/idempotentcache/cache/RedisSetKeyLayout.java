@@ -0,0 +1,141 @@
+package com.ms.idempotentcache.cache;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import com.ms.idempotentcache.fingerprint.Murmur3;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Maps contexts and members to the Redis keys of the Redis Set store, shared by the blocking and reactive services.
+ * <p>
+ * With one bucket (default) a context is a single key, prefix + contextId. With idempotency.key.sharding.buckets=N
+ * a context is split into N sets, prefix + "{" + contextId + ":" + bucket + "}", and every member goes to the bucket
+ * picked by the Murmur3 hash of its bytes. The braces are a Redis Cluster hash tag: each bucket is hashed to its own
+ * slot, so one large context is spread over the shards, and all members of a bucket stay in one slot so that a bulk
+ * call can still send one command (one SMISMEMBER or one script) per bucket.
+ * <p>
+ * The bucket count is part of the layout: changing it while contexts are live makes their members unreachable.
+ */
+final class RedisSetKeyLayout {
+
+    /**
+     * Members of one bulk call that share a bucket key, with their positions in the call.
+     */
+    record Batch(String key, int[] indexes, byte[][] members) {
+    }
+
+    private final String prefix;
+    private final int buckets;
+
+    RedisSetKeyLayout(IdempotencyProperties properties) {
+        int buckets = properties.getSharding().getBuckets();
+        if (buckets < 1) {
+            throw new IllegalArgumentException("sharding buckets must be >= 1");
+        }
+        this.prefix = properties.getPrefix();
+        this.buckets = buckets;
+    }
+
+    boolean isSharded() {
+        return buckets > 1;
+    }
+
+    /**
+     * Key holding the member.
+     */
+    String key(String contextId, byte[] member) {
+        return isSharded() ? bucketKey(contextId, bucket(member)) : prefix + contextId;
+    }
+
+    /**
+     * Every key of the context, one per bucket.
+     */
+    List<String> keys(String contextId) {
+        if (!isSharded()) {
+            return List.of(prefix + contextId);
+        }
+        List<String> keys = new ArrayList<>(buckets);
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            keys.add(bucketKey(contextId, bucket));
+        }
+        return keys;
+    }
+
+    /**
+     * Groups the members by key, keeping their order within each batch; a single batch when not sharded.
+     * Indexes start at offset, so the batches of several contexts can share one result array.
+     */
+    List<Batch> batches(String contextId, byte[][] members, int offset) {
+        if (!isSharded()) {
+            int[] indexes = new int[members.length];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = offset + i;
+            }
+            return List.of(new Batch(prefix + contextId, indexes, members));
+        }
+        Map<Integer, List<Integer>> indexesByBucket = new LinkedHashMap<>();
+        for (int i = 0; i < members.length; i++) {
+            indexesByBucket.computeIfAbsent(bucket(members[i]), bucket -> new ArrayList<>()).add(i);
+        }
+        List<Batch> batches = new ArrayList<>(indexesByBucket.size());
+        indexesByBucket.forEach((bucket, bucketIndexes) -> {
+            int[] indexes = new int[bucketIndexes.size()];
+            byte[][] bucketMembers = new byte[indexes.length][];
+            for (int i = 0; i < indexes.length; i++) {
+                int index = bucketIndexes.get(i);
+                indexes[i] = offset + index;
+                bucketMembers[i] = members[index];
+            }
+            batches.add(new Batch(bucketKey(contextId, bucket), indexes, bucketMembers));
+        });
+        return batches;
+    }
+
+    /**
+     * Context id of a key of this layout, or null if the key does not belong to it.
+     */
+    String contextId(String redisKey) {
+        if (!redisKey.startsWith(prefix)) {
+            return null;
+        }
+        String rest = redisKey.substring(prefix.length());
+        if (!isSharded()) {
+            return rest;
+        }
+        int separator = rest.lastIndexOf(':');
+        if (!rest.startsWith("{") || !rest.endsWith("}") || separator < 1) {
+            return null;
+        }
+        return rest.substring(1, separator);
+    }
+
+    /**
+     * Maps the per-batch replies (SMISMEMBER flags or 0/1 SADD flags) back to the indexes they were issued for;
+     * a missing reply or flag counts as false (not a member, not claimed).
+     */
+    static boolean[] flags(List<Batch> batches, List<?> replies, Object expected, int size) {
+        boolean[] flags = new boolean[size];
+        for (int b = 0; b < batches.size() && b < replies.size(); b++) {
+            if (!(replies.get(b) instanceof List<?> reply)) {
+                continue;
+            }
+            int[] indexes = batches.get(b).indexes();
+            for (int i = 0; i < indexes.length && i < reply.size(); i++) {
+                flags[indexes[i]] = Objects.equals(reply.get(i), expected);
+            }
+        }
+        return flags;
+    }
+
+    private String bucketKey(String contextId, int bucket) {
+        return prefix + "{" + contextId + ":" + bucket + "}";
+    }
+
+    private int bucket(byte[] member) {
+        return (int) Math.floorMod(Murmur3.hash64(member), (long) buckets);
+    }
+}
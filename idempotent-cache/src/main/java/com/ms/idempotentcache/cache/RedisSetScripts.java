@@ -0,0 +1,50 @@
+package com.ms.idempotentcache.cache;
+
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+/**
+ * Lua scripts for the Redis Set layout, shared by the blocking and the reactive implementations.
+ * <p>
+ * Every script takes the TTL arguments produced by {@link RedisTtlPolicy} as ARGV[1..2], followed by the members.
+ */
+final class RedisSetScripts {
+
+    /**
+     * Shared script prologue: ARGV[1] = TTL millis ('0' skips the refresh), ARGV[2] = '1' to only set a TTL
+     * on a key that has none yet (ON_CREATE).
+     */
+    static final String EXPIRE_LUA =
+            "local function expire(key) "
+                    + "if ARGV[1] ~= '0' and (ARGV[2] == '0' or redis.call('PTTL', key) == -1) then "
+                    + "redis.call('PEXPIRE', key, ARGV[1]) end "
+                    + "end ";
+
+    /**
+     * SADD + TTL refresh in one atomic round trip; returns 1 if ARGV[3] was added, 0 if it was already present.
+     */
+    static final RedisScript<Long> TRY_MARK_PROCESSED_SCRIPT = new DefaultRedisScript<>(
+            EXPIRE_LUA
+                    + "local added = redis.call('SADD', KEYS[1], ARGV[3]) "
+                    + "expire(KEYS[1]) "
+                    + "return added", Long.class);
+
+    /**
+     * Bulk variant: SADD every member of ARGV[3..n], then refresh the TTL; returns one 0/1 flag per member.
+     */
+    static final String TRY_MARK_PROCESSED_BULK_LUA =
+            EXPIRE_LUA
+                    + "local added = {} "
+                    + "for i = 3, #ARGV do added[i - 2] = redis.call('SADD', KEYS[1], ARGV[i]) end "
+                    + "expire(KEYS[1]) "
+                    + "return added";
+
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> TRY_MARK_PROCESSED_BULK_SCRIPT =
+            new DefaultRedisScript<>(TRY_MARK_PROCESSED_BULK_LUA, List.class);
+
+    private RedisSetScripts() {
+    }
+}
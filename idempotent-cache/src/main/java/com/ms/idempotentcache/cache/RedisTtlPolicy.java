@@ -0,0 +1,110 @@
+package com.ms.idempotentcache.cache;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import com.ms.idempotentcache.config.TtlStrategy;
+import com.ms.idempotentcache.constant.IdempotencyConstant;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Turns the configured {@link TtlStrategy} into the TTL arguments of {@link RedisSetScripts} and counts the
+ * resulting refreshes in idempotency.cache.ttl.refresh (tagged by strategy and by inline/expire command).
+ * <p>
+ * Refreshes are tracked per Redis key, so with a sharded layout every bucket of a context keeps its own TTL.
+ */
+final class RedisTtlPolicy {
+
+    private static final byte[] FLAG_OFF = "0".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FLAG_ON = "1".getBytes(StandardCharsets.UTF_8);
+    private static final int MIN_PRUNE_SIZE = 1024;
+
+    private final IdempotencyProperties properties;
+    private final ConcurrentMap<String, Long> lastTtlRefreshNanos = new ConcurrentHashMap<>();
+    private volatile int pruneAtSize = MIN_PRUNE_SIZE;
+    private final Counter inlineTtlRefreshCounter;
+    private final Counter expireTtlRefreshCounter;
+
+    RedisTtlPolicy(IdempotencyProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        String strategy = properties.getTtlStrategy().name();
+        this.inlineTtlRefreshCounter = meterRegistry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_TTL_REFRESH,
+                IdempotencyConstant.TAG_STRATEGY, strategy, IdempotencyConstant.TAG_COMMAND, "inline");
+        this.expireTtlRefreshCounter = meterRegistry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_TTL_REFRESH,
+                IdempotencyConstant.TAG_STRATEGY, strategy, IdempotencyConstant.TAG_COMMAND, "expire");
+    }
+
+    /**
+     * True if plain markProcessed writes should use SADD followed by a separate EXPIRE.
+     */
+    boolean usesSeparateExpire() {
+        return properties.getTtlStrategy() == TtlStrategy.EVERY_WRITE;
+    }
+
+    void recordSeparateExpire() {
+        expireTtlRefreshCounter.increment();
+    }
+
+    /**
+     * TTL arguments for the scripts, {ttlMillis, onlyIfNoTtl}, according to the configured strategy.
+     * THROTTLED refreshes unconditionally once per interval; in between it only sets a TTL on a key that has none, so
+     * a key deleted and recreated by another node within the interval never stays without a TTL.
+     */
+    byte[][] args(String redisKey) {
+        byte[] ttl = String.valueOf(properties.getTtl().toMillis()).getBytes(StandardCharsets.UTF_8);
+        return switch (properties.getTtlStrategy()) {
+            case EVERY_WRITE, SCRIPTED -> {
+                inlineTtlRefreshCounter.increment();
+                yield new byte[][]{ttl, FLAG_OFF};
+            }
+            case ON_CREATE -> new byte[][]{ttl, FLAG_ON};
+            case THROTTLED -> {
+                if (isRefreshDue(redisKey)) {
+                    inlineTtlRefreshCounter.increment();
+                    yield new byte[][]{ttl, FLAG_OFF};
+                }
+                yield new byte[][]{ttl, FLAG_ON};
+            }
+        };
+    }
+
+    /**
+     * Forgets the refresh bookkeeping of a deleted key.
+     */
+    void forget(String redisKey) {
+        lastTtlRefreshNanos.remove(redisKey);
+    }
+
+    /**
+     * Claims the refresh slot for the key if the last refresh is older than the refresh interval.
+     * A key seen for the first time is always due.
+     */
+    private boolean isRefreshDue(String redisKey) {
+        long now = System.nanoTime();
+        long interval = properties.getTtlRefreshInterval().toNanos();
+        Long last = lastTtlRefreshNanos.get(redisKey);
+        if (last != null && now - last < interval) {
+            return false;
+        }
+        if (last == null) {
+            boolean claimed = lastTtlRefreshNanos.putIfAbsent(redisKey, now) == null;
+            if (claimed && lastTtlRefreshNanos.size() >= pruneAtSize) {
+                prune(now, interval);
+            }
+            return claimed;
+        }
+        return lastTtlRefreshNanos.replace(redisKey, last, now);
+    }
+
+    /**
+     * Drops the entries older than the refresh interval, which are due anyway, so keys of contexts cleared on other
+     * nodes or rotated away do not pile up. The next prune waits until the map has doubled again.
+     */
+    private void prune(long now, long interval) {
+        lastTtlRefreshNanos.values().removeIf(last -> now - last >= interval);
+        pruneAtSize = Math.max(MIN_PRUNE_SIZE, 2 * lastTtlRefreshNanos.size());
+    }
+}
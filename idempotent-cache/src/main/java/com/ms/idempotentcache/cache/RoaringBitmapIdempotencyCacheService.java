@@ -0,0 +1,504 @@
+package com.ms.idempotentcache.cache;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import com.ms.idempotentcache.config.TtlStrategy;
+import com.ms.idempotentcache.constant.IdempotencyConstant;
+import com.ms.idempotentcache.fingerprint.Murmur3;
+import com.ms.idempotentcache.record.NumericRecordKeyProvider;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * IdempotencyCacheService keeping every context as a compressed Roaring bitmap of 64-bit record keys
+ * (idempotency.key.store=roaring or redis-roaring).
+ * <p>
+ * A record key in the unsigned decimal form written by a {@link NumericRecordKeyProvider} is stored as that number, so
+ * dense id ranges take a few bits per key. Any other key is stored as its 64-bit Murmur3 fingerprint, which works but
+ * does not compress. Bulk calls are bitwise operations: the keys of the call form a bitmap, the unprocessed keys are
+ * keys ANDNOT context, and a claim ORs them into the context. The numeric overloads take the keys as longs or as a
+ * Roaring64Bitmap directly, without any String.
+ * <p>
+ * - roaring: one Roaring64Bitmap per context on the heap of this node. A context expires idempotency.key.ttl after
+ *   its last write (after its creation with the ON_CREATE strategy), as in the off-heap store.
+ * - redis-roaring: one Redis hash per context (prefix + "roaring:" + contextId), with a field per chunk of 2^16
+ *   consecutive keys holding the serialized Roaring bitmap of that chunk. A call reads only the chunks its keys fall
+ *   into (one HMGET). A claim writes the changed chunks back with a Lua compare-and-set: a chunk is replaced only
+ *   if it still holds the bytes the claim was computed from. A chunk that another writer changed in between comes
+ *   back with its current bytes, and only those chunks are recomputed and retried, so two workers never claim the
+ *   same key. A write refreshes the TTL of the hash.
+ */
+public class RoaringBitmapIdempotencyCacheService implements IdempotencyCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(RoaringBitmapIdempotencyCacheService.class);
+
+    /**
+     * Low bits of a key addressing its position inside a chunk; the high bits number the chunk.
+     */
+    static final int CHUNK_BITS = 16;
+
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private static final byte[] NO_CHUNK = new byte[0];
+
+    /**
+     * Compare-and-set of chunk fields of the hash KEYS[1]: ARGV[1] = TTL millis, then one (field, expected, new)
+     * triple per chunk, expected being '' for a chunk that does not exist yet. Each field is set to its new value if it
+     * still holds the expected one; the reply has 1 for a field that was set and its current value for the others.
+     * The TTL is refreshed when any field was set.
+     */
+    private static final byte[] COMPARE_AND_SET_LUA = (
+            "local replies = {} "
+                    + "local written = false "
+                    + "for i = 2, #ARGV, 3 do "
+                    + "  local current = redis.call('HGET', KEYS[1], ARGV[i]) or '' "
+                    + "  if current == ARGV[i + 1] then "
+                    + "    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 2]) "
+                    + "    written = true "
+                    + "    replies[#replies + 1] = 1 "
+                    + "  else "
+                    + "    replies[#replies + 1] = current "
+                    + "  end "
+                    + "end "
+                    + "if written then redis.call('PEXPIRE', KEYS[1], ARGV[1]) end "
+                    + "return replies").getBytes(StandardCharsets.UTF_8);
+
+    private final IdempotencyProperties properties;
+    private final StringRedisTemplate redisTemplate;
+    private final ConcurrentMap<String, Context> contexts = new ConcurrentHashMap<>();
+
+    public RoaringBitmapIdempotencyCacheService(IdempotencyProperties properties) {
+        this(properties, null);
+    }
+
+    /**
+     * @param redisTemplate template of the Redis holding the chunks, or null to keep every context on this node
+     */
+    public RoaringBitmapIdempotencyCacheService(IdempotencyProperties properties, StringRedisTemplate redisTemplate) {
+        this.properties = properties;
+        this.redisTemplate = redisTemplate;
+    }
+
+    public boolean isProcessed(String contextId, long recordKey) {
+        requireContextId(contextId);
+        return unprocessed(contextId, Roaring64Bitmap.bitmapOf(recordKey)).isEmpty();
+    }
+
+    public boolean tryMarkProcessed(String contextId, long recordKey) {
+        requireContextId(contextId);
+        return !claim(contextId, Roaring64Bitmap.bitmapOf(recordKey)).isEmpty();
+    }
+
+    /**
+     * The keys of the bitmap not processed yet for the context; the given bitmap is left unchanged.
+     */
+    public Roaring64Bitmap filterUnprocessed(String contextId, Roaring64Bitmap recordKeys) {
+        requireContextId(contextId);
+        requireRecordKeys(recordKeys);
+        return unprocessed(contextId, recordKeys);
+    }
+
+    /**
+     * Claims the keys of the bitmap and returns those newly claimed; the given bitmap is left unchanged.
+     */
+    public Roaring64Bitmap tryMarkProcessed(String contextId, Roaring64Bitmap recordKeys) {
+        requireContextId(contextId);
+        requireRecordKeys(recordKeys);
+        return claim(contextId, recordKeys);
+    }
+
+    @Override
+    public boolean isProcessed(String contextId, String recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        boolean result = unprocessed(contextId, Roaring64Bitmap.bitmapOf(numericKey(recordKey))).isEmpty();
+        log.debug("Check if contextId='{}' recordKey='{}' is processed: {}", contextId, recordKey, result);
+        return result;
+    }
+
+    @Override
+    public Set<String> filterUnprocessed(String contextId, Collection<String> recordKeys) {
+        requireContextId(contextId);
+        requireRecordKeys(recordKeys);
+        Map<String, Long> numericKeys = numericKeys(recordKeys);
+        Set<String> unprocessed = select(numericKeys, unprocessed(contextId, bitmapOf(numericKeys)));
+        log.debug("Filtered contextId='{}' recordKeysCount={} unprocessedCount={}", contextId, numericKeys.size(), unprocessed.size());
+        return unprocessed;
+    }
+
+    @Override
+    public void markProcessed(String contextId, String recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        claim(contextId, Roaring64Bitmap.bitmapOf(numericKey(recordKey)));
+        log.info("Marked contextId='{}' recordKey='{}' as processed (TTL={})", contextId, recordKey, properties.getTtl());
+    }
+
+    @Override
+    public boolean tryMarkProcessed(String contextId, String recordKey) {
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        boolean claimed = !claim(contextId, Roaring64Bitmap.bitmapOf(numericKey(recordKey))).isEmpty();
+        log.debug("Try mark contextId='{}' recordKey='{}' claimed: {}", contextId, recordKey, claimed);
+        return claimed;
+    }
+
+    @Override
+    public Set<String> tryMarkProcessed(String contextId, Collection<String> recordKeys) {
+        requireContextId(contextId);
+        requireRecordKeys(recordKeys);
+        Map<String, Long> numericKeys = numericKeys(recordKeys);
+        Set<String> claimed = select(numericKeys, claim(contextId, bitmapOf(numericKeys)));
+        log.debug("Try mark contextId='{}' recordKeysCount={} claimedCount={}", contextId, numericKeys.size(), claimed.size());
+        return claimed;
+    }
+
+    @Override
+    public void markProcessed(String contextId, Set<String> recordKeys) {
+        requireContextId(contextId);
+        requireRecordKeys(recordKeys);
+        claim(contextId, bitmapOf(numericKeys(recordKeys)));
+        log.info("Marked contextId='{}' recordKeysCount={} as processed (TTL={})", contextId, recordKeys.size(), properties.getTtl());
+    }
+
+    @Override
+    public void clearCacheForContext(String contextId) {
+        requireContextId(contextId);
+        if (redisTemplate == null) {
+            Context context = contexts.remove(contextId);
+            if (context != null) {
+                context.delete();
+            }
+        } else {
+            redisTemplate.delete(redisKey(contextId));
+        }
+        log.info("Cleared cache for contextId='{}'", contextId);
+    }
+
+    /**
+     * Serialized size in bytes of the context's bitmap on this node (roaring store), 0 if it does not exist.
+     */
+    public long sizeInBytes(String contextId) {
+        Context context = liveContext(contextId);
+        if (context == null) {
+            return 0;
+        }
+        synchronized (context) {
+            return context.deleted ? 0 : context.keys.serializedSizeInBytes();
+        }
+    }
+
+    /**
+     * The numeric form of a record key: the number itself for a canonical unsigned decimal (no sign, no leading
+     * zero), the 64-bit Murmur3 fingerprint of its UTF-8 bytes otherwise.
+     */
+    static long numericKey(String recordKey) {
+        int length = recordKey.length();
+        boolean canonical = length <= 20 && (length == 1 || recordKey.charAt(0) != '0');
+        for (int i = 0; canonical && i < length; i++) {
+            char c = recordKey.charAt(i);
+            canonical = c >= '0' && c <= '9';
+        }
+        if (canonical) {
+            try {
+                return Long.parseUnsignedLong(recordKey);
+            } catch (NumberFormatException e) {
+                // above 2^64 - 1: fingerprinted like any other key
+            }
+        }
+        return Murmur3.hash64(recordKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Roaring64Bitmap unprocessed(String contextId, Roaring64Bitmap recordKeys) {
+        if (redisTemplate == null) {
+            Roaring64Bitmap unprocessed = recordKeys.clone();
+            Context context = liveContext(contextId);
+            if (context != null) {
+                synchronized (context) {
+                    if (!context.deleted) {
+                        unprocessed.andNot(context.keys);
+                    }
+                }
+            }
+            return unprocessed;
+        }
+        Map<Long, RoaringBitmap> chunks = chunks(recordKeys);
+        byte[] key = raw(redisKey(contextId));
+        byte[][] fields = fields(chunks);
+        List<byte[]> stored = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.hashCommands().hMGet(key, fields));
+        Roaring64Bitmap unprocessed = new Roaring64Bitmap();
+        int index = 0;
+        for (Map.Entry<Long, RoaringBitmap> chunk : chunks.entrySet()) {
+            byte[] bytes = stored == null ? null : stored.get(index++);
+            addChunk(unprocessed, chunk.getKey(), bytes == null ? chunk.getValue() : RoaringBitmap.andNot(chunk.getValue(), deserialize(bytes)));
+        }
+        return unprocessed;
+    }
+
+    /**
+     * Adds the keys to the context and returns those it did not hold yet. In Redis every chunk is written with a
+     * compare-and-set against the value this claim read; a chunk changed by another writer in between comes back with
+     * its current value and is merged and written again, so concurrent claims only retry the chunks they share.
+     */
+    private Roaring64Bitmap claim(String contextId, Roaring64Bitmap recordKeys) {
+        if (redisTemplate == null) {
+            while (true) {
+                Context context = writableContext(contextId);
+                synchronized (context) {
+                    // A context cleared or expired since the lookup is no longer in the map: start over on the live one
+                    if (!context.deleted) {
+                        Roaring64Bitmap claimed = recordKeys.clone();
+                        claimed.andNot(context.keys);
+                        context.keys.or(claimed);
+                        return claimed;
+                    }
+                }
+            }
+        }
+        Map<Long, RoaringBitmap> chunks = chunks(recordKeys);
+        byte[] key = raw(redisKey(contextId));
+        byte[] ttlMillis = Long.toString(properties.getTtl().toMillis()).getBytes(StandardCharsets.UTF_8);
+        Roaring64Bitmap claimed = new Roaring64Bitmap();
+        // Chunks still to write, with the value they are expected to hold; the first guess is that they do not exist.
+        Map<Long, byte[]> expected = new LinkedHashMap<>();
+        chunks.keySet().forEach(chunk -> expected.put(chunk, NO_CHUNK));
+        while (!expected.isEmpty()) {
+            List<Long> written = new ArrayList<>(expected.size());
+            List<RoaringBitmap> added = new ArrayList<>(expected.size());
+            List<byte[]> keysAndArgs = new ArrayList<>(2 + 3 * expected.size());
+            keysAndArgs.add(key);
+            keysAndArgs.add(ttlMillis);
+            for (Map.Entry<Long, byte[]> chunk : expected.entrySet()) {
+                RoaringBitmap current = chunk.getValue().length == 0 ? new RoaringBitmap() : deserialize(chunk.getValue());
+                RoaringBitmap addedToChunk = RoaringBitmap.andNot(chunks.get(chunk.getKey()), current);
+                if (!addedToChunk.isEmpty()) {
+                    current.or(addedToChunk);
+                    written.add(chunk.getKey());
+                    added.add(addedToChunk);
+                    keysAndArgs.add(field(chunk.getKey()));
+                    keysAndArgs.add(chunk.getValue());
+                    keysAndArgs.add(serialize(current));
+                }
+            }
+            expected.clear();
+            if (written.isEmpty()) {
+                break;
+            }
+            List<Object> replies = redisTemplate.execute((RedisCallback<List<Object>>) connection -> connection.scriptingCommands()
+                    .eval(COMPARE_AND_SET_LUA, ReturnType.MULTI, 1, keysAndArgs.toArray(new byte[0][])));
+            for (int i = 0; i < written.size(); i++) {
+                Object reply = replies == null ? null : replies.get(i);
+                if (reply instanceof byte[] current) {
+                    expected.put(written.get(i), current);
+                } else {
+                    addChunk(claimed, written.get(i), added.get(i));
+                }
+            }
+            if (!expected.isEmpty()) {
+                log.debug("Claim on contextId='{}' raced with another writer on {} chunks, retrying them", contextId, expected.size());
+            }
+        }
+        return claimed;
+    }
+
+    private Context liveContext(String contextId) {
+        Context context = contexts.get(contextId);
+        if (context != null && context.isExpired(System.nanoTime())) {
+            if (contexts.remove(contextId, context)) {
+                context.delete();
+            }
+            log.debug("Expired contextId='{}'", contextId);
+            return null;
+        }
+        return context;
+    }
+
+    /**
+     * Returns the live context, creating it if needed, and refreshes its TTL unless the strategy is ON_CREATE.
+     */
+    private Context writableContext(String contextId) {
+        long now = System.nanoTime();
+        long ttlNanos = properties.getTtl().toNanos();
+        boolean[] created = new boolean[1];
+        Context[] expired = new Context[1];
+        Context context = contexts.compute(contextId, (id, existing) -> {
+            if (existing == null || existing.isExpired(now)) {
+                created[0] = true;
+                expired[0] = existing;
+                return new Context(now + ttlNanos);
+            }
+            if (properties.getTtlStrategy() != TtlStrategy.ON_CREATE) {
+                existing.expiresAtNanos = now + ttlNanos;
+            }
+            return existing;
+        });
+        if (expired[0] != null) {
+            expired[0].delete();
+        }
+        if (created[0]) {
+            contexts.forEach((id, existing) -> {
+                if (existing.isExpired(now) && contexts.remove(id, existing)) {
+                    existing.delete();
+                }
+            });
+        }
+        return context;
+    }
+
+    /**
+     * Splits the keys by chunk, each chunk as a 32-bit bitmap of the positions inside it, in ascending chunk order.
+     */
+    private static Map<Long, RoaringBitmap> chunks(Roaring64Bitmap recordKeys) {
+        Map<Long, RoaringBitmap> chunks = new LinkedHashMap<>();
+        LongIterator keys = recordKeys.getLongIterator();
+        while (keys.hasNext()) {
+            long key = keys.next();
+            chunks.computeIfAbsent(key >>> CHUNK_BITS, chunk -> new RoaringBitmap()).add((int) (key & CHUNK_MASK));
+        }
+        return chunks;
+    }
+
+    private static void addChunk(Roaring64Bitmap target, long chunk, RoaringBitmap positions) {
+        long base = chunk << CHUNK_BITS;
+        positions.forEach((int position) -> target.addLong(base | position));
+    }
+
+    private static byte[][] fields(Map<Long, RoaringBitmap> chunks) {
+        byte[][] fields = new byte[chunks.size()][];
+        int index = 0;
+        for (Long chunk : chunks.keySet()) {
+            fields[index++] = field(chunk);
+        }
+        return fields;
+    }
+
+    private static byte[] field(long chunk) {
+        return Long.toString(chunk).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] serialize(RoaringBitmap chunk) {
+        chunk.runOptimize();
+        ByteBuffer buffer = ByteBuffer.allocate(chunk.serializedSizeInBytes());
+        chunk.serialize(buffer);
+        return buffer.array();
+    }
+
+    private static RoaringBitmap deserialize(byte[] bytes) {
+        RoaringBitmap chunk = new RoaringBitmap();
+        try {
+            chunk.deserialize(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unreadable Roaring bitmap chunk", e);
+        }
+        return chunk;
+    }
+
+    private static Map<String, Long> numericKeys(Collection<String> recordKeys) {
+        Map<String, Long> numericKeys = new LinkedHashMap<>();
+        for (String recordKey : recordKeys) {
+            numericKeys.computeIfAbsent(recordKey, RoaringBitmapIdempotencyCacheService::numericKey);
+        }
+        return numericKeys;
+    }
+
+    private static Roaring64Bitmap bitmapOf(Map<String, Long> numericKeys) {
+        Roaring64Bitmap bitmap = new Roaring64Bitmap();
+        numericKeys.values().forEach(bitmap::addLong);
+        return bitmap;
+    }
+
+    /**
+     * Keys whose numeric form is in the bitmap, in input order.
+     */
+    private static Set<String> select(Map<String, Long> numericKeys, Roaring64Bitmap wanted) {
+        Set<String> selected = new LinkedHashSet<>();
+        numericKeys.forEach((recordKey, numericKey) -> {
+            if (wanted.contains(numericKey)) {
+                selected.add(recordKey);
+            }
+        });
+        return selected;
+    }
+
+    private String redisKey(String contextId) {
+        return properties.getPrefix() + IdempotencyConstant.ROARING_KEY_SEGMENT + contextId;
+    }
+
+    private static byte[] raw(String redisKey) {
+        return redisKey.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void requireContextId(String contextId) {
+        if (!StringUtils.hasText(contextId)) {
+            log.warn("contextId required but was '{}'", contextId);
+            throw new IllegalArgumentException("contextId required");
+        }
+    }
+
+    private void requireRecordKey(String recordKey) {
+        if (!StringUtils.hasText(recordKey)) {
+            log.warn("record key required but was '{}'", recordKey);
+            throw new IllegalArgumentException("recordKey required");
+        }
+    }
+
+    private void requireRecordKeys(Collection<String> recordKeys) {
+        if (Objects.isNull(recordKeys) || recordKeys.isEmpty()) {
+            log.warn("record key set required but was '{}'", recordKeys);
+            throw new IllegalArgumentException("recordKeys required and must not be empty");
+        }
+        for (String key : recordKeys) {
+            requireRecordKey(key);
+        }
+    }
+
+    private void requireRecordKeys(Roaring64Bitmap recordKeys) {
+        if (recordKeys == null || recordKeys.isEmpty()) {
+            log.warn("record key bitmap required but was '{}'", recordKeys);
+            throw new IllegalArgumentException("recordKeys required and must not be empty");
+        }
+    }
+
+    private static final class Context {
+
+        private final Roaring64Bitmap keys = new Roaring64Bitmap();
+        private volatile long expiresAtNanos;
+        private boolean deleted;
+
+        private Context(long expiresAtNanos) {
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+
+        /**
+         * Marks the context deleted and drops its keys; called once it is no longer in the map.
+         */
+        private synchronized void delete() {
+            deleted = true;
+            keys.clear();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.ms.idempotentcache.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Transaction-aware IdempotencyCacheService decorator, enabled with idempotency.key.write-behind.enabled=true.
+ * <p>
+ * Inside a Spring-managed transaction (e.g. a Spring Batch chunk), marks and claims are not written to the delegate:
+ * they are buffered per transaction and flushed on commit, all contexts in one bulk call, or discarded on rollback.
+ * A rolled-back chunk therefore leaves no key marked, and its records are processed again on retry instead of being
+ * skipped as duplicates. Reads (isProcessed, filterUnprocessed, claims) see the pending marks of their own transaction.
+ * <p>
+ * This gives up the atomicity of tryMarkProcessed: a claim inside a transaction is a read of the delegate plus a check
+ * of the buffer, so two transactions on different threads or nodes can both claim the same new key. Lost claims are
+ * detected, not prevented:
+ * - before commit, the pending claims are checked again with one bulk filterUnprocessed call; if another transaction
+ *   marked any of them in the meantime, an IllegalStateException rolls the transaction back, and the retry skips them
+ * - after commit, the claims are written with one bulk tryMarkProcessed call; a claim lost in the short window since
+ *   the check fails the caller with an IllegalStateException, although the transaction has already committed
+ * Marks written with markProcessed are not claims and may have been marked by anyone. Outside a transaction (no
+ * active synchronization, e.g. the async processor threads) every call goes straight to the delegate.
+ */
+public class WriteBehindIdempotencyCacheService implements IdempotencyCacheService, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindIdempotencyCacheService.class);
+
+    private final IdempotencyCacheService delegate;
+
+    public WriteBehindIdempotencyCacheService(IdempotencyCacheService delegate) {
+        this.delegate = delegate;
+    }
+
+    public IdempotencyCacheService getDelegate() {
+        return delegate;
+    }
+    /**
+     * Closes the delegate if it holds resources (e.g. the mapped-file store); a checked failure is rethrown as an
+     * IllegalStateException.
+     */
+    @Override
+    public void close() {
+        DelegateCloser.close(delegate);
+    }
+
+    @Override
+    public boolean isProcessed(String contextId, String recordKey) {
+        return isPending(contextId, recordKey) || delegate.isProcessed(contextId, recordKey);
+    }
+
+    @Override
+    public boolean isProcessed(String contextId, byte[] recordKey) {
+        return isPending(contextId, string(recordKey)) || delegate.isProcessed(contextId, recordKey);
+    }
+
+    @Override
+    public Set<String> filterUnprocessed(String contextId, Collection<String> recordKeys) {
+        Set<String> pending = pending(contextId);
+        if (pending.isEmpty()) {
+            return delegate.filterUnprocessed(contextId, recordKeys);
+        }
+        Set<String> candidates = new LinkedHashSet<>(recordKeys);
+        candidates.removeAll(pending);
+        return candidates.isEmpty() ? candidates : delegate.filterUnprocessed(contextId, candidates);
+    }
+
+    @Override
+    public void markProcessed(String contextId, String recordKey) {
+        Pending buffer = buffer();
+        if (buffer == null) {
+            delegate.markProcessed(contextId, recordKey);
+            return;
+        }
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        buffer.marks(contextId).add(recordKey);
+    }
+
+    @Override
+    public void markProcessed(String contextId, Set<String> recordKeys) {
+        Pending buffer = buffer();
+        if (buffer == null) {
+            delegate.markProcessed(contextId, recordKeys);
+            return;
+        }
+        requireContextId(contextId);
+        if (recordKeys == null || recordKeys.stream().anyMatch(key -> !StringUtils.hasText(key))) {
+            log.warn("recordKeys required but were '{}'", recordKeys);
+            throw new IllegalArgumentException("recordKeys required and must not be empty");
+        }
+        buffer.marks(contextId).addAll(recordKeys);
+    }
+
+    @Override
+    public boolean tryMarkProcessed(String contextId, String recordKey) {
+        Pending buffer = buffer();
+        if (buffer == null) {
+            return delegate.tryMarkProcessed(contextId, recordKey);
+        }
+        requireContextId(contextId);
+        requireRecordKey(recordKey);
+        return !buffer.contains(contextId, recordKey) && !delegate.isProcessed(contextId, recordKey)
+                && buffer.claims(contextId).add(recordKey);
+    }
+
+    @Override
+    public boolean tryMarkProcessed(String contextId, byte[] recordKey) {
+        Pending buffer = buffer();
+        if (buffer == null) {
+            return delegate.tryMarkProcessed(contextId, recordKey);
+        }
+        String key = string(recordKey);
+        requireContextId(contextId);
+        requireRecordKey(key);
+        return !buffer.contains(contextId, key) && !delegate.isProcessed(contextId, recordKey)
+                && buffer.claims(contextId).add(key);
+    }
+
+    @Override
+    public Set<String> tryMarkProcessed(String contextId, Collection<String> recordKeys) {
+        Pending buffer = buffer();
+        if (buffer == null) {
+            return delegate.tryMarkProcessed(contextId, recordKeys);
+        }
+        Set<String> claimed = filterUnprocessed(contextId, recordKeys);
+        buffer.claims(contextId).addAll(claimed);
+        return claimed;
+    }
+
+    @Override
+    public Map<String, Set<String>> tryMarkProcessed(Map<String, ? extends Collection<String>> recordKeysByContext) {
+        if (buffer() == null) {
+            return delegate.tryMarkProcessed(recordKeysByContext);
+        }
+        return IdempotencyCacheService.super.tryMarkProcessed(recordKeysByContext);
+    }
+
+    /**
+     * Clears the context in the delegate and drops its pending marks in the current transaction.
+     */
+    @Override
+    public void clearCacheForContext(String contextId) {
+        Pending buffer = buffer();
+        if (buffer != null) {
+            buffer.remove(contextId);
+        }
+        delegate.clearCacheForContext(contextId);
+    }
+
+    @Override
+    public void clearCacheForContext(Collection<String> contextIds) {
+        Pending buffer = buffer();
+        if (buffer != null) {
+            contextIds.forEach(buffer::remove);
+        }
+        delegate.clearCacheForContext(contextIds);
+    }
+
+    @Override
+    public void warmContext(String contextId) {
+        delegate.warmContext(contextId);
+    }
+
+    private boolean isPending(String contextId, String recordKey) {
+        Pending buffer = buffer();
+        return buffer != null && buffer.contains(contextId, recordKey);
+    }
+
+    private Set<String> pending(String contextId) {
+        Pending buffer = buffer();
+        return buffer == null ? Collections.emptySet() : buffer.all(contextId);
+    }
+
+    /**
+     * Buffer of the current transaction, bound on first use together with the synchronization that flushes it;
+     * null outside a transaction.
+     */
+    private Pending buffer() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        Pending buffer = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (buffer == null) {
+            Pending newBuffer = new Pending();
+            TransactionSynchronizationManager.bindResource(this, newBuffer);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    checkBeforeCommit(newBuffer);
+                }
+
+                @Override
+                public void afterCommit() {
+                    flushOnCommit(newBuffer);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(WriteBehindIdempotencyCacheService.this);
+                    if (status != STATUS_COMMITTED && !newBuffer.isEmpty()) {
+                        log.info("Discarded pending marks of {} contexts after rollback", newBuffer.size());
+                    }
+                }
+            });
+            buffer = newBuffer;
+        }
+        return buffer;
+    }
+
+    /**
+     * Fails the commit if another transaction marked any pending claim since it was made.
+     */
+    private void checkBeforeCommit(Pending buffer) {
+        Map<String, Set<String>> claims = buffer.nonEmptyClaims();
+        if (!claims.isEmpty()) {
+            failOnLostClaims(claims, delegate.filterUnprocessed(claims), "before commit");
+        }
+    }
+
+    private void flushOnCommit(Pending buffer) {
+        Map<String, Set<String>> claims = buffer.nonEmptyClaims();
+        buffer.marks.forEach((contextId, recordKeys) -> {
+            if (!recordKeys.isEmpty()) {
+                delegate.markProcessed(contextId, recordKeys);
+            }
+        });
+        if (!claims.isEmpty()) {
+            failOnLostClaims(claims, delegate.tryMarkProcessed(claims), "after commit");
+        }
+        log.debug("Flushed pending marks of {} contexts on commit", buffer.size());
+    }
+
+    private static void failOnLostClaims(Map<String, Set<String>> claims, Map<String, Set<String>> stillOurs, String phase) {
+        int lost = 0;
+        for (Map.Entry<String, Set<String>> context : claims.entrySet()) {
+            lost += context.getValue().size() - stillOurs.getOrDefault(context.getKey(), Set.of()).size();
+        }
+        if (lost > 0) {
+            log.warn("{} pending claims were claimed by another transaction {} in contexts {}", lost, phase, claims.keySet());
+            throw new IllegalStateException(lost + " pending claims were claimed by another transaction " + phase);
+        }
+    }
+
+    private void requireContextId(String contextId) {
+        if (!StringUtils.hasText(contextId)) {
+            log.warn("contextId required but was '{}'", contextId);
+            throw new IllegalArgumentException("contextId required");
+        }
+    }
+
+    private void requireRecordKey(String recordKey) {
+        if (!StringUtils.hasText(recordKey)) {
+            log.warn("recordKey required but was '{}'", recordKey);
+            throw new IllegalArgumentException("recordKey required");
+        }
+    }
+
+    private static String string(byte[] recordKey) {
+        return recordKey == null ? null : new String(recordKey, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Pending claims and marks of one transaction, by contextId.
+     */
+    private static final class Pending {
+
+        private final Map<String, Set<String>> claims = new LinkedHashMap<>();
+        private final Map<String, Set<String>> marks = new LinkedHashMap<>();
+
+        private Set<String> claims(String contextId) {
+            return claims.computeIfAbsent(contextId, id -> new LinkedHashSet<>());
+        }
+
+        private Set<String> marks(String contextId) {
+            return marks.computeIfAbsent(contextId, id -> new LinkedHashSet<>());
+        }
+
+        private boolean contains(String contextId, String recordKey) {
+            return claims.getOrDefault(contextId, Set.of()).contains(recordKey)
+                    || marks.getOrDefault(contextId, Set.of()).contains(recordKey);
+        }
+
+        private Set<String> all(String contextId) {
+            Set<String> all = new LinkedHashSet<>(claims.getOrDefault(contextId, Set.of()));
+            all.addAll(marks.getOrDefault(contextId, Set.of()));
+            return all;
+        }
+
+        private Map<String, Set<String>> nonEmptyClaims() {
+            Map<String, Set<String>> nonEmpty = new LinkedHashMap<>(claims);
+            nonEmpty.values().removeIf(Set::isEmpty);
+            return nonEmpty;
+        }
+
+        private void remove(String contextId) {
+            claims.remove(contextId);
+            marks.remove(contextId);
+        }
+
+        private boolean isEmpty() {
+            return claims.isEmpty() && marks.isEmpty();
+        }
+
+        private int size() {
+            Set<String> contextIds = new LinkedHashSet<>(claims.keySet());
+            contextIds.addAll(marks.keySet());
+            return contextIds.size();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.ms.idempotentcache.checkpoint;
+
+/**
+ * High-water mark of an ordered, append-only input: everything before offset has been processed.
+ *
+ * @param offset   byte offset of the first unprocessed byte
+ * @param line     number of lines before offset (header included), for line-based readers
+ * @param checksum checksum of the processed prefix, used to detect that the input was replaced or rewritten
+ */
+public record Checkpoint(long offset, long line, long checksum) {
+}
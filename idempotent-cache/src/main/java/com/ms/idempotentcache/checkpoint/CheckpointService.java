@@ -0,0 +1,28 @@
+package com.ms.idempotentcache.checkpoint;
+
+/**
+ * Per-context high-water marks for ordered inputs.
+ * <p>
+ * An alternative to per-record keys for append-only files that are always read in the same order: instead of
+ * remembering every processed record, only the position reached is stored, and a re-run seeks straight past it.
+ * Marks only move forward, so a late or concurrent write of an older position never rewinds a context.
+ */
+public interface CheckpointService {
+
+    /**
+     * Returns the checkpoint of the context, or null if the context has none.
+     */
+    Checkpoint get(String contextId);
+
+    /**
+     * Stores the checkpoint if it is ahead of the current one.
+     *
+     * @return true if the checkpoint was stored, false if the context was already at or past its offset
+     */
+    boolean advance(String contextId, Checkpoint checkpoint);
+
+    /**
+     * Removes the checkpoint of the context, e.g. once its input has been fully processed and archived.
+     */
+    void clear(String contextId);
+}
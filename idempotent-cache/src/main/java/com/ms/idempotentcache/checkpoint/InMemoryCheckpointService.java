@@ -0,0 +1,32 @@
+package com.ms.idempotentcache.checkpoint;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Heap-backed checkpoints, used with the local stores; marks live as long as the JVM.
+ */
+public class InMemoryCheckpointService implements CheckpointService {
+
+    private final ConcurrentMap<String, Checkpoint> checkpoints = new ConcurrentHashMap<>();
+
+    @Override
+    public Checkpoint get(String contextId) {
+        return checkpoints.get(contextId);
+    }
+
+    @Override
+    public boolean advance(String contextId, Checkpoint checkpoint) {
+        boolean[] advanced = new boolean[1];
+        checkpoints.compute(contextId, (id, current) -> {
+            advanced[0] = current == null || checkpoint.offset() > current.offset();
+            return advanced[0] ? checkpoint : current;
+        });
+        return advanced[0];
+    }
+
+    @Override
+    public void clear(String contextId) {
+        checkpoints.remove(contextId);
+    }
+}
@@ -0,0 +1,91 @@
+package com.ms.idempotentcache.checkpoint;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import com.ms.idempotentcache.constant.IdempotencyConstant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Redis implementation of the CheckpointService interface.
+ * <p>
+ * Each context is one small hash (prefix + "checkpoint:" + contextId) with the fields offset, line and checksum,
+ * expiring with the configured TTL like the record keys. Advancing is one scripted round trip that compares the
+ * offsets on the server, so concurrent writers cannot move a mark backwards.
+ */
+public class RedisCheckpointService implements CheckpointService {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisCheckpointService.class);
+
+    private static final String OFFSET = "offset";
+    private static final String LINE = "line";
+    private static final String CHECKSUM = "checksum";
+
+    /**
+     * ARGV = offset, line, checksum, TTL millis ('0' = no TTL); returns 1 if the mark moved forward, 0 otherwise.
+     */
+    private static final RedisScript<Long> ADVANCE_SCRIPT = new DefaultRedisScript<>(
+            "local current = redis.call('HGET', KEYS[1], 'offset') "
+                    + "if current and tonumber(current) >= tonumber(ARGV[1]) then return 0 end "
+                    + "redis.call('HSET', KEYS[1], 'offset', ARGV[1], 'line', ARGV[2], 'checksum', ARGV[3]) "
+                    + "if ARGV[4] ~= '0' then redis.call('PEXPIRE', KEYS[1], ARGV[4]) end "
+                    + "return 1", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final IdempotencyProperties properties;
+
+    public RedisCheckpointService(StringRedisTemplate redisTemplate, IdempotencyProperties properties) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+    }
+
+    @Override
+    public Checkpoint get(String contextId) {
+        requireContextId(contextId);
+        Map<Object, Object> fields = redisTemplate.opsForHash().entries(redisKey(contextId));
+        if (fields.get(OFFSET) == null) {
+            return null;
+        }
+        return new Checkpoint(Long.parseLong((String) fields.get(OFFSET)),
+                Long.parseLong((String) fields.getOrDefault(LINE, "0")),
+                Long.parseLong((String) fields.getOrDefault(CHECKSUM, "0")));
+    }
+
+    @Override
+    public boolean advance(String contextId, Checkpoint checkpoint) {
+        requireContextId(contextId);
+        if (checkpoint == null) {
+            log.warn("checkpoint required for contextId='{}'", contextId);
+            throw new IllegalArgumentException("checkpoint required");
+        }
+        Long advanced = redisTemplate.execute(ADVANCE_SCRIPT, List.of(redisKey(contextId)),
+                String.valueOf(checkpoint.offset()), String.valueOf(checkpoint.line()),
+                String.valueOf(checkpoint.checksum()), String.valueOf(properties.getTtl().toMillis()));
+        log.debug("Advance checkpoint contextId='{}' to {}: {}", contextId, checkpoint, advanced);
+        return advanced != null && advanced == 1L;
+    }
+
+    @Override
+    public void clear(String contextId) {
+        requireContextId(contextId);
+        redisTemplate.delete(redisKey(contextId));
+        log.info("Cleared checkpoint for contextId='{}'", contextId);
+    }
+
+    private String redisKey(String contextId) {
+        return properties.getPrefix() + IdempotencyConstant.CHECKPOINT_KEY_SEGMENT + contextId;
+    }
+
+    private void requireContextId(String contextId) {
+        if (!StringUtils.hasText(contextId)) {
+            log.warn("contextId required but was '{}'", contextId);
+            throw new IllegalArgumentException("contextId required");
+        }
+    }
+}
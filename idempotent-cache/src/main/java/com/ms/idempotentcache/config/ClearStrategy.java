@@ -0,0 +1,24 @@
+package com.ms.idempotentcache.config;
+
+/**
+ * How the Redis stores delete a context on clearCacheForContext (idempotency.key.clear-strategy).
+ */
+public enum ClearStrategy {
+
+    /**
+     * DEL of the context keys; Redis frees a large set inline, blocking the server for the whole deletion (default).
+     */
+    DELETE,
+
+    /**
+     * UNLINK of the context keys: the keys disappear at once and their memory is reclaimed in a background thread.
+     */
+    UNLINK,
+
+    /**
+     * SSCAN the context set and SREM its members clear-batch-size at a time, then UNLINK what is left; the server
+     * never does more than one batch of work per command, at the cost of one round trip per batch.
+     * Keys that are not sets (Bloom filters) fall back to UNLINK.
+     */
+    INCREMENTAL
+}
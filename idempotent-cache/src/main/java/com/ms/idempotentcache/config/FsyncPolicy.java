@@ -0,0 +1,23 @@
+package com.ms.idempotentcache.config;
+
+/**
+ * When the mapped-file store forces its pages to disk (idempotency.key.mapped-file.fsync-policy).
+ */
+public enum FsyncPolicy {
+
+    /**
+     * After every write call: a claimed key survives a power loss, at the cost of one fsync per call.
+     */
+    ALWAYS,
+
+    /**
+     * At most once per fsync interval per context (default): a power loss can lose the last interval of claims.
+     * Written tables are also forced by a background timer, so a write is never left unsynced for longer.
+     */
+    BATCH,
+
+    /**
+     * Never; the OS writes pages back on its own. Process crashes are still safe, power loss is not.
+     */
+    NEVER
+}
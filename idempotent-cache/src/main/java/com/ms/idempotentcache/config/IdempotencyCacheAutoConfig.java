@@ -1,30 +1,191 @@
 package com.ms.idempotentcache.config;
 
 import com.ms.idempotentcache.aop.IdempotencyMetricsAspect;
+import com.ms.idempotentcache.aop.ReactiveIdempotencyMetricsAspect;
+import com.ms.idempotentcache.cache.BloomFilterIdempotencyCacheService;
+import com.ms.idempotentcache.cache.GlobalDedupeIdempotencyCacheService;
 import com.ms.idempotentcache.cache.IdempotencyCacheService;
+import com.ms.idempotentcache.cache.MappedFileIdempotencyCacheService;
+import com.ms.idempotentcache.cache.MeteredIdempotencyCacheService;
+import com.ms.idempotentcache.cache.NearCacheIdempotencyCacheService;
+import com.ms.idempotentcache.cache.OffHeapIdempotencyCacheService;
+import com.ms.idempotentcache.cache.ReactiveIdempotencyCacheService;
+import com.ms.idempotentcache.cache.ReactiveRedisIdempotencyCacheService;
 import com.ms.idempotentcache.cache.RedisIdempotencyCacheService;
+import com.ms.idempotentcache.cache.RoaringBitmapIdempotencyCacheService;
+import com.ms.idempotentcache.cache.WriteBehindIdempotencyCacheService;
+import com.ms.idempotentcache.checkpoint.CheckpointService;
+import com.ms.idempotentcache.checkpoint.InMemoryCheckpointService;
+import com.ms.idempotentcache.checkpoint.RedisCheckpointService;
+import com.ms.idempotentcache.constant.IdempotencyConstant;
+import com.ms.idempotentcache.metrics.IdempotencyMeters;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisReactiveAutoConfiguration;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
-@Configuration
+@AutoConfiguration(after = {RedisAutoConfiguration.class, RedisReactiveAutoConfiguration.class})
 @EnableConfigurationProperties(IdempotencyProperties.class)
+@Import(IdempotencyCacheAutoConfig.ReactiveIdempotencyCacheConfig.class)
 public class IdempotencyCacheAutoConfig {
 
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyCacheAutoConfig.class);
+
+    /**
+     * Builds the store selected by idempotency.key.store, optionally extended with the global dedupe index and fronted
+     * by the near cache, then optionally buffered until transaction commit (write-behind, outermost so that the near
+     * cache never sees an uncommitted mark). Redis is only required by the Redis-backed stores and the global index.
+     * With idempotency.key.metrics.mode=decorator the result is wrapped in a MeteredIdempotencyCacheService instead of
+     * being instrumented by the aspect.
+     */
     @Bean
+    @ConditionalOnMissingBean(IdempotencyCacheService.class)
     public IdempotencyCacheService idempotencyCacheService(
-            StringRedisTemplate redisTemplate,
+            ObjectProvider<StringRedisTemplate> redisTemplate,
+            IdempotencyProperties properties,
+            ObjectProvider<MeterRegistry> meterRegistry
+    ) {
+        log.info("Idempotency store: {}", properties.getStore());
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        IdempotencyCacheService cacheService = switch (properties.getStore()) {
+            case REDIS_SET -> redisSetService(redisTemplate.getObject(), properties, registry);
+            case REDIS_BLOOM -> new BloomFilterIdempotencyCacheService(redisTemplate.getObject(), properties,
+                    properties.getBloom().isConfirmWithExactSet() ? redisSetService(redisTemplate.getObject(), properties, registry) : null);
+            case OFF_HEAP -> new OffHeapIdempotencyCacheService(properties);
+            case MAPPED_FILE -> new MappedFileIdempotencyCacheService(properties);
+            case REDIS_ROARING -> new RoaringBitmapIdempotencyCacheService(properties, redisTemplate.getObject());
+            case ROARING -> new RoaringBitmapIdempotencyCacheService(properties);
+        };
+        if (properties.getGlobal().isEnabled()) {
+            log.info("Global dedupe enabled (scope={}, bucket={}, window={})", properties.getGlobal().getScope(),
+                    properties.getGlobal().getBucket(), properties.getGlobal().getWindow());
+            cacheService = new GlobalDedupeIdempotencyCacheService(cacheService, redisTemplate.getObject(), properties);
+        }
+        if (properties.getNearCache().isEnabled() && !properties.getStore().isLocal()) {
+            log.info("Near cache enabled (maxContexts={}, maxKeysPerContext={})",
+                    properties.getNearCache().getMaxContexts(), properties.getNearCache().getMaxKeysPerContext());
+            cacheService = new NearCacheIdempotencyCacheService(cacheService, redisTemplate.getObject(), properties, registry);
+        }
+        if (properties.getWriteBehind().isEnabled()) {
+            log.info("Write-behind enabled: marks are flushed on transaction commit");
+            cacheService = new WriteBehindIdempotencyCacheService(cacheService);
+        }
+        if (properties.getMetrics().getMode() == MetricsMode.DECORATOR) {
+            MeterRegistry applicationRegistry = meterRegistry.getIfAvailable();
+            if (applicationRegistry != null) {
+                log.info("Idempotency metrics recorded by decorator");
+                return new MeteredIdempotencyCacheService(cacheService, new IdempotencyMeters(applicationRegistry, properties.getMetrics()));
+            }
+        }
+        return cacheService;
+    }
+
+    /**
+     * Redis Set store recording its TTL-strategy counters in the application registry.
+     */
+    private static RedisIdempotencyCacheService redisSetService(StringRedisTemplate redisTemplate, IdempotencyProperties properties,
+                                                                MeterRegistry meterRegistry) {
+        return new RedisIdempotencyCacheService(redisTemplate, properties,
+                RedisIdempotencyCacheService.fingerprinter(properties.getFingerprint()), meterRegistry);
+    }
+
+    /**
+     * Checkpoints for ordered inputs, kept next to the record keys: in Redis for the Redis-backed stores, on the heap
+     * for the local ones.
+     */
+    @Bean
+    @ConditionalOnMissingBean(CheckpointService.class)
+    public CheckpointService idempotencyCheckpointService(
+            ObjectProvider<StringRedisTemplate> redisTemplate,
+            IdempotencyProperties properties
+    ) {
+        return properties.getStore().isLocal()
+                ? new InMemoryCheckpointService()
+                : new RedisCheckpointService(redisTemplate.getObject(), properties);
+    }
+
+    /**
+     * Subscribes the near cache to its invalidation channel and to keyspace notifications for the context keys.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = IdempotencyConstant.IDEMPOTENCY_KEY, name = IdempotencyConstant.NEAR_CACHE_ENABLED, havingValue = "true")
+    public RedisMessageListenerContainer idempotencyNearCacheListenerContainer(
+            RedisConnectionFactory connectionFactory,
+            IdempotencyCacheService idempotencyCacheService,
             IdempotencyProperties properties
     ) {
-        return new RedisIdempotencyCacheService(redisTemplate, properties);
+        if (properties.getNearCache().isConfigureKeyspaceEvents()) {
+            try (RedisConnection connection = connectionFactory.getConnection()) {
+                connection.serverCommands().setConfig(IdempotencyConstant.NOTIFY_KEYSPACE_EVENTS,
+                        IdempotencyConstant.NOTIFY_KEYSPACE_EVENTS_VALUE);
+            }
+        }
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        IdempotencyCacheService target = idempotencyCacheService instanceof MeteredIdempotencyCacheService metered
+                ? metered.getDelegate() : idempotencyCacheService;
+        if (target instanceof WriteBehindIdempotencyCacheService writeBehind) {
+            target = writeBehind.getDelegate();
+        }
+        if (target instanceof NearCacheIdempotencyCacheService nearCache) {
+            container.addMessageListener(nearCache.invalidationListener(), nearCache.invalidationTopics());
+        }
+        return container;
     }
 
     @Bean
     @ConditionalOnClass(MeterRegistry.class)
-    public IdempotencyMetricsAspect idempotencyMetricsAspect(MeterRegistry registry) {
-        return new IdempotencyMetricsAspect(registry);
+    @ConditionalOnProperty(prefix = IdempotencyConstant.IDEMPOTENCY_KEY, name = IdempotencyConstant.METRICS_MODE,
+            havingValue = IdempotencyConstant.METRICS_MODE_ASPECT, matchIfMissing = true)
+    public IdempotencyMetricsAspect idempotencyMetricsAspect(MeterRegistry registry, IdempotencyProperties properties) {
+        return new IdempotencyMetricsAspect(registry, properties.getMetrics());
+    }
+
+    /**
+     * Reactive cache service on the same Redis Sets as the blocking one, registered when Reactor and a
+     * ReactiveStringRedisTemplate are available. Imported rather than annotated with @Configuration so that
+     * component scanning cannot register it before the Redis auto-configuration has run.
+     */
+    @ConditionalOnClass(name = "reactor.core.publisher.Mono")
+    @ConditionalOnBean(ReactiveStringRedisTemplate.class)
+    static class ReactiveIdempotencyCacheConfig {
+
+        @Bean
+        @ConditionalOnMissingBean(ReactiveIdempotencyCacheService.class)
+        public ReactiveIdempotencyCacheService reactiveIdempotencyCacheService(
+                ReactiveStringRedisTemplate reactiveRedisTemplate,
+                IdempotencyProperties properties,
+                ObjectProvider<MeterRegistry> meterRegistry
+        ) {
+            if (properties.getStore() != StoreType.REDIS_SET) {
+                log.warn("Reactive idempotency cache always uses Redis Sets; idempotency.key.store={} only applies to the blocking service",
+                        properties.getStore());
+            }
+            return new ReactiveRedisIdempotencyCacheService(reactiveRedisTemplate, properties,
+                    RedisIdempotencyCacheService.fingerprinter(properties.getFingerprint()),
+                    meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+        }
+
+        @Bean
+        @ConditionalOnClass(MeterRegistry.class)
+        public ReactiveIdempotencyMetricsAspect reactiveIdempotencyMetricsAspect(MeterRegistry registry) {
+            return new ReactiveIdempotencyMetricsAspect(registry);
+        }
     }
 }
@@ -2,15 +2,33 @@ package com.ms.idempotentcache.config;
 
 
 import com.ms.idempotentcache.constant.IdempotencyConstant;
+import com.ms.idempotentcache.fingerprint.FingerprintAlgorithm;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @ConfigurationProperties(prefix = IdempotencyConstant.IDEMPOTENCY_KEY)
 public class IdempotencyProperties {
 
     private String prefix = IdempotencyConstant.IDEMPOTENT_CACHE;
     private Duration ttl = Duration.ofHours(72);
+    private TtlStrategy ttlStrategy = TtlStrategy.SCRIPTED;
+    private Duration ttlRefreshInterval = Duration.ofMinutes(1);
+    private ClearStrategy clearStrategy = ClearStrategy.DELETE;
+    private int clearBatchSize = 1000;
+    private StoreType store = StoreType.REDIS_SET;
+    private final NearCache nearCache = new NearCache();
+    private final Fingerprint fingerprint = new Fingerprint();
+    private final Bloom bloom = new Bloom();
+    private final OffHeap offHeap = new OffHeap();
+    private final MappedFile mappedFile = new MappedFile();
+    private final Metrics metrics = new Metrics();
+    private final Sharding sharding = new Sharding();
+    private final Global global = new Global();
+    private final WriteBehind writeBehind = new WriteBehind();
+    private final Warm warm = new Warm();
 
     // Getters and setters
     public String getPrefix() { return prefix; }
@@ -18,4 +36,222 @@ public class IdempotencyProperties {
 
     public Duration getTtl() { return ttl; }
     public void setTtl(Duration ttl) { this.ttl = ttl; }
+
+    public TtlStrategy getTtlStrategy() { return ttlStrategy; }
+    public void setTtlStrategy(TtlStrategy ttlStrategy) { this.ttlStrategy = ttlStrategy; }
+
+    public Duration getTtlRefreshInterval() { return ttlRefreshInterval; }
+    public void setTtlRefreshInterval(Duration ttlRefreshInterval) { this.ttlRefreshInterval = ttlRefreshInterval; }
+
+    public ClearStrategy getClearStrategy() { return clearStrategy; }
+    public void setClearStrategy(ClearStrategy clearStrategy) { this.clearStrategy = clearStrategy; }
+
+    public int getClearBatchSize() { return clearBatchSize; }
+    public void setClearBatchSize(int clearBatchSize) { this.clearBatchSize = clearBatchSize; }
+
+    public StoreType getStore() { return store; }
+    public void setStore(StoreType store) { this.store = store; }
+
+    public NearCache getNearCache() { return nearCache; }
+
+    public Fingerprint getFingerprint() { return fingerprint; }
+
+    public Bloom getBloom() { return bloom; }
+
+    public OffHeap getOffHeap() { return offHeap; }
+
+    public MappedFile getMappedFile() { return mappedFile; }
+
+    public Metrics getMetrics() { return metrics; }
+
+    public Sharding getSharding() { return sharding; }
+
+    public Global getGlobal() { return global; }
+
+    public WriteBehind getWriteBehind() { return writeBehind; }
+
+    public Warm getWarm() { return warm; }
+
+    /**
+     * Local, per-node tier of confirmed-processed keys in front of Redis (idempotency.key.near-cache.*).
+     */
+    public static class NearCache {
+
+        private boolean enabled = false;
+        private int maxContexts = 64;
+        private int maxKeysPerContext = 100_000;
+        private boolean configureKeyspaceEvents = false;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public int getMaxContexts() { return maxContexts; }
+        public void setMaxContexts(int maxContexts) { this.maxContexts = maxContexts; }
+
+        public int getMaxKeysPerContext() { return maxKeysPerContext; }
+        public void setMaxKeysPerContext(int maxKeysPerContext) { this.maxKeysPerContext = maxKeysPerContext; }
+
+        public boolean isConfigureKeyspaceEvents() { return configureKeyspaceEvents; }
+        public void setConfigureKeyspaceEvents(boolean configureKeyspaceEvents) { this.configureKeyspaceEvents = configureKeyspaceEvents; }
+    }
+
+    /**
+     * Hashing of record keys to fixed-size binary set members (idempotency.key.fingerprint.*).
+     * See HashingRecordKeyFingerprinter for the collision-probability budget per width.
+     */
+    public static class Fingerprint {
+
+        private boolean enabled = false;
+        private FingerprintAlgorithm algorithm = FingerprintAlgorithm.MURMUR3_128;
+        private int bits = 64;
+        private long expectedKeysPerContext = 10_000_000;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public FingerprintAlgorithm getAlgorithm() { return algorithm; }
+        public void setAlgorithm(FingerprintAlgorithm algorithm) { this.algorithm = algorithm; }
+
+        public int getBits() { return bits; }
+        public void setBits(int bits) { this.bits = bits; }
+
+        public long getExpectedKeysPerContext() { return expectedKeysPerContext; }
+        public void setExpectedKeysPerContext(long expectedKeysPerContext) { this.expectedKeysPerContext = expectedKeysPerContext; }
+    }
+
+    /**
+     * Sizing of the per-context Bloom filter used by store=redis-bloom (idempotency.key.bloom.*).
+     */
+    public static class Bloom {
+
+        private long expectedInsertions = 10_000_000;
+        private double falsePositiveRate = 0.001;
+        private boolean confirmWithExactSet = false;
+
+        public long getExpectedInsertions() { return expectedInsertions; }
+        public void setExpectedInsertions(long expectedInsertions) { this.expectedInsertions = expectedInsertions; }
+
+        public double getFalsePositiveRate() { return falsePositiveRate; }
+        public void setFalsePositiveRate(double falsePositiveRate) { this.falsePositiveRate = falsePositiveRate; }
+
+        public boolean isConfirmWithExactSet() { return confirmWithExactSet; }
+        public void setConfirmWithExactSet(boolean confirmWithExactSet) { this.confirmWithExactSet = confirmWithExactSet; }
+    }
+
+    /**
+     * Sizing of the per-context tables used by store=off-heap (idempotency.key.off-heap.*).
+     */
+    public static class OffHeap {
+
+        private int initialCapacity = 1024;
+
+        public int getInitialCapacity() { return initialCapacity; }
+        public void setInitialCapacity(int initialCapacity) { this.initialCapacity = initialCapacity; }
+    }
+
+    /**
+     * Location and durability of the per-context table files used by store=mapped-file (idempotency.key.mapped-file.*).
+     */
+    public static class MappedFile {
+
+        private String directory = System.getProperty("java.io.tmpdir") + "/idempotent-cache";
+        private FsyncPolicy fsyncPolicy = FsyncPolicy.BATCH;
+        private Duration fsyncInterval = Duration.ofSeconds(1);
+        private int initialCapacity = 1024;
+
+        public String getDirectory() { return directory; }
+        public void setDirectory(String directory) { this.directory = directory; }
+
+        public FsyncPolicy getFsyncPolicy() { return fsyncPolicy; }
+        public void setFsyncPolicy(FsyncPolicy fsyncPolicy) { this.fsyncPolicy = fsyncPolicy; }
+
+        public Duration getFsyncInterval() { return fsyncInterval; }
+        public void setFsyncInterval(Duration fsyncInterval) { this.fsyncInterval = fsyncInterval; }
+
+        public int getInitialCapacity() { return initialCapacity; }
+        public void setInitialCapacity(int initialCapacity) { this.initialCapacity = initialCapacity; }
+    }
+
+    /**
+     * Split of every context of store=redis-set into hash-tagged bucket keys (idempotency.key.sharding.*).
+     * Must not change while contexts are live; see RedisSetKeyLayout.
+     */
+    public static class Sharding {
+
+        private int buckets = 1;
+
+        public int getBuckets() { return buckets; }
+        public void setBuckets(int buckets) { this.buckets = buckets; }
+    }
+
+    /**
+     * Cross-context dedupe index in time-bucketed Redis keys (idempotency.key.global.*); see
+     * GlobalDedupeIdempotencyCacheService.
+     */
+    public static class Global {
+
+        private boolean enabled = false;
+        private String scope = "global";
+        private Duration bucket = Duration.ofHours(1);
+        private Duration window = Duration.ofDays(1);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public String getScope() { return scope; }
+        public void setScope(String scope) { this.scope = scope; }
+
+        public Duration getBucket() { return bucket; }
+        public void setBucket(Duration bucket) { this.bucket = bucket; }
+
+        public Duration getWindow() { return window; }
+        public void setWindow(Duration window) { this.window = window; }
+    }
+
+    /**
+     * Buffering of marks and claims until the surrounding transaction commits (idempotency.key.write-behind.*); see
+     * WriteBehindIdempotencyCacheService.
+     */
+    public static class WriteBehind {
+
+        private boolean enabled = false;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    }
+
+    /**
+     * Local copies of contexts loaded with warmContext (idempotency.key.warm.*); see RedisIdempotencyCacheService.
+     */
+    public static class Warm {
+
+        private int scanCount = 1000;
+        private int maxContexts = 8;
+
+        public int getScanCount() { return scanCount; }
+        public void setScanCount(int scanCount) { this.scanCount = scanCount; }
+
+        public int getMaxContexts() { return maxContexts; }
+        public void setMaxContexts(int maxContexts) { this.maxContexts = maxContexts; }
+    }
+
+    /**
+     * Latency and batch-size meters of the cache operations (idempotency.key.metrics.*).
+     */
+    public static class Metrics {
+
+        private MetricsMode mode = MetricsMode.ASPECT;
+        private boolean percentileHistogram = true;
+        private List<Duration> slo = new ArrayList<>(List.of(Duration.ofMillis(1), Duration.ofMillis(5),
+                Duration.ofMillis(10), Duration.ofMillis(50), Duration.ofMillis(100), Duration.ofMillis(500)));
+
+        public MetricsMode getMode() { return mode; }
+        public void setMode(MetricsMode mode) { this.mode = mode; }
+
+        public boolean isPercentileHistogram() { return percentileHistogram; }
+        public void setPercentileHistogram(boolean percentileHistogram) { this.percentileHistogram = percentileHistogram; }
+
+        public List<Duration> getSlo() { return slo; }
+        public void setSlo(List<Duration> slo) { this.slo = slo; }
+    }
 }
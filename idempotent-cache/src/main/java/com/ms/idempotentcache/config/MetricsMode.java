@@ -0,0 +1,18 @@
+package com.ms.idempotentcache.config;
+
+/**
+ * How calls to the auto-configured IdempotencyCacheService are instrumented (idempotency.key.metrics.mode).
+ */
+public enum MetricsMode {
+
+    /**
+     * IdempotencyMetricsAspect around the bean (default); also instruments services the application defines itself.
+     */
+    ASPECT,
+
+    /**
+     * MeteredIdempotencyCacheService wrapped around the auto-configured service: no proxy, no reflective
+     * argument access, meters resolved once up front.
+     */
+    DECORATOR
+}
@@ -0,0 +1,44 @@
+package com.ms.idempotentcache.config;
+
+/**
+ * Backing store used by the auto-configured IdempotencyCacheService (idempotency.key.store).
+ */
+public enum StoreType {
+
+    /**
+     * One exact Redis Set per context (default).
+     */
+    REDIS_SET,
+
+    /**
+     * One Bloom filter per context, stored as a plain Redis bitmap.
+     */
+    REDIS_BLOOM,
+
+    /**
+     * In-process, off-heap hash set per context; no Redis needed (single node only).
+     */
+    OFF_HEAP,
+
+    /**
+     * One memory-mapped hash table file per context on local disk; survives restarts (single node only).
+     */
+    MAPPED_FILE,
+
+    /**
+     * One Roaring bitmap of numeric record keys per context, stored in Redis as serialized chunks of a hash.
+     */
+    REDIS_ROARING,
+
+    /**
+     * In-process Roaring bitmap of numeric record keys per context; no Redis needed (single node only).
+     */
+    ROARING;
+
+    /**
+     * True for stores kept on this node only, which neither need Redis nor can be fronted by the near cache.
+     */
+    public boolean isLocal() {
+        return this == OFF_HEAP || this == MAPPED_FILE || this == ROARING;
+    }
+}
@@ -0,0 +1,28 @@
+package com.ms.idempotentcache.config;
+
+/**
+ * How the Redis set store keeps the context TTL up to date (idempotency.key.ttl-strategy).
+ */
+public enum TtlStrategy {
+
+    /**
+     * SADD followed by a separate EXPIRE on every markProcessed (two round trips per write).
+     */
+    EVERY_WRITE,
+
+    /**
+     * SADD and PEXPIRE folded into one script, so every write refreshes the TTL in a single round trip (default).
+     */
+    SCRIPTED,
+
+    /**
+     * The TTL is set once, by the write that creates the context key, and never refreshed.
+     */
+    ON_CREATE,
+
+    /**
+     * The TTL is refreshed at most once per ttl-refresh-interval per context, tracked locally. Writes in between
+     * still set a TTL on a context key that has none, e.g. one recreated after a clear on another node.
+     */
+    THROTTLED
+}
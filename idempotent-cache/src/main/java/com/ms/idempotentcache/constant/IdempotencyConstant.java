@@ -5,10 +5,43 @@ public class IdempotencyConstant {
     public static final String IDEMPOTENCY_CACHE_MISS = "idempotency.cache.miss";
     public static final String IDEMPOTENCY_CACHE_MARK_PROCESSED = "idempotency.cache.markProcessed";
     public static final String IDEMPOTENCY_CACHE_CLEARED = "idempotency.cache.cleared";
+    public static final String IDEMPOTENCY_CACHE_CLAIMED = "idempotency.cache.claimed";
+    public static final String IDEMPOTENCY_CACHE_DUPLICATE = "idempotency.cache.duplicate";
+    public static final String IDEMPOTENCY_CACHE_TTL_REFRESH = "idempotency.cache.ttl.refresh";
+    public static final String IDEMPOTENCY_CACHE_OPERATION = "idempotency.cache.operation";
+    public static final String IDEMPOTENCY_CACHE_BATCH_SIZE = "idempotency.cache.batch.size";
+    public static final String IDEMPOTENCY_CACHE_ERRORS = "idempotency.cache.errors";
+    public static final String TAG_STRATEGY = "strategy";
+    public static final String TAG_COMMAND = "command";
+    public static final String TAG_OPERATION = "operation";
+    public static final String TAG_IMPLEMENTATION = "implementation";
+    public static final String TAG_BULK = "bulk";
+    public static final String TAG_EXCEPTION = "exception";
+    public static final String METRICS_MODE = "metrics.mode";
+    public static final String METRICS_MODE_ASPECT = "aspect";
+    public static final String IDEMPOTENCY_CACHE_NEAR_HIT = "idempotency.cache.near.hit";
+    public static final String IDEMPOTENCY_CACHE_NEAR_MISS = "idempotency.cache.near.miss";
     public static final String AOP_IS_PROCESSED_POINTCUT_EXPRESSION = "execution(* com.ms.idempotentcache.cache.IdempotencyCacheService.isProcessed(..))";
 
+    public static final String AOP_FILTER_UNPROCESSED_POINTCUT_EXPRESSION = "execution(* com.ms.idempotentcache.cache.IdempotencyCacheService.filterUnprocessed(..))";
+    public static final String AOP_TRY_MARK_PROCESSED_POINTCUT_EXPRESSION = "execution(* com.ms.idempotentcache.cache.IdempotencyCacheService.tryMarkProcessed(..))";
     public static final String AOP_MARK_PROCESSED_POINTCUT_EXPRESSION = "execution(* com.ms.idempotentcache.cache.IdempotencyCacheService.markProcessed(..))";
     public static final String AOP_CLEAR_CACHE_FOR_CONTEXT_POINTCUT_EXPRESSION = "execution(* com.ms.idempotentcache.cache.IdempotencyCacheService.clearCacheForContext(..))";
+    public static final String AOP_CLEAR_CACHE_FOR_CONTEXT_ASYNC_POINTCUT_EXPRESSION = "execution(* com.ms.idempotentcache.cache.IdempotencyCacheService.clearCacheForContextAsync(..))";
+    public static final String AOP_REACTIVE_IS_PROCESSED_POINTCUT_EXPRESSION = "execution(* com.ms.idempotentcache.cache.ReactiveIdempotencyCacheService.isProcessed(..))";
+    public static final String AOP_REACTIVE_FILTER_UNPROCESSED_POINTCUT_EXPRESSION = "execution(* com.ms.idempotentcache.cache.ReactiveIdempotencyCacheService.filterUnprocessed(..))";
+    public static final String AOP_REACTIVE_TRY_MARK_PROCESSED_POINTCUT_EXPRESSION = "execution(* com.ms.idempotentcache.cache.ReactiveIdempotencyCacheService.tryMarkProcessed(..))";
+    public static final String AOP_REACTIVE_MARK_PROCESSED_POINTCUT_EXPRESSION = "execution(* com.ms.idempotentcache.cache.ReactiveIdempotencyCacheService.markProcessed(..))";
+    public static final String AOP_REACTIVE_CLEAR_CACHE_FOR_CONTEXT_POINTCUT_EXPRESSION = "execution(* com.ms.idempotentcache.cache.ReactiveIdempotencyCacheService.clearCacheForContext(..))";
     public static final String IDEMPOTENCY_KEY = "idempotency.key";
     public static final String IDEMPOTENT_CACHE = "idempotent-cache:";
+    public static final String BLOOM_KEY_SEGMENT = "bloom:";
+    public static final String CHECKPOINT_KEY_SEGMENT = "checkpoint:";
+    public static final String GLOBAL_KEY_SEGMENT = "global:";
+    public static final String ROARING_KEY_SEGMENT = "roaring:";
+    public static final String NEAR_CACHE_ENABLED = "near-cache.enabled";
+    public static final String NEAR_CACHE_INVALIDATION_CHANNEL = "near-cache:invalidate";
+    public static final String KEYSPACE_CHANNEL_PATTERN = "__keyspace@*__:";
+    public static final String NOTIFY_KEYSPACE_EVENTS = "notify-keyspace-events";
+    public static final String NOTIFY_KEYSPACE_EVENTS_VALUE = "Kgxe";
 }
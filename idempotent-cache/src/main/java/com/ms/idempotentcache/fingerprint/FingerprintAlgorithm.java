@@ -0,0 +1,17 @@
+package com.ms.idempotentcache.fingerprint;
+
+/**
+ * Hash functions available for record key fingerprints.
+ */
+public enum FingerprintAlgorithm {
+
+    /**
+     * MurmurHash3 x64 128-bit: fast, non-cryptographic, well distributed.
+     */
+    MURMUR3_128,
+
+    /**
+     * SHA-256 truncated to the configured width: slower; unkeyed like MURMUR3_128, so it does not hide the keys.
+     */
+    SHA_256
+}
@@ -0,0 +1,71 @@
+package com.ms.idempotentcache.fingerprint;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Fingerprints record keys to fixed 64- or 128-bit binary digests.
+ * <p>
+ * Fingerprints are a size and speed optimization: they keep the cache size independent of the key length. They are
+ * unkeyed hashes, not a protection of the keys: a key drawn from a small space (e.g. an SSN) is found again by hashing
+ * every candidate. The price is a small chance that two different keys share a fingerprint, in which case the
+ * second record is treated as a duplicate. By the birthday bound, for n keys in one context and b bits:
+ * <pre>
+ *   p(collision) ~ n^2 / 2^(b + 1)
+ *
+ *   keys per context     64 bits     128 bits
+ *   1,000,000            2.7e-8      1.5e-27
+ *   10,000,000           2.7e-6      1.5e-25
+ *   100,000,000          2.7e-4      1.5e-23
+ * </pre>
+ * 64 bits fits contexts up to a few tens of millions of keys; use 128 bits beyond that or when any false
+ * duplicate is unacceptable.
+ */
+public class HashingRecordKeyFingerprinter implements RecordKeyFingerprinter {
+
+    private final FingerprintAlgorithm algorithm;
+    private final int bytes;
+
+    public HashingRecordKeyFingerprinter(FingerprintAlgorithm algorithm, int bits) {
+        if (bits != 64 && bits != 128) {
+            throw new IllegalArgumentException("fingerprint bits must be 64 or 128 but was " + bits);
+        }
+        this.algorithm = algorithm;
+        this.bytes = bits / Byte.SIZE;
+    }
+
+    @Override
+    public byte[] fingerprint(byte[] recordKey) {
+        return switch (algorithm) {
+            case MURMUR3_128 -> murmur3(recordKey);
+            case SHA_256 -> Arrays.copyOf(sha256().digest(recordKey), bytes);
+        };
+    }
+
+    /**
+     * Birthday-bound probability that at least two of the given number of keys share a fingerprint.
+     */
+    public static double collisionProbability(long keys, int bits) {
+        double pairs = (double) keys * (keys - 1) / 2;
+        return -Math.expm1(-pairs / Math.pow(2, bits));
+    }
+
+    private byte[] murmur3(byte[] recordKey) {
+        long[] hash = Murmur3.hash128(recordKey, 0, recordKey.length, 0);
+        ByteBuffer buffer = ByteBuffer.allocate(bytes).putLong(hash[0]);
+        if (bytes > Long.BYTES) {
+            buffer.putLong(hash[1]);
+        }
+        return buffer.array();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
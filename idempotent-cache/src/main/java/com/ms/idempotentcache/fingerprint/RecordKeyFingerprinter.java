@@ -0,0 +1,24 @@
+package com.ms.idempotentcache.fingerprint;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Maps a record key to the bytes stored as a member of the context set.
+ */
+@FunctionalInterface
+public interface RecordKeyFingerprinter {
+
+    /**
+     * Stores the UTF-8 record key verbatim (the default layout).
+     */
+    RecordKeyFingerprinter NONE = recordKey -> recordKey;
+
+    /**
+     * Returns the member bytes for the UTF-8 encoded record key.
+     */
+    byte[] fingerprint(byte[] recordKey);
+
+    default byte[] fingerprint(String recordKey) {
+        return fingerprint(recordKey.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,196 @@
+package com.ms.idempotentcache.metrics;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import com.ms.idempotentcache.constant.IdempotencyConstant;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Meters of the blocking IdempotencyCacheService, shared by IdempotencyMetricsAspect and
+ * MeteredIdempotencyCacheService so both report the same series.
+ * <p>
+ * Records:
+ * - the untagged hit / miss / markProcessed / claimed / duplicate / cleared counters
+ * - idempotency.cache.operation: a Timer per operation, implementation and bulk flag, with the configured SLO
+ *   buckets and optionally a percentile histogram
+ * - idempotency.cache.batch.size: a DistributionSummary of the keys (contexts for clearCacheForContext) per bulk
+ *   call, per operation
+ * - idempotency.cache.errors: a Counter per operation, implementation and exception type
+ * <p>
+ * Tags only take values from small fixed sets (operation names, implementation classes, exception classes), never
+ * context ids or keys. Timers are resolved once per implementation class and kept, so a call costs two
+ * System.nanoTime() reads and an array lookup.
+ */
+public final class IdempotencyMeters {
+
+    /**
+     * Instrumented operations; the tag value is the interface method name.
+     */
+    public enum Operation {
+        IS_PROCESSED("isProcessed", false),
+        FILTER_UNPROCESSED("filterUnprocessed", true),
+        MARK_PROCESSED("markProcessed", true),
+        TRY_MARK_PROCESSED("tryMarkProcessed", true),
+        CLEAR_CACHE_FOR_CONTEXT("clearCacheForContext", true);
+
+        private final String tag;
+        private final boolean hasBulkForm;
+
+        Operation(String tag, boolean hasBulkForm) {
+            this.tag = tag;
+            this.hasBulkForm = hasBulkForm;
+        }
+
+        public String tag() {
+            return tag;
+        }
+    }
+
+    private final MeterRegistry registry;
+    private final IdempotencyProperties.Metrics properties;
+    private final Counter cacheHitCounter;
+    private final Counter cacheMissCounter;
+    private final Counter markProcessedCounter;
+    private final Counter clearCacheCounter;
+    private final Counter claimedCounter;
+    private final Counter duplicateCounter;
+    private final DistributionSummary[] batchSizes;
+    private final ConcurrentMap<Class<?>, Timer[]> timersByImplementation = new ConcurrentHashMap<>();
+
+    public IdempotencyMeters(MeterRegistry registry, IdempotencyProperties.Metrics properties) {
+        this.registry = registry;
+        this.properties = properties;
+        this.cacheHitCounter = registry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_HIT);
+        this.cacheMissCounter = registry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_MISS);
+        this.markProcessedCounter = registry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_MARK_PROCESSED);
+        this.clearCacheCounter = registry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_CLEARED);
+        this.claimedCounter = registry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_CLAIMED);
+        this.duplicateCounter = registry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_DUPLICATE);
+        this.batchSizes = new DistributionSummary[Operation.values().length];
+        for (Operation operation : Operation.values()) {
+            if (!operation.hasBulkForm) {
+                continue;
+            }
+            batchSizes[operation.ordinal()] = DistributionSummary.builder(IdempotencyConstant.IDEMPOTENCY_CACHE_BATCH_SIZE)
+                    .description("Record keys per bulk idempotency cache call")
+                    .baseUnit("keys")
+                    .tag(IdempotencyConstant.TAG_OPERATION, operation.tag())
+                    .publishPercentileHistogram(properties.isPercentileHistogram())
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Latency timer of the operation on the given implementation, single-key or bulk.
+     */
+    public Timer timer(Class<?> implementation, Operation operation, boolean bulk) {
+        Timer[] timers = timersByImplementation.computeIfAbsent(implementation, this::registerTimers);
+        return timers[operation.ordinal() * 2 + (bulk ? 1 : 0)];
+    }
+
+    public void recordBatchSize(Operation operation, long keys) {
+        batchSizes[operation.ordinal()].record(keys);
+    }
+
+    public void recordError(Class<?> implementation, Operation operation, Throwable error) {
+        registry.counter(IdempotencyConstant.IDEMPOTENCY_CACHE_ERRORS,
+                IdempotencyConstant.TAG_OPERATION, operation.tag(),
+                IdempotencyConstant.TAG_IMPLEMENTATION, implementation.getSimpleName(),
+                IdempotencyConstant.TAG_EXCEPTION, error.getClass().getSimpleName()).increment();
+    }
+
+    public void hit(double count) {
+        cacheHitCounter.increment(count);
+    }
+
+    public void miss(double count) {
+        cacheMissCounter.increment(count);
+    }
+
+    public void claimed(double count) {
+        claimedCounter.increment(count);
+    }
+
+    public void duplicate(double count) {
+        duplicateCounter.increment(count);
+    }
+
+    public void markProcessed() {
+        markProcessedCounter.increment();
+    }
+
+    public void cleared(double contexts) {
+        clearCacheCounter.increment(contexts);
+    }
+
+    /**
+     * Number of distinct record keys of a bulk call; 0 for null.
+     */
+    public static long distinctKeyCount(Collection<?> recordKeys) {
+        if (recordKeys == null) {
+            return 0;
+        }
+        return recordKeys instanceof Set<?> ? recordKeys.size() : new HashSet<>(recordKeys).size();
+    }
+
+    /**
+     * Number of distinct record keys of a multi-context bulk call, summed over the contexts; 0 for null.
+     */
+    public static long distinctKeyCount(Map<?, ? extends Collection<?>> recordKeysByContext) {
+        long distinct = 0;
+        if (recordKeysByContext != null) {
+            for (Collection<?> recordKeys : recordKeysByContext.values()) {
+                distinct += distinctKeyCount(recordKeys);
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Number of record keys of a bulk call or result; 0 for null.
+     */
+    public static long keyCount(Collection<?> recordKeys) {
+        return recordKeys == null ? 0 : recordKeys.size();
+    }
+
+    /**
+     * Number of record keys in a multi-context bulk call or result, summed over the contexts; 0 for null.
+     */
+    public static long keyCount(Map<?, ? extends Collection<?>> recordKeysByContext) {
+        long count = 0;
+        if (recordKeysByContext != null) {
+            for (Collection<?> recordKeys : recordKeysByContext.values()) {
+                count += keyCount(recordKeys);
+            }
+        }
+        return count;
+    }
+
+    private Timer[] registerTimers(Class<?> implementation) {
+        Timer[] timers = new Timer[Operation.values().length * 2];
+        Duration[] slo = properties.getSlo().toArray(new Duration[0]);
+        for (Operation operation : Operation.values()) {
+            for (boolean bulk : operation.hasBulkForm ? new boolean[]{false, true} : new boolean[]{false}) {
+                timers[operation.ordinal() * 2 + (bulk ? 1 : 0)] = Timer.builder(IdempotencyConstant.IDEMPOTENCY_CACHE_OPERATION)
+                        .description("Latency of idempotency cache calls")
+                        .tag(IdempotencyConstant.TAG_OPERATION, operation.tag())
+                        .tag(IdempotencyConstant.TAG_IMPLEMENTATION, implementation.getSimpleName())
+                        .tag(IdempotencyConstant.TAG_BULK, String.valueOf(bulk))
+                        .serviceLevelObjectives(slo)
+                        .publishPercentileHistogram(properties.isPercentileHistogram())
+                        .register(registry);
+            }
+        }
+        return timers;
+    }
+}
@@ -0,0 +1,24 @@
+package com.ms.idempotentcache.record;
+
+/**
+ * RecordKeyProvider that writes the key fields straight into a {@link RecordKeySink}, typically a reusable
+ * {@link ByteBufferRecordKeySink}, instead of building a String per record.
+ * <p>
+ * The binary key is the UTF-8 encoding of the String key returned by {@link #getKey(Object)}, so both forms
+ * address the same cache entries and can be mixed freely.
+ */
+@FunctionalInterface
+public interface BinaryRecordKeyProvider<T> extends RecordKeyProvider<T> {
+
+    /**
+     * Writes the key fields of the record into the sink.
+     */
+    void writeKey(T record, RecordKeySink sink);
+
+    @Override
+    default String getKey(T record) {
+        ByteBufferRecordKeySink sink = new ByteBufferRecordKeySink();
+        writeKey(record, sink);
+        return sink.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package com.ms.idempotentcache.record;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable, growable byte buffer that UTF-8 encodes key fields as they are written.
+ * <p>
+ * Call {@link #reset()} before every key; the buffer is kept between keys, so encoding allocates nothing once it
+ * has grown to the longest key. Not thread-safe: use one sink per thread.
+ */
+public class ByteBufferRecordKeySink implements RecordKeySink {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private byte[] buffer;
+    private int length;
+    private boolean firstField = true;
+
+    public ByteBufferRecordKeySink() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ByteBufferRecordKeySink(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Clears the buffer for the next key.
+     */
+    public ByteBufferRecordKeySink reset() {
+        length = 0;
+        firstField = true;
+        return this;
+    }
+
+    @Override
+    public ByteBufferRecordKeySink field(CharSequence value) {
+        if (!firstField) {
+            put((byte) SEPARATOR);
+        }
+        firstField = false;
+        if (value != null) {
+            encode(value);
+        }
+        return this;
+    }
+
+    /**
+     * Internal buffer; only the first {@link #length()} bytes belong to the key.
+     */
+    public byte[] array() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Copy of the encoded key, sized exactly.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Decodes the key, e.g. for logging.
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * UTF-8 encodes the value; unpaired surrogates become '?', like String.getBytes(UTF_8).
+     */
+    private void encode(CharSequence value) {
+        int count = value.length();
+        ensureCapacity(length + count);
+        for (int i = 0; i < count; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                put((byte) c);
+            } else if (c < 0x800) {
+                put((byte) (0xc0 | (c >> 6)));
+                put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    put((byte) (0xf0 | (codePoint >> 18)));
+                    put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                    put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                    put((byte) (0x80 | (codePoint & 0x3f)));
+                } else {
+                    put((byte) '?');
+                }
+            } else {
+                put((byte) (0xe0 | (c >> 12)));
+                put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    private void put(byte b) {
+        if (length == buffer.length) {
+            ensureCapacity(length + 1);
+        }
+        buffer[length++] = b;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.ms.idempotentcache.record;
+
+/**
+ * RecordKeyProvider for records identified by a 64-bit integer, e.g. numeric ids packed into one long, for the
+ * Roaring bitmap stores (idempotency.key.store=roaring / redis-roaring).
+ * <p>
+ * The String key is the unsigned decimal form of the numeric key, which those stores map back to the same number;
+ * other stores keep it as an ordinary key.
+ */
+@FunctionalInterface
+public interface NumericRecordKeyProvider<T> extends RecordKeyProvider<T> {
+
+    /**
+     * Maps the record to its numeric key; two records are duplicates exactly when their numeric keys are equal.
+     */
+    long getNumericKey(T record);
+
+    @Override
+    default String getKey(T record) {
+        return Long.toUnsignedString(getNumericKey(record));
+    }
+}
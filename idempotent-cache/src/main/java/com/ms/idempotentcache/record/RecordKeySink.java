@@ -0,0 +1,18 @@
+package com.ms.idempotentcache.record;
+
+/**
+ * Receives the fields of a record key one by one, so that the key can be encoded without first being
+ * assembled into a String.
+ * <p>
+ * Fields are written in order and joined with {@link #SEPARATOR}; a null field is written as an empty one.
+ * The resulting bytes are the UTF-8 encoding of String.join(":", fields).
+ */
+public interface RecordKeySink {
+
+    char SEPARATOR = ':';
+
+    /**
+     * Appends the next field of the key.
+     */
+    RecordKeySink field(CharSequence value);
+}
@@ -0,0 +1,83 @@
+package com.ms.idempotentcache.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+@SpringBootTest
+public class BloomFilterIdempotencyCacheServiceTest {
+
+    @Autowired
+    StringRedisTemplate redisTemplate;
+
+    @Autowired
+    IdempotencyProperties properties;
+
+    @Test
+    void bloomLifecycleWorks() {
+        var cache = new BloomFilterIdempotencyCacheService(redisTemplate, bloomProperties(), null);
+
+        String contextId = "bloomContext";
+        assertThat(cache.isProcessed(contextId, "key-1")).isFalse();
+        assertThat(cache.tryMarkProcessed(contextId, "key-1")).isTrue();
+        assertThat(cache.tryMarkProcessed(contextId, "key-1")).isFalse();
+        cache.markProcessed(contextId, Set.of("key-2"));
+        assertThat(cache.filterUnprocessed(contextId, List.of("key-1", "key-2", "key-3"))).containsExactly("key-3");
+        assertThat(cache.tryMarkProcessed(contextId, List.of("key-3", "key-3", "key-1"))).containsExactly("key-3");
+
+        cache.clearCacheForContext(contextId);
+        assertThat(cache.isProcessed(contextId, "key-1")).isFalse();
+    }
+
+    @Test
+    void falsePositiveRateStaysWithinBudget() {
+        var cache = new BloomFilterIdempotencyCacheService(redisTemplate, bloomProperties(), null);
+        String contextId = "bloomBudgetContext";
+
+        List<String> inserted = new ArrayList<>();
+        List<String> probes = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            inserted.add("inserted-" + i);
+            probes.add("probe-" + i);
+        }
+        cache.tryMarkProcessed(contextId, inserted);
+
+        assertThat(cache.filterUnprocessed(contextId, inserted)).isEmpty();
+        int falsePositives = probes.size() - cache.filterUnprocessed(contextId, probes).size();
+        assertThat(falsePositives).isLessThanOrEqualTo(10);
+
+        cache.clearCacheForContext(contextId);
+    }
+
+    @Test
+    void exactSetConfirmsPositives() {
+        var props = bloomProperties();
+        props.getBloom().setConfirmWithExactSet(true);
+        var cache = new BloomFilterIdempotencyCacheService(redisTemplate, props, new RedisIdempotencyCacheService(redisTemplate, props));
+
+        String contextId = "bloomExactContext";
+        assertThat(cache.tryMarkProcessed(contextId, "key-1")).isTrue();
+        assertThat(cache.isProcessed(contextId, "key-1")).isTrue();
+        assertThat(cache.tryMarkProcessed(contextId, "key-1")).isFalse();
+
+        cache.clearCacheForContext(contextId);
+        assertThat(redisTemplate.hasKey(props.getPrefix() + contextId)).isFalse();
+    }
+
+    private IdempotencyProperties bloomProperties() {
+        var props = new IdempotencyProperties();
+        props.setPrefix(properties.getPrefix());
+        props.setTtl(properties.getTtl());
+        props.getBloom().setExpectedInsertions(1_000);
+        props.getBloom().setFalsePositiveRate(0.001);
+        return props;
+    }
+}
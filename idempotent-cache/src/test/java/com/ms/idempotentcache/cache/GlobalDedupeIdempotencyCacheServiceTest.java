@@ -0,0 +1,56 @@
+package com.ms.idempotentcache.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@SpringBootTest
+public class GlobalDedupeIdempotencyCacheServiceTest {
+
+    @Autowired
+    StringRedisTemplate redisTemplate;
+
+    @Test
+    void dedupesAcrossContextsWithinTheWindow() {
+        var properties = new IdempotencyProperties();
+        properties.getGlobal().setScope("globalTest-" + System.nanoTime());
+        properties.getGlobal().setBucket(Duration.ofHours(1));
+        properties.getGlobal().setWindow(Duration.ofHours(2));
+        Instant now = Instant.now();
+        var cache = global(properties, now);
+        List<String> contextIds = List.of("globalA", "globalB", "globalC", "globalD", "globalE", "globalF");
+        cache.clearCacheForContext(contextIds);
+
+        assertThat(cache.tryMarkProcessed("globalA", "key-1")).isTrue();
+        assertThat(cache.tryMarkProcessed("globalB", "key-1")).isFalse();
+        assertThat(cache.isProcessed("globalC", "key-1")).isTrue();
+        assertThat(cache.tryMarkProcessed("globalB", List.of("key-1", "key-2"))).containsExactly("key-2");
+        assertThat(cache.tryMarkProcessed(Map.of("globalD", List.of("key-2", "key-3"))))
+                .containsEntry("globalD", Set.of("key-3"));
+
+        var nextBucket = global(properties, now.plus(Duration.ofMinutes(90)));
+        assertThat(nextBucket.filterUnprocessed("globalE", List.of("key-1", "key-4"))).containsExactly("key-4");
+
+        var pastWindow = global(properties, now.plus(Duration.ofHours(3)));
+        assertThat(pastWindow.tryMarkProcessed("globalF", "key-1")).isTrue();
+
+        cache.clearCacheForContext(contextIds);
+    }
+
+    private GlobalDedupeIdempotencyCacheService global(IdempotencyProperties properties, Instant now) {
+        return new GlobalDedupeIdempotencyCacheService(new RedisIdempotencyCacheService(redisTemplate, properties),
+                redisTemplate, properties, Clock.fixed(now, ZoneOffset.UTC));
+    }
+}
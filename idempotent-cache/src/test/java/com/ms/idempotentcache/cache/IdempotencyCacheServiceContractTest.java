@@ -0,0 +1,137 @@
+package com.ms.idempotentcache.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Behaviour every IdempotencyCacheService implementation must share; subclasses provide the implementation.
+ */
+public abstract class IdempotencyCacheServiceContractTest {
+
+    protected abstract IdempotencyCacheService newCache();
+
+    @Test
+    void idempotencyLifecycleWorks() {
+        var cache = newCache();
+
+        String contextId = "testContext";
+        String key1 = "key-1";
+        String key2 = "key-2";
+
+        assertThat(cache.isProcessed(contextId, key1)).isFalse();
+
+        cache.markProcessed(contextId, key1);
+        assertThat(cache.isProcessed(contextId, key1)).isTrue();
+
+        cache.markProcessed(contextId, Set.of(key2));
+        assertThat(cache.isProcessed(contextId, key2)).isTrue();
+
+        cache.clearCacheForContext(contextId);
+        assertThat(cache.isProcessed(contextId, key1)).isFalse();
+        assertThat(cache.isProcessed(contextId, key2)).isFalse();
+    }
+
+    @Test
+    void filterUnprocessedReturnsOnlyUnseenKeys() {
+        var cache = newCache();
+
+        String contextId = "bulkContext";
+        String otherContextId = "bulkContext-other";
+        cache.markProcessed(contextId, Set.of("key-1", "key-3"));
+        cache.markProcessed(otherContextId, "key-2");
+
+        assertThat(cache.filterUnprocessed(contextId, List.of("key-1", "key-2", "key-2", "key-3", "key-4")))
+                .containsExactly("key-2", "key-4");
+        assertThat(cache.filterUnprocessed(Map.of(contextId, List.of("key-1", "key-2"), otherContextId, List.of("key-1", "key-2"))))
+                .containsEntry(contextId, Set.of("key-2"))
+                .containsEntry(otherContextId, Set.of("key-1"));
+
+        cache.clearCacheForContext(contextId);
+        cache.clearCacheForContext(otherContextId);
+    }
+
+    @Test
+    void tryMarkProcessedClaimsKeyOnlyOnce() {
+        var cache = newCache();
+
+        String contextId = "claimContext";
+        assertThat(cache.tryMarkProcessed(contextId, "key-1")).isTrue();
+        assertThat(cache.tryMarkProcessed(contextId, "key-1")).isFalse();
+        assertThat(cache.isProcessed(contextId, "key-1")).isTrue();
+
+        cache.clearCacheForContext(contextId);
+    }
+
+    @Test
+    void bulkTryMarkProcessedClaimsOnlyNewKeys() {
+        var cache = newCache();
+
+        String contextId = "bulkClaimContext";
+        String otherContextId = "bulkClaimContext-other";
+        cache.markProcessed(contextId, "key-2");
+
+        assertThat(cache.tryMarkProcessed(contextId, List.of("key-1", "key-2", "key-1", "key-3")))
+                .containsExactly("key-1", "key-3");
+        assertThat(cache.tryMarkProcessed(Map.of(contextId, List.of("key-3", "key-4"), otherContextId, List.of("key-3"))))
+                .containsEntry(contextId, Set.of("key-4"))
+                .containsEntry(otherContextId, Set.of("key-3"));
+        assertThat(cache.filterUnprocessed(contextId, List.of("key-1", "key-2", "key-3", "key-4"))).isEmpty();
+
+        cache.clearCacheForContext(contextId);
+        cache.clearCacheForContext(otherContextId);
+    }
+
+    @Test
+    void binaryRecordKeysMatchStringKeys() {
+        var cache = newCache();
+
+        String contextId = "binaryContext";
+        cache.markProcessed(contextId, "123-45-6789:P0001:Zoë");
+        assertThat(cache.isProcessed(contextId, "123-45-6789:P0001:Zoë".getBytes(StandardCharsets.UTF_8))).isTrue();
+        assertThat(cache.tryMarkProcessed(contextId, "key-2".getBytes(StandardCharsets.UTF_8))).isTrue();
+        assertThat(cache.tryMarkProcessed(contextId, "key-2")).isFalse();
+
+        cache.clearCacheForContext(contextId);
+    }
+
+    @Test
+    void clearCacheForContextAsyncClearsTheContext() {
+        var cache = newCache();
+
+        String contextId = "asyncClearContext";
+        cache.markProcessed(contextId, Set.of("key-1", "key-2"));
+        cache.clearCacheForContextAsync(contextId).join();
+        assertThat(cache.isProcessed(contextId, "key-1")).isFalse();
+        assertThat(cache.filterUnprocessed(contextId, List.of("key-1", "key-2"))).containsExactly("key-1", "key-2");
+    }
+
+    @Test
+    void bulkClearClearsEveryContext() {
+        var cache = newCache();
+
+        cache.markProcessed("bulkClearContext-1", "key-1");
+        cache.markProcessed("bulkClearContext-2", "key-1");
+        cache.markProcessed("bulkClearContext-3", "key-1");
+        cache.clearCacheForContext(List.of("bulkClearContext-1", "bulkClearContext-2"));
+        assertThat(cache.isProcessed("bulkClearContext-1", "key-1")).isFalse();
+        assertThat(cache.isProcessed("bulkClearContext-2", "key-1")).isFalse();
+        assertThat(cache.isProcessed("bulkClearContext-3", "key-1")).isTrue();
+
+        cache.clearCacheForContext("bulkClearContext-3");
+    }
+
+    @Test
+    void throwsOnNullContextId() {
+        var cache = newCache();
+        assertThatThrownBy(() -> cache.markProcessed(null, "alienKey"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("contextId required");
+    }
+}
@@ -0,0 +1,104 @@
+package com.ms.idempotentcache.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ms.idempotentcache.config.FsyncPolicy;
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MappedFileIdempotencyCacheServiceTest extends IdempotencyCacheServiceContractTest {
+
+    @TempDir
+    Path directory;
+
+    @Override
+    protected IdempotencyCacheService newCache() {
+        return new MappedFileIdempotencyCacheService(properties(FsyncPolicy.BATCH));
+    }
+
+    @Test
+    void keysSurviveRestartAndUncleanShutdown() throws Exception {
+        var properties = properties(FsyncPolicy.ALWAYS);
+        properties.getMappedFile().setInitialCapacity(16);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            keys.add("key-" + i);
+        }
+
+        var first = new MappedFileIdempotencyCacheService(properties);
+        assertThat(first.tryMarkProcessed("employment-events:input.csv", keys)).hasSize(1_000);
+        first.close();
+
+        var second = new MappedFileIdempotencyCacheService(properties);
+        assertThat(second.filterUnprocessed("employment-events:input.csv", keys)).isEmpty();
+        assertThat(second.tryMarkProcessed("employment-events:input.csv", "key-1000")).isTrue();
+        // a crash: the file as it was while still marked open, which the next instance recovers
+        Path table = directory.resolve("employment-events%3Ainput.csv.idx");
+        Path crashed = directory.resolve("crashed");
+        Files.copy(table, crashed);
+        second.close();
+        Files.move(crashed, table, StandardCopyOption.REPLACE_EXISTING);
+
+        var third = new MappedFileIdempotencyCacheService(properties);
+        assertThat(third.isProcessed("employment-events:input.csv", "key-1000")).isTrue();
+        assertThat(third.tryMarkProcessed("employment-events:input.csv", "key-0")).isFalse();
+        third.close();
+    }
+
+    @Test
+    void clearAndExpiryDeleteTheContextFile() throws Exception {
+        var properties = properties(FsyncPolicy.NEVER);
+        var cache = new MappedFileIdempotencyCacheService(properties);
+        cache.markProcessed("clearContext", "key-1");
+        assertThat(directory.resolve("clearContext.idx")).exists();
+
+        cache.clearCacheForContext("clearContext");
+        assertThat(directory.resolve("clearContext.idx")).doesNotExist();
+        assertThat(cache.isProcessed("clearContext", "key-1")).isFalse();
+
+        properties.setTtl(Duration.ofMillis(50));
+        cache.markProcessed("ttlContext", "key-1");
+        cache.close();
+        Thread.sleep(100);
+
+        new MappedFileIdempotencyCacheService(properties).close();
+        try (var files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void aTableOpenInAnotherServiceCannotBeOpenedOrCleared() {
+        var properties = properties(FsyncPolicy.BATCH);
+        var owner = new MappedFileIdempotencyCacheService(properties);
+        var other = new MappedFileIdempotencyCacheService(properties);
+        owner.markProcessed("lockedContext", "key-1");
+
+        assertThatThrownBy(() -> other.tryMarkProcessed("lockedContext", "key-2"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("in use");
+        assertThatThrownBy(() -> other.clearCacheForContext("lockedContext"))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(directory.resolve("lockedContext.idx")).exists();
+
+        owner.close();
+        assertThat(other.isProcessed("lockedContext", "key-1")).isTrue();
+        other.close();
+    }
+
+    private IdempotencyProperties properties(FsyncPolicy fsyncPolicy) {
+        var properties = new IdempotencyProperties();
+        properties.getMappedFile().setDirectory(directory.toString());
+        properties.getMappedFile().setFsyncPolicy(fsyncPolicy);
+        return properties;
+    }
+}
@@ -0,0 +1,47 @@
+package com.ms.idempotentcache.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import com.ms.idempotentcache.metrics.IdempotencyMeters;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class MeteredIdempotencyCacheServiceTest extends IdempotencyCacheServiceContractTest {
+
+    @Override
+    protected IdempotencyCacheService newCache() {
+        var properties = new IdempotencyProperties();
+        return new MeteredIdempotencyCacheService(new OffHeapIdempotencyCacheService(properties),
+                new IdempotencyMeters(new SimpleMeterRegistry(), properties.getMetrics()));
+    }
+
+    @Test
+    void recordsLatencyBatchSizesAndErrors() {
+        var properties = new IdempotencyProperties();
+        var registry = new SimpleMeterRegistry();
+        var cache = new MeteredIdempotencyCacheService(new OffHeapIdempotencyCacheService(properties),
+                new IdempotencyMeters(registry, properties.getMetrics()));
+
+        String contextId = "meteredContext";
+        assertThat(cache.tryMarkProcessed(contextId, "key-1")).isTrue();
+        assertThat(cache.tryMarkProcessed(contextId, List.of("key-1", "key-2", "key-2"))).containsExactly("key-2");
+        assertThat(cache.isProcessed(contextId, "key-3")).isFalse();
+        assertThatThrownBy(() -> cache.isProcessed(null, "key-1")).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(registry.get("idempotency.cache.operation").tag("operation", "tryMarkProcessed").tag("bulk", "false")
+                .tag("implementation", "OffHeapIdempotencyCacheService").timer().count()).isEqualTo(1);
+        assertThat(registry.get("idempotency.cache.operation").tag("operation", "isProcessed").timer().count()).isEqualTo(2);
+        assertThat(registry.get("idempotency.cache.batch.size").tag("operation", "tryMarkProcessed").summary().totalAmount()).isEqualTo(3);
+        assertThat(registry.get("idempotency.cache.claimed").counter().count()).isEqualTo(2);
+        assertThat(registry.get("idempotency.cache.duplicate").counter().count()).isEqualTo(1);
+        assertThat(registry.get("idempotency.cache.miss").counter().count()).isEqualTo(1);
+        assertThat(registry.get("idempotency.cache.errors").tag("operation", "isProcessed")
+                .tag("exception", "IllegalArgumentException").counter().count()).isEqualTo(1);
+
+        cache.clearCacheForContext(contextId);
+    }
+}
@@ -0,0 +1,117 @@
+package com.ms.idempotentcache.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import com.ms.idempotentcache.constant.IdempotencyConstant;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@SpringBootTest
+public class NearCacheIdempotencyCacheServiceTest {
+
+    @Autowired
+    StringRedisTemplate redisTemplate;
+
+    @Autowired
+    IdempotencyProperties properties;
+
+    @Test
+    void servesConfirmedKeysLocallyAndEvictsOnRemoteClear() throws Exception {
+        var meterRegistry = new SimpleMeterRegistry();
+        var redis = new RedisIdempotencyCacheService(redisTemplate, properties);
+        var nodeA = new NearCacheIdempotencyCacheService(redis, redisTemplate, properties, meterRegistry);
+        var nodeB = new NearCacheIdempotencyCacheService(redis, redisTemplate, properties, new SimpleMeterRegistry());
+        var container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisTemplate.getConnectionFactory());
+        container.addMessageListener(nodeA.invalidationListener(), nodeA.invalidationTopics());
+        // Subscribing evicts nodeA's local entries; notified after nodeA, the latch says both subscriptions are done.
+        var subscribed = new CountDownLatch(nodeA.invalidationTopics().size());
+        container.addMessageListener(new SubscriptionLatch(subscribed), nodeA.invalidationTopics());
+        container.afterPropertiesSet();
+        container.start();
+        assertThat(subscribed.await(5, TimeUnit.SECONDS)).isTrue();
+
+        try {
+            String contextId = "nearContext";
+            assertThat(nodeA.tryMarkProcessed(contextId, "key-1")).isTrue();
+            assertThat(nodeA.isProcessed(contextId, "key-1")).isTrue();
+            assertThat(nodeA.filterUnprocessed(contextId, List.of("key-1", "key-2"))).containsExactly("key-2");
+            assertThat(meterRegistry.counter("idempotency.cache.near.hit").count()).isEqualTo(2);
+
+            nodeB.clearCacheForContext(contextId);
+
+            // The invalidation arrives asynchronously: poll until it is applied or the deadline passes.
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (nodeA.isProcessed(contextId, "key-1") && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(nodeA.isProcessed(contextId, "key-1")).isFalse();
+        } finally {
+            container.stop();
+            container.destroy();
+        }
+    }
+
+    @Test
+    void anAnswerThatRacesAnInvalidationIsNotCached() {
+        String contextId = "nearRaceContext";
+        var offHeap = new OffHeapIdempotencyCacheService(properties);
+        offHeap.markProcessed(contextId, "key-1");
+        MessageListener[] listener = new MessageListener[1];
+        // The invalidation arrives while the delegate call is in flight, after it has read the key.
+        var delegate = new OffHeapIdempotencyCacheService(properties) {
+            @Override
+            public boolean tryMarkProcessed(String contextId, String recordKey) {
+                boolean claimed = offHeap.tryMarkProcessed(contextId, recordKey);
+                offHeap.clearCacheForContext(contextId);
+                listener[0].onMessage(new DefaultMessage(
+                        (properties.getPrefix() + IdempotencyConstant.NEAR_CACHE_INVALIDATION_CHANNEL).getBytes(StandardCharsets.UTF_8),
+                        contextId.getBytes(StandardCharsets.UTF_8)), null);
+                return claimed;
+            }
+
+            @Override
+            public boolean isProcessed(String contextId, String recordKey) {
+                return offHeap.isProcessed(contextId, recordKey);
+            }
+        };
+        var nearCache = new NearCacheIdempotencyCacheService(delegate, redisTemplate, properties, new SimpleMeterRegistry());
+        listener[0] = nearCache.invalidationListener();
+
+        assertThat(nearCache.tryMarkProcessed(contextId, "key-1")).isFalse();
+        assertThat(nearCache.isProcessed(contextId, "key-1")).isFalse();
+        assertThat(nearCache.tryMarkProcessed(contextId, "key-1")).isTrue();
+    }
+
+    private record SubscriptionLatch(CountDownLatch subscribed) implements MessageListener, SubscriptionListener {
+
+        @Override
+        public void onMessage(Message message, byte[] pattern) {
+        }
+
+        @Override
+        public void onChannelSubscribed(byte[] channel, long count) {
+            subscribed.countDown();
+        }
+
+        @Override
+        public void onPatternSubscribed(byte[] pattern, long count) {
+            subscribed.countDown();
+        }
+    }
+}
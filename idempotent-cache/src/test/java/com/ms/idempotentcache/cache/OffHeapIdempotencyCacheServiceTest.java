@@ -0,0 +1,106 @@
+package com.ms.idempotentcache.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+public class OffHeapIdempotencyCacheServiceTest extends IdempotencyCacheServiceContractTest {
+
+    @Override
+    protected IdempotencyCacheService newCache() {
+        return new OffHeapIdempotencyCacheService(new IdempotencyProperties());
+    }
+
+    @Test
+    void growsBeyondInitialCapacity() {
+        var properties = new IdempotencyProperties();
+        properties.getOffHeap().setInitialCapacity(16);
+        var cache = new OffHeapIdempotencyCacheService(properties);
+
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            keys.add("key-" + i);
+        }
+        assertThat(cache.tryMarkProcessed("growContext", keys)).hasSize(10_000);
+        assertThat(cache.filterUnprocessed("growContext", keys)).isEmpty();
+        assertThat(cache.tryMarkProcessed("growContext", "key-9999")).isFalse();
+        assertThat(cache.memoryBytes()).isEqualTo(32_768L * Long.BYTES);
+    }
+
+    @Test
+    void contextExpiresAfterTtl() throws Exception {
+        var properties = new IdempotencyProperties();
+        properties.setTtl(Duration.ofMillis(50));
+        var cache = new OffHeapIdempotencyCacheService(properties);
+
+        cache.markProcessed("ttlContext", "key-1");
+        assertThat(cache.isProcessed("ttlContext", "key-1")).isTrue();
+
+        Thread.sleep(100);
+
+        assertThat(cache.isProcessed("ttlContext", "key-1")).isFalse();
+        assertThat(cache.tryMarkProcessed("ttlContext", "key-1")).isTrue();
+    }
+
+    @Test
+    void clearFreesTheContextAndLaterMarksGoToANewOne() {
+        var cache = new OffHeapIdempotencyCacheService(new IdempotencyProperties());
+        cache.markProcessed("clearContext", "key-1");
+        assertThat(cache.memoryBytes()).isPositive();
+
+        cache.clearCacheForContext("clearContext");
+        assertThat(cache.memoryBytes()).isZero();
+        assertThat(cache.isProcessed("clearContext", "key-1")).isFalse();
+        assertThat(cache.tryMarkProcessed("clearContext", "key-1")).isTrue();
+        assertThat(cache.isProcessed("clearContext", "key-1")).isTrue();
+    }
+
+    @Test
+    void claimsKeepWorkingWhileTheContextIsClearedAndFreed() throws Exception {
+        var cache = new OffHeapIdempotencyCacheService(new IdempotencyProperties());
+        Thread clearer = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                cache.clearCacheForContext("raceContext");
+            }
+        });
+        clearer.start();
+        try {
+            for (int i = 0; i < 20_000; i++) {
+                cache.tryMarkProcessed("raceContext", "key-" + i);
+            }
+        } finally {
+            clearer.interrupt();
+            clearer.join();
+        }
+        // Once the clears stop, a claim is always visible to the next check.
+        assertThat(cache.tryMarkProcessed("raceContext", "last-key")).isTrue();
+        assertThat(cache.isProcessed("raceContext", "last-key")).isTrue();
+    }
+
+    @Test
+    void longHashSetFreesItsMemory() {
+        var set = new OffHeapLongHashSet(4);
+        set.add(42L);
+        set.free();
+        assertThat(set.memoryBytes()).isZero();
+        assertThat(set.contains(42L)).isFalse();
+    }
+
+    @Test
+    void longHashSetTracksZeroAndCollidingSlots() {
+        var set = new OffHeapLongHashSet(4);
+        assertThat(set.add(0)).isTrue();
+        assertThat(set.add(0)).isFalse();
+        assertThat(set.add(1L)).isTrue();
+        assertThat(set.add(1L << 32)).isTrue();
+        assertThat(set.contains(0)).isTrue();
+        assertThat(set.contains(1L << 32)).isTrue();
+        assertThat(set.contains(2L)).isFalse();
+        assertThat(set.size()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,75 @@
+package com.ms.idempotentcache.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@SpringBootTest
+public class ReactiveRedisIdempotencyCacheServiceTest {
+
+    @Autowired
+    ReactiveIdempotencyCacheService reactiveCache;
+
+    @Autowired
+    StringRedisTemplate redisTemplate;
+
+    @Autowired
+    IdempotencyProperties properties;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    void sharesContextsWithTheBlockingService() {
+        var blockingCache = new RedisIdempotencyCacheService(redisTemplate, properties);
+        String contextId = "reactiveContext";
+        reactiveCache.clearCacheForContext(contextId).block();
+
+        assertThat(reactiveCache.tryMarkProcessed(contextId, "key-1").block()).isTrue();
+        assertThat(reactiveCache.tryMarkProcessed(contextId, "key-1").block()).isFalse();
+        assertThat(blockingCache.isProcessed(contextId, "key-1")).isTrue();
+
+        blockingCache.markProcessed(contextId, "key-2");
+        assertThat(reactiveCache.isProcessed(contextId, "key-2").block()).isTrue();
+        assertThat(reactiveCache.filterUnprocessed(contextId, List.of("key-1", "key-3", "key-2", "key-3")).block())
+                .containsExactly("key-3");
+        assertThat(reactiveCache.tryMarkProcessed(contextId, List.of("key-3", "key-4", "key-1")).block())
+                .containsExactly("key-3", "key-4");
+
+        reactiveCache.markProcessed(contextId, Set.of("key-5")).block();
+        assertThat(reactiveCache.tryMarkProcessed(Map.of(contextId, List.of("key-5", "key-6"))).block())
+                .containsEntry(contextId, Set.of("key-6"));
+
+        reactiveCache.clearCacheForContext(contextId).block();
+        assertThat(blockingCache.isProcessed(contextId, "key-1")).isFalse();
+    }
+
+    @Test
+    void recordsMetricsWhenTheMonoCompletesAndSignalsInvalidArguments() {
+        String contextId = "reactiveMetricsContext";
+        reactiveCache.clearCacheForContext(contextId).block();
+        double claimed = meterRegistry.counter("idempotency.cache.claimed").count();
+        double duplicate = meterRegistry.counter("idempotency.cache.duplicate").count();
+
+        var claim = reactiveCache.tryMarkProcessed(contextId, List.of("key-1", "key-2"));
+        assertThat(meterRegistry.counter("idempotency.cache.claimed").count()).isEqualTo(claimed);
+        claim.block();
+        reactiveCache.tryMarkProcessed(contextId, "key-1").block();
+
+        assertThat(meterRegistry.counter("idempotency.cache.claimed").count()).isEqualTo(claimed + 2);
+        assertThat(meterRegistry.counter("idempotency.cache.duplicate").count()).isEqualTo(duplicate + 1);
+        assertThatThrownBy(() -> reactiveCache.isProcessed(contextId, " ").block())
+                .isInstanceOf(IllegalArgumentException.class);
+        reactiveCache.clearCacheForContext(contextId).block();
+    }
+}
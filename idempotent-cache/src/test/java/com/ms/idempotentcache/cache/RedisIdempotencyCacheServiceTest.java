@@ -2,17 +2,28 @@ package com.ms.idempotentcache.cache;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import com.ms.idempotentcache.config.ClearStrategy;
 import com.ms.idempotentcache.config.IdempotencyProperties;
-import org.assertj.core.api.Assertions;
+import com.ms.idempotentcache.config.TtlStrategy;
+import com.ms.idempotentcache.fingerprint.FingerprintAlgorithm;
+import com.ms.idempotentcache.fingerprint.HashingRecordKeyFingerprinter;
+import com.ms.idempotentcache.fingerprint.RecordKeyFingerprinter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 @SpringBootTest
-public class RedisIdempotencyCacheServiceTest {
+public class RedisIdempotencyCacheServiceTest extends IdempotencyCacheServiceContractTest {
 
     @Autowired
     StringRedisTemplate redisTemplate;
@@ -20,32 +31,177 @@ public class RedisIdempotencyCacheServiceTest {
     @Autowired
     IdempotencyProperties properties;
 
+    @Override
+    protected IdempotencyCacheService newCache() {
+        return new RedisIdempotencyCacheService(redisTemplate, properties);
+    }
+
+    @Test
+    void tryMarkProcessedSetsContextTtl() {
+        var cache = newCache();
+
+        String contextId = "claimContext";
+        assertThat(cache.tryMarkProcessed(contextId, "key-1")).isTrue();
+        assertThat(redisTemplate.getExpire(properties.getPrefix() + contextId)).isPositive();
+
+        cache.clearCacheForContext(contextId);
+    }
+
+    @Test
+    void fingerprintedKeysAreStoredAsFixedSizeBinaryMembers() {
+        var cache = new RedisIdempotencyCacheService(redisTemplate, properties,
+                new HashingRecordKeyFingerprinter(FingerprintAlgorithm.MURMUR3_128, 64));
+
+        String contextId = "fingerprintContext";
+        String key = "123-45-6789:P0001:ABC:EMPLOYED";
+        assertThat(cache.tryMarkProcessed(contextId, key)).isTrue();
+        assertThat(cache.isProcessed(contextId, key)).isTrue();
+        assertThat(cache.filterUnprocessed(contextId, List.of(key, "other"))).containsExactly("other");
+
+        byte[] member = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.setCommands().sRandMember((properties.getPrefix() + contextId).getBytes()));
+        assertThat(member).hasSize(8);
+
+        cache.clearCacheForContext(contextId);
+    }
+
+    @Test
+    void ttlStrategiesLimitTtlRefreshes() {
+        String contextId = "ttlContext";
+        String redisKey = properties.getPrefix() + contextId;
+
+        var throttledProperties = copyOf(properties);
+        throttledProperties.setTtlStrategy(TtlStrategy.THROTTLED);
+        throttledProperties.setTtlRefreshInterval(Duration.ofHours(1));
+        var registry = new SimpleMeterRegistry();
+        var throttled = new RedisIdempotencyCacheService(redisTemplate, throttledProperties, RecordKeyFingerprinter.NONE, registry);
+        redisTemplate.delete(redisKey);
+
+        throttled.markProcessed(contextId, "key-1");
+        assertThat(redisTemplate.getExpire(redisKey)).isPositive();
+        redisTemplate.expire(redisKey, Duration.ofSeconds(30));
+        throttled.markProcessed(contextId, Set.of("key-2"));
+        assertThat(throttled.tryMarkProcessed(contextId, "key-3")).isTrue();
+        assertThat(redisTemplate.getExpire(redisKey)).isLessThanOrEqualTo(30);
+        // Recreated inside the interval (e.g. cleared by another node): the key still gets a TTL.
+        redisTemplate.delete(redisKey);
+        assertThat(throttled.tryMarkProcessed(contextId, "key-4")).isTrue();
+        assertThat(redisTemplate.getExpire(redisKey)).isPositive();
+        assertThat(registry.get("idempotency.cache.ttl.refresh").tag("strategy", "THROTTLED").tag("command", "inline").counter().count()).isEqualTo(1);
+        throttled.clearCacheForContext(contextId);
+
+        var onCreateProperties = copyOf(properties);
+        onCreateProperties.setTtlStrategy(TtlStrategy.ON_CREATE);
+        var onCreate = new RedisIdempotencyCacheService(redisTemplate, onCreateProperties);
+        onCreate.markProcessed(contextId, "key-1");
+        redisTemplate.expire(redisKey, Duration.ofSeconds(30));
+        onCreate.markProcessed(contextId, "key-2");
+        assertThat(redisTemplate.getExpire(redisKey)).isLessThanOrEqualTo(30);
+        onCreate.clearCacheForContext(contextId);
+    }
+
+    @Test
+    void shardedContextsSpreadOverHashTaggedBuckets() {
+        var shardedProperties = copyOf(properties);
+        shardedProperties.getSharding().setBuckets(8);
+        var cache = new RedisIdempotencyCacheService(redisTemplate, shardedProperties);
+
+        String contextId = "shardedContext";
+        List<String> keys = List.of("key-1", "key-2", "key-3", "key-4", "key-5", "key-6", "key-7", "key-8");
+        assertThat(cache.tryMarkProcessed(contextId, keys.subList(0, 4))).containsExactlyElementsOf(keys.subList(0, 4));
+        cache.markProcessed(contextId, Set.of("key-5"));
+        assertThat(cache.tryMarkProcessed(contextId, "key-6")).isTrue();
+        assertThat(cache.tryMarkProcessed(Map.of(contextId, keys)).get(contextId)).containsExactlyElementsOf(keys.subList(6, 8));
+        assertThat(cache.filterUnprocessed(contextId, List.of("key-1", "key-9", "key-8"))).containsExactly("key-9");
+        assertThat(cache.isProcessed(contextId, "key-7")).isTrue();
+
+        Set<String> bucketKeys = redisTemplate.keys(properties.getPrefix() + "{" + contextId + ":*}");
+        assertThat(bucketKeys).hasSizeGreaterThan(1);
+        assertThat(redisTemplate.hasKey(properties.getPrefix() + contextId)).isFalse();
+        bucketKeys.forEach(bucketKey -> assertThat(redisTemplate.getExpire(bucketKey)).isPositive());
+
+        cache.clearCacheForContext(contextId);
+        assertThat(redisTemplate.keys(properties.getPrefix() + "{" + contextId + ":*}")).isEmpty();
+        assertThat(cache.isProcessed(contextId, "key-1")).isFalse();
+    }
+
     @Test
-    void idempotencyLifecycleWorks() {
-        var cache = new RedisIdempotencyCacheService(redisTemplate, properties);
+    void clearStrategiesRemoveEveryMember() {
+        List<String> keys = IntStream.range(0, 100).mapToObj(i -> "key-" + i).toList();
+        for (ClearStrategy strategy : ClearStrategy.values()) {
+            var clearProperties = copyOf(properties);
+            clearProperties.setClearStrategy(strategy);
+            clearProperties.setClearBatchSize(7);
+            clearProperties.getSharding().setBuckets(strategy == ClearStrategy.INCREMENTAL ? 4 : 1);
+            var cache = new RedisIdempotencyCacheService(redisTemplate, clearProperties);
 
-        String contextId = "testContext";
-        String key1 = "key-1";
-        String key2 = "key-2";
+            String contextId = "clearContext";
+            cache.markProcessed(contextId, new LinkedHashSet<>(keys));
+            assertThat(cache.filterUnprocessed(contextId, keys)).isEmpty();
 
-        assertThat(cache.isProcessed(contextId, key1)).isFalse();
+            cache.clearCacheForContext(contextId);
+            assertThat(cache.filterUnprocessed(contextId, keys)).hasSize(keys.size());
+            assertThat(redisTemplate.keys(properties.getPrefix() + "*" + contextId + "*")).isEmpty();
+        }
+    }
 
-        cache.markProcessed(contextId, key1);
-        assertThat(cache.isProcessed(contextId, key1)).isTrue();
+    @Test
+    void warmedContextAnswersKnownKeysLocally() {
+        var warmProperties = copyOf(properties);
+        warmProperties.getSharding().setBuckets(4);
+        warmProperties.getWarm().setScanCount(3);
+        var cache = new RedisIdempotencyCacheService(redisTemplate, warmProperties);
+        String contextId = "warmContext";
+        cache.clearCacheForContext(contextId);
+        List<String> keys = IntStream.range(0, 20).mapToObj(i -> "key-" + i).toList();
+        cache.markProcessed(contextId, new LinkedHashSet<>(keys));
 
-        cache.markProcessed(contextId, Set.of(key2));
-        assertThat(cache.isProcessed(contextId, key2)).isTrue();
+        cache.warmContext(contextId);
+        assertThat(cache.tryMarkProcessed(contextId, "key-20")).isTrue();
+        // Known keys are no longer read from Redis: they stay processed once the sets are gone behind the cache's back.
+        redisTemplate.delete(redisTemplate.keys(warmProperties.getPrefix() + "{" + contextId + ":*}"));
+        assertThat(cache.isProcessed(contextId, "key-0")).isTrue();
+        assertThat(cache.isProcessed(contextId, "key-20")).isTrue();
+        assertThat(cache.tryMarkProcessed(contextId, "key-1")).isFalse();
+        assertThat(cache.filterUnprocessed(contextId, List.of("key-2", "key-21", "key-3"))).containsExactly("key-21");
+        assertThat(cache.tryMarkProcessed(contextId, List.of("key-4", "key-22"))).containsExactly("key-22");
+        assertThat(cache.tryMarkProcessed(Map.of(contextId, List.of("key-5", "key-22", "key-23"))).get(contextId))
+                .containsExactly("key-23");
+        assertThat(cache.filterUnprocessed(Map.of(contextId, List.of("key-6", "key-7"))).get(contextId)).isEmpty();
 
         cache.clearCacheForContext(contextId);
-        assertThat(cache.isProcessed(contextId, key1)).isFalse();
-        assertThat(cache.isProcessed(contextId, key2)).isFalse();
+        assertThat(cache.isProcessed(contextId, "key-0")).isFalse();
+        assertThat(cache.tryMarkProcessed(contextId, "key-22")).isTrue();
+        cache.clearCacheForContext(contextId);
     }
 
     @Test
-    void throwsOnNullContextId() {
-        var cache = new RedisIdempotencyCacheService(redisTemplate, properties);
-        Assertions.assertThatThrownBy(() -> cache.markProcessed(null, "alienKey"))
-                .isInstanceOf(IllegalArgumentException.class)
-                .hasMessageContaining("contextId required");
+    void replacedAndEvictedWarmCopiesAreNoLongerUsed() {
+        var warmProperties = copyOf(properties);
+        warmProperties.getWarm().setMaxContexts(1);
+        var cache = new RedisIdempotencyCacheService(redisTemplate, warmProperties);
+        cache.clearCacheForContext(List.of("warmFirst", "warmSecond"));
+        cache.markProcessed("warmFirst", "key-1");
+        cache.markProcessed("warmSecond", "key-1");
+
+        cache.warmContext("warmFirst");
+        cache.warmContext("warmFirst");
+        assertThat(cache.tryMarkProcessed("warmFirst", "key-2")).isTrue();
+        assertThat(cache.tryMarkProcessed("warmFirst", "key-2")).isFalse();
+
+        // Warming a second context evicts the first one: its keys are read from Redis again.
+        cache.warmContext("warmSecond");
+        cache.clearCacheForContext("warmSecond");
+        redisTemplate.delete(warmProperties.getPrefix() + "warmFirst");
+        assertThat(cache.isProcessed("warmFirst", "key-1")).isFalse();
+        assertThat(cache.tryMarkProcessed("warmFirst", "key-2")).isTrue();
+        cache.clearCacheForContext("warmFirst");
+    }
+
+    private static IdempotencyProperties copyOf(IdempotencyProperties source) {
+        var copy = new IdempotencyProperties();
+        copy.setPrefix(source.getPrefix());
+        copy.setTtl(source.getTtl());
+        return copy;
     }
 }
@@ -0,0 +1,78 @@
+package com.ms.idempotentcache.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@SpringBootTest
+public class RedisRoaringBitmapIdempotencyCacheServiceTest extends IdempotencyCacheServiceContractTest {
+
+    @Autowired
+    StringRedisTemplate redisTemplate;
+
+    @Autowired
+    IdempotencyProperties properties;
+
+    @Override
+    protected IdempotencyCacheService newCache() {
+        return new RoaringBitmapIdempotencyCacheService(properties, redisTemplate);
+    }
+
+    @Test
+    void contextIsStoredAsOneHashFieldPerChunk() {
+        var cache = new RoaringBitmapIdempotencyCacheService(properties, redisTemplate);
+        String contextId = "roaringChunkContext";
+        cache.clearCacheForContext(contextId);
+        Roaring64Bitmap keys = new Roaring64Bitmap();
+        keys.addRange(0, 3 << RoaringBitmapIdempotencyCacheService.CHUNK_BITS);
+
+        assertThat(cache.tryMarkProcessed(contextId, keys).getLongCardinality()).isEqualTo(keys.getLongCardinality());
+        String redisKey = properties.getPrefix() + "roaring:" + contextId;
+        assertThat(redisTemplate.opsForHash().keys(redisKey)).containsExactlyInAnyOrder("0", "1", "2");
+        assertThat(redisTemplate.getExpire(redisKey)).isPositive();
+        assertThat(cache.isProcessed(contextId, 3L << RoaringBitmapIdempotencyCacheService.CHUNK_BITS)).isFalse();
+        assertThat(cache.tryMarkProcessed(contextId, keys)).matches(Roaring64Bitmap::isEmpty);
+
+        cache.clearCacheForContext(contextId);
+        assertThat(redisTemplate.hasKey(redisKey)).isFalse();
+    }
+
+    @Test
+    void concurrentClaimsNeverClaimAKeyTwice() throws Exception {
+        var cache = new RoaringBitmapIdempotencyCacheService(properties, redisTemplate);
+        String contextId = "roaringRaceContext";
+        cache.clearCacheForContext(contextId);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<Long>> claims = new ArrayList<>();
+            for (int worker = 0; worker < 8; worker++) {
+                claims.add(CompletableFuture.supplyAsync(() -> {
+                    long claimed = 0;
+                    for (long key = 0; key < 200; key++) {
+                        claimed += cache.tryMarkProcessed(contextId, key) ? 1 : 0;
+                    }
+                    return claimed;
+                }, executor));
+            }
+            long total = 0;
+            for (CompletableFuture<Long> claim : claims) {
+                total += claim.get();
+            }
+            assertThat(total).isEqualTo(200);
+        } finally {
+            executor.shutdown();
+            cache.clearCacheForContext(contextId);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.ms.idempotentcache.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import com.ms.idempotentcache.record.NumericRecordKeyProvider;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+public class RoaringBitmapIdempotencyCacheServiceTest extends IdempotencyCacheServiceContractTest {
+
+    @Override
+    protected IdempotencyCacheService newCache() {
+        return new RoaringBitmapIdempotencyCacheService(new IdempotencyProperties());
+    }
+
+    @Test
+    void denseNumericKeysCompress() {
+        var cache = new RoaringBitmapIdempotencyCacheService(new IdempotencyProperties());
+        String contextId = "denseContext";
+        Roaring64Bitmap keys = new Roaring64Bitmap();
+        keys.addRange(1_000_000, 2_000_000);
+
+        assertThat(cache.tryMarkProcessed(contextId, keys).getLongCardinality()).isEqualTo(1_000_000);
+        assertThat(cache.sizeInBytes(contextId)).isLessThan(1_000);
+        Roaring64Bitmap next = Roaring64Bitmap.bitmapOf(LongStream.rangeClosed(1_999_999, 2_000_001).toArray());
+        assertThat(cache.filterUnprocessed(contextId, next).toArray()).containsExactly(2_000_000, 2_000_001);
+        assertThat(cache.tryMarkProcessed(contextId, 2_000_000)).isTrue();
+        assertThat(cache.isProcessed(contextId, 1_500_000)).isTrue();
+    }
+
+    @Test
+    void numericKeyProviderKeysMapToTheirNumber() {
+        NumericRecordKeyProvider<Long> provider = record -> record;
+        var cache = new RoaringBitmapIdempotencyCacheService(new IdempotencyProperties());
+        String contextId = "providerContext";
+
+        cache.markProcessed(contextId, provider.getKey(42L));
+        cache.markProcessed(contextId, provider.getKey(-1L));
+        assertThat(cache.isProcessed(contextId, 42L)).isTrue();
+        assertThat(cache.isProcessed(contextId, "18446744073709551615")).isTrue();
+        assertThat(cache.filterUnprocessed(contextId, List.of("42", "042", "43"))).containsExactly("042", "43");
+        assertThat(RoaringBitmapIdempotencyCacheService.numericKey("042")).isNotEqualTo(42L);
+    }
+}
@@ -0,0 +1,98 @@
+package com.ms.idempotentcache.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+public class WriteBehindIdempotencyCacheServiceTest {
+
+    private final OffHeapIdempotencyCacheService offHeap = new OffHeapIdempotencyCacheService(new IdempotencyProperties());
+    private final WriteBehindIdempotencyCacheService cache = new WriteBehindIdempotencyCacheService(offHeap);
+
+    @Test
+    void flushesMarksOnCommitAndDiscardsThemOnRollback() {
+        String contextId = "writeBehindContext";
+
+        inTransaction(false, () -> {
+            assertThat(cache.tryMarkProcessed(contextId, "key-1")).isTrue();
+            assertThat(cache.tryMarkProcessed(contextId, "key-1")).isFalse();
+            assertThat(cache.isProcessed(contextId, "key-1")).isTrue();
+            assertThat(offHeap.isProcessed(contextId, "key-1")).isFalse();
+        });
+        assertThat(offHeap.isProcessed(contextId, "key-1")).isFalse();
+
+        inTransaction(true, () -> {
+            assertThat(cache.tryMarkProcessed(contextId, "key-1")).isTrue();
+            assertThat(cache.tryMarkProcessed(contextId, List.of("key-1", "key-2"))).containsExactly("key-2");
+            cache.markProcessed(contextId, Set.of("key-3"));
+            assertThat(cache.filterUnprocessed(contextId, List.of("key-2", "key-3", "key-4"))).containsExactly("key-4");
+        });
+        assertThat(offHeap.filterUnprocessed(contextId, List.of("key-1", "key-2", "key-3", "key-4"))).containsExactly("key-4");
+
+        assertThat(cache.tryMarkProcessed(contextId, "key-4")).isTrue();
+        assertThat(offHeap.isProcessed(contextId, "key-4")).isTrue();
+    }
+
+    @Test
+    void claimLostToAnotherTransactionFailsTheCommit() {
+        String contextId = "lostClaimContext";
+
+        assertThatThrownBy(() -> inTransaction(true, () -> {
+            assertThat(cache.tryMarkProcessed(contextId, List.of("key-1", "key-2"))).containsExactly("key-1", "key-2");
+            cache.markProcessed(contextId, "key-3");
+            // Another transaction claims key-2 before this one commits.
+            offHeap.markProcessed(contextId, "key-2");
+            offHeap.markProcessed(contextId, "key-3");
+        })).isInstanceOf(IllegalStateException.class);
+
+        // The failed commit rolled back, so none of its keys were written.
+        assertThat(offHeap.filterUnprocessed(contextId, List.of("key-1", "key-2", "key-3"))).containsExactly("key-1");
+    }
+
+    @Test
+    void closeReleasesTheMappedFileStoreUnderneath(@TempDir Path directory) {
+        var properties = new IdempotencyProperties();
+        properties.getMappedFile().setDirectory(directory.toString());
+        var writeBehind = new WriteBehindIdempotencyCacheService(new MappedFileIdempotencyCacheService(properties));
+        assertThat(writeBehind.tryMarkProcessed("closeContext", "key-1")).isTrue();
+
+        writeBehind.close();
+        var reopened = new MappedFileIdempotencyCacheService(properties);
+        assertThat(reopened.isProcessed("closeContext", "key-1")).isTrue();
+        reopened.close();
+    }
+
+    /**
+     * Runs the work in a transaction synchronization; a failure before commit rolls it back and is rethrown.
+     */
+    private static void inTransaction(boolean commit, Runnable work) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            work.run();
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            if (commit) {
+                try {
+                    TransactionSynchronizationUtils.triggerBeforeCommit(false);
+                } catch (RuntimeException e) {
+                    TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, TransactionSynchronization.STATUS_ROLLED_BACK);
+                    throw e;
+                }
+                TransactionSynchronizationUtils.invokeAfterCommit(synchronizations);
+            }
+            TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, commit
+                    ? TransactionSynchronization.STATUS_COMMITTED : TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
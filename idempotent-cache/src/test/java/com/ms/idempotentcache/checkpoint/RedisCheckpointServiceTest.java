@@ -0,0 +1,40 @@
+package com.ms.idempotentcache.checkpoint;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ms.idempotentcache.config.IdempotencyProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+@SpringBootTest
+public class RedisCheckpointServiceTest {
+
+    @Autowired
+    StringRedisTemplate redisTemplate;
+
+    @Autowired
+    IdempotencyProperties properties;
+
+    @Test
+    void checkpointOnlyMovesForward() {
+        for (CheckpointService checkpoints : new CheckpointService[]{
+                new RedisCheckpointService(redisTemplate, properties), new InMemoryCheckpointService()}) {
+            String contextId = "checkpointContext";
+            checkpoints.clear(contextId);
+            assertThat(checkpoints.get(contextId)).isNull();
+
+            assertThat(checkpoints.advance(contextId, new Checkpoint(100, 3, 42))).isTrue();
+            assertThat(checkpoints.advance(contextId, new Checkpoint(50, 2, 7))).isFalse();
+            assertThat(checkpoints.advance(contextId, new Checkpoint(100, 3, 42))).isFalse();
+            assertThat(checkpoints.get(contextId)).isEqualTo(new Checkpoint(100, 3, 42));
+
+            assertThat(checkpoints.advance(contextId, new Checkpoint(250, 6, -1))).isTrue();
+            assertThat(checkpoints.get(contextId)).isEqualTo(new Checkpoint(250, 6, -1));
+
+            checkpoints.clear(contextId);
+            assertThat(checkpoints.get(contextId)).isNull();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.ms.idempotentcache.fingerprint;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.assertj.core.api.Assertions;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class HashingRecordKeyFingerprinterTest {
+
+    @Test
+    void murmur3MatchesReferenceVector() {
+        byte[] data = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+        long[] hash = Murmur3.hash128(data, 0, data.length, 0);
+        assertThat(hash[0]).isEqualTo(0xe34bbc7bbc071b6cL);
+        assertThat(hash[1]).isEqualTo(0x7a433ca9c49a9347L);
+    }
+
+    @Test
+    void fingerprintsHaveFixedWidth() {
+        String longKey = "123-45-6789:P0001:ABC:EMPLOYED:" + "x".repeat(200);
+        assertThat(new HashingRecordKeyFingerprinter(FingerprintAlgorithm.MURMUR3_128, 64).fingerprint(longKey)).hasSize(8);
+        assertThat(new HashingRecordKeyFingerprinter(FingerprintAlgorithm.SHA_256, 128).fingerprint(longKey)).hasSize(16);
+        Assertions.assertThatThrownBy(() -> new HashingRecordKeyFingerprinter(FingerprintAlgorithm.MURMUR3_128, 32))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void collisionProbabilityFollowsBirthdayBound() {
+        assertThat(HashingRecordKeyFingerprinter.collisionProbability(10_000_000, 64)).isCloseTo(2.7e-6, Offset.offset(1e-7));
+        assertThat(HashingRecordKeyFingerprinter.collisionProbability(100_000_000, 128)).isLessThan(1e-20);
+    }
+}
@@ -0,0 +1,31 @@
+package com.ms.idempotentcache.record;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class ByteBufferRecordKeySinkTest {
+
+    @Test
+    void encodesTheSameBytesAsTheJoinedString() {
+        var sink = new ByteBufferRecordKeySink(4);
+        String[] fields = {"123-45-6789", "P0001", "Zoë", "東京", "😀", null, "\uD800x"};
+        for (String field : fields) {
+            sink.field(field);
+        }
+        String expected = String.join(":", "123-45-6789", "P0001", "Zoë", "東京", "😀", "", "\uD800x");
+        assertThat(sink.toByteArray()).isEqualTo(expected.getBytes(StandardCharsets.UTF_8));
+
+        sink.reset().field("a").field("b");
+        assertThat(sink.toByteArray()).isEqualTo("a:b".getBytes(StandardCharsets.UTF_8));
+        assertThat(sink.toString()).isEqualTo("a:b");
+    }
+
+    @Test
+    void binaryProviderDerivesTheStringKey() {
+        BinaryRecordKeyProvider<String[]> provider = (record, sink) -> sink.field(record[0]).field(record[1]);
+        assertThat(provider.getKey(new String[]{"123-45-6789", "P0001"})).isEqualTo("123-45-6789:P0001");
+    }
+}